@@ -0,0 +1,34 @@
+package com.krun.juice.benchmark;
+
+import com.krun.juice.benchmark.stub.StubDriver;
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import com.krun.juice.repository.factory.RepositoryFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 基准测试共用的工具方法
+ */
+final class Benchmarks {
+
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * 创建一个连接到桩驱动的仓库工厂，每次调用使用不同的名称
+	 * @param name 名称前缀
+	 * @return 仓库工厂
+	 */
+	static RepositoryFactory factory(String name) {
+		return new RepositoryFactory(name + "-" + count.incrementAndGet(), ConnectionConfiguration.builder()
+				.driverClass(StubDriver.class.getName())
+				.connectionURL(StubDriver.URL)
+				.username("")
+				.password("")
+				.build());
+	}
+}
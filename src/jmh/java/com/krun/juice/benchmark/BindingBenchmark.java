@@ -0,0 +1,47 @@
+package com.krun.juice.benchmark;
+
+import com.krun.juice.benchmark.stub.StubJdbc;
+import com.krun.juice.repository.processor.DefaultParameterProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 默认参数处理器绑定不同数量的参数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+	@Param({ "1", "4", "16" })
+	private int width;
+
+	private Statement statement;
+
+	private Object[] args;
+
+	@Setup
+	public void setup() {
+		this.statement = StubJdbc.statement(StubJdbc.connection(), "UPDATE narrow SET name = ?");
+		Object[] values = { "name", 42, 42L, 4.2, true, new BigDecimal("4.20"), new Timestamp(1500000000000L), null };
+		this.args = new Object[this.width];
+		for (int i = 0; i < this.width; i++) {
+			this.args[i] = values[i % values.length];
+		}
+	}
+
+	@Benchmark
+	public Statement process() throws SQLException {
+		return DefaultParameterProcessor.process(this.statement, this.args);
+	}
+}
@@ -0,0 +1,110 @@
+package com.krun.juice.benchmark;
+
+import com.krun.juice.benchmark.model.NarrowRepository;
+import com.krun.juice.benchmark.model.NarrowRow;
+import com.krun.juice.benchmark.stub.Dataset;
+import com.krun.juice.benchmark.stub.StubDriver;
+import com.krun.juice.benchmark.stub.StubJdbc;
+import com.krun.juice.instrumentation.HistogramInstrumentation;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.processor.DefaultParameterProcessor;
+import com.krun.juice.repository.resolver.DefaultResultResolver;
+import com.krun.juice.repository.statement.DefaultPreparedStatementProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 仓库代理调用的完整路径: invoke -> 借出连接 -> 取出语句 -> process -> resolve -> 归还
+ *
+ * directUpdate 直接在桩语句上绑定参数并执行，是不经过 Juice 时的对照组；
+ * reflectiveUpdate 按预编译之前的方式，通过 Method.invoke 调用参数处理器和结果解析器，
+ * 语句提供器和以前一样只在扫描方法时反射调用一次，语句随后复用；
+ * 它不借出连接，也不经过语句缓存，与 directUpdate 的差值就是反射调用链本身的开销，也就是预编译所省去的部分。
+ * instrumentedUpdate 开启默认度量实现，与 update 的差值即为度量的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+
+	private NarrowRepository repository;
+
+	private NarrowRepository instrumented;
+
+	private PreparedStatement statement;
+
+	private final Object[] args = { "name", "1" };
+
+	private Method provider;
+
+	private Method processor;
+
+	private Method resolver;
+
+	private Method method;
+
+	private Statement reflectiveStatement;
+
+	@Setup
+	public void setup() {
+		StubDriver.setDataset(Dataset.of(NarrowRow.class, 1));
+		this.repository = Benchmarks.factory("invocation").get(NarrowRepository.class);
+		RepositoryFactory factory = Benchmarks.factory("instrumented");
+		factory.setInstrumentation(new HistogramInstrumentation(false));
+		this.instrumented = factory.get(NarrowRepository.class);
+		this.statement = StubJdbc.statement(StubJdbc.connection(), "UPDATE narrow SET name = ? WHERE id = ?");
+
+		try {
+			this.provider = DefaultPreparedStatementProvider.class.getMethod("provide", Connection.class, String.class);
+			this.processor = DefaultParameterProcessor.class.getMethod("process", Statement.class, Object[].class);
+			this.resolver = DefaultResultResolver.class.getMethod("resolve", Statement.class, Class.class, Method.class);
+			this.method = NarrowRepository.class.getMethod("updateName", String.class, String.class);
+			this.reflectiveStatement = (Statement) this.provider.invoke(null, StubJdbc.connection(), "UPDATE narrow SET name = ? WHERE id = ?");
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Benchmark
+	public Integer update() {
+		return this.repository.updateName("name", "1");
+	}
+
+	@Benchmark
+	public Integer instrumentedUpdate() {
+		return this.instrumented.updateName("name", "1");
+	}
+
+	@Benchmark
+	public NarrowRow findById() {
+		return this.repository.findById("1");
+	}
+
+	@Benchmark
+	public NarrowRow cachedHit() {
+		return this.repository.findByCode(1);
+	}
+
+	@Benchmark
+	public Object reflectiveUpdate() throws ReflectiveOperationException {
+		Statement statement = (Statement) this.processor.invoke(null, new Object[] { this.reflectiveStatement, new Object[] { "name", "1" } });
+		return this.resolver.invoke(null, statement, NarrowRow.class, this.method);
+	}
+
+	@Benchmark
+	public int directUpdate() throws SQLException {
+		DefaultParameterProcessor.process(this.statement, this.args);
+		return this.statement.executeUpdate();
+	}
+}
@@ -0,0 +1,23 @@
+package com.krun.juice.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 基准测试入口
+ *
+ * 参数与 JMH 命令行相同，没有指定 -prof 时默认附加 GC profiler，输出每次操作的内存分配量和分配速率。
+ */
+public class JuiceBenchmarks {
+
+	public static void main(String... args) throws Exception {
+		if (!Arrays.asList(args).contains("-prof")) {
+			String[] withProfiler = Arrays.copyOf(args, args.length + 2);
+			withProfiler[args.length] = "-prof";
+			withProfiler[args.length + 1] = "gc";
+			args = withProfiler;
+		}
+		org.openjdk.jmh.Main.main(args);
+	}
+}
@@ -0,0 +1,132 @@
+package com.krun.juice.benchmark;
+
+import com.krun.juice.benchmark.model.NarrowRepository;
+import com.krun.juice.benchmark.model.NarrowRow;
+import com.krun.juice.benchmark.model.WideRepository;
+import com.krun.juice.benchmark.model.WideRow;
+import com.krun.juice.benchmark.stub.Dataset;
+import com.krun.juice.benchmark.stub.StubDriver;
+import com.krun.juice.benchmark.stub.StubJdbc;
+import com.krun.juice.repository.annotation.Column;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.resolver.RowMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 把结果集映射为表实体列表，覆盖不同的行数和列宽(narrow: 4 列, wide: 16 列)
+ *
+ * repository: 经过仓库代理的完整路径
+ * projection: 经过仓库代理映射为只有两列的投影接口，不分配表实体
+ * rowMapper: 直接使用预编译的行映射器
+ * reflective: 逐行逐列通过反射查找字段并写入，即引入行映射器之前的做法，作为对照组
+ * stubScan: 只读取桩结果集的每一列，用于扣除桩实现本身的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({ "1", "100", "10000" })
+	private int rows;
+
+	@Param({ "narrow", "wide" })
+	private String shape;
+
+	private Class<?> entityClass;
+
+	private Dataset dataset;
+
+	private Supplier<List<?>> findAll;
+
+	private Supplier<List<?>> findSummaries;
+
+	@Setup
+	public void setup() {
+		this.entityClass = "wide".equals(this.shape) ? WideRow.class : NarrowRow.class;
+		this.dataset = Dataset.of(this.entityClass, this.rows);
+		StubDriver.setDataset(this.dataset);
+		RepositoryFactory factory = Benchmarks.factory("mapping");
+		if ("wide".equals(this.shape)) {
+			WideRepository repository = factory.get(WideRepository.class);
+			this.findAll = repository::findAll;
+			this.findSummaries = repository::findSummaries;
+		} else {
+			NarrowRepository repository = factory.get(NarrowRepository.class);
+			this.findAll = repository::findAll;
+			this.findSummaries = repository::findSummaries;
+		}
+	}
+
+	@Benchmark
+	public List<?> repository() {
+		return this.findAll.get();
+	}
+
+	@Benchmark
+	public List<?> projection() {
+		return this.findSummaries.get();
+	}
+
+	@Benchmark
+	public List<?> rowMapper() throws SQLException {
+		ResultSet resultSet = StubJdbc.resultSet(this.dataset);
+		RowMapper<?> mapper = RowMapper.of(this.entityClass, resultSet.getMetaData());
+		List<Object> list = new ArrayList<>();
+		while (resultSet.next()) {
+			list.add(mapper.map(resultSet));
+		}
+		return list;
+	}
+
+	@Benchmark
+	public List<?> reflective() throws Exception {
+		ResultSet resultSet = StubJdbc.resultSet(this.dataset);
+		ResultSetMetaData metaData = resultSet.getMetaData();
+		List<Object> list = new ArrayList<>();
+		while (resultSet.next()) {
+			Object entity = this.entityClass.newInstance();
+			for (int i = 1; i <= metaData.getColumnCount(); i++) {
+				Field field = findField(this.entityClass, metaData.getColumnLabel(i));
+				if (field == null) continue;
+				field.setAccessible(true);
+				field.set(entity, resultSet.getObject(i));
+			}
+			list.add(entity);
+		}
+		return list;
+	}
+
+	@Benchmark
+	public void stubScan(Blackhole blackhole) throws SQLException {
+		ResultSet resultSet = StubJdbc.resultSet(this.dataset);
+		int columns = this.dataset.getColumnCount();
+		while (resultSet.next()) {
+			for (int i = 1; i <= columns; i++) {
+				blackhole.consume(resultSet.getObject(i));
+			}
+		}
+	}
+
+	private static Field findField(Class<?> entityClass, String column) {
+		for (Field field : entityClass.getDeclaredFields()) {
+			Column annotation = field.getAnnotation(Column.class);
+			if (field.getName().equals(column) || (annotation != null && annotation.value().equals(column))) return field;
+		}
+		return null;
+	}
+}
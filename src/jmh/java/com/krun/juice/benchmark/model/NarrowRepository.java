@@ -0,0 +1,29 @@
+package com.krun.juice.benchmark.model;
+
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Cached;
+import com.krun.juice.repository.annotation.Query;
+
+import java.util.List;
+
+/**
+ * Created by krun on 2017/10/16.
+ */
+public interface NarrowRepository extends Repository<NarrowRow, String> {
+
+	@Query("SELECT * FROM %s")
+	List<NarrowRow> findAll();
+
+	@Query("SELECT id, code FROM %s")
+	List<RowSummary> findSummaries();
+
+	@Query("SELECT * FROM %s WHERE id = ?")
+	NarrowRow findById(String id);
+
+	@Cached(ttl = 3600000)
+	@Query("SELECT * FROM %s WHERE code = ?")
+	NarrowRow findByCode(int code);
+
+	@Query("UPDATE %s SET name = ? WHERE id = ?")
+	Integer updateName(String name, String id);
+}
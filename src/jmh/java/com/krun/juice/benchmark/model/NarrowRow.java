@@ -0,0 +1,19 @@
+package com.krun.juice.benchmark.model;
+
+import com.krun.juice.repository.annotation.Entity;
+import lombok.Data;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 4 列的表实体
+ */
+@Data
+@Entity("narrow")
+public class NarrowRow {
+
+	private String id;
+	private int code;
+	private String name;
+	private double score;
+}
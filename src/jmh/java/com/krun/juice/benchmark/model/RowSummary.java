@@ -0,0 +1,13 @@
+package com.krun.juice.benchmark.model;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 两种表实体共有的 id、code 两列的投影
+ */
+public interface RowSummary {
+
+	String getId();
+
+	int getCode();
+}
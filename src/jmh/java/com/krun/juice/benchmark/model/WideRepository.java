@@ -0,0 +1,18 @@
+package com.krun.juice.benchmark.model;
+
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Query;
+
+import java.util.List;
+
+/**
+ * Created by krun on 2017/10/16.
+ */
+public interface WideRepository extends Repository<WideRow, String> {
+
+	@Query("SELECT * FROM %s")
+	List<WideRow> findAll();
+
+	@Query("SELECT id, code FROM %s")
+	List<RowSummary> findSummaries();
+}
@@ -0,0 +1,36 @@
+package com.krun.juice.benchmark.model;
+
+import com.krun.juice.repository.annotation.Column;
+import com.krun.juice.repository.annotation.Entity;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 16 列的表实体，覆盖常见的字段类型
+ */
+@Data
+@Entity("wide")
+public class WideRow {
+
+	private String id;
+	private int code;
+	private long version;
+	private double score;
+	private boolean active;
+	private String name;
+	private String college;
+	private String major;
+	@Column("class")
+	private String clazz;
+	private Integer grade;
+	private Long parentId;
+	private Double weight;
+	private BigDecimal balance;
+	private Timestamp createdAt;
+	private Timestamp updatedAt;
+	private String remark;
+}
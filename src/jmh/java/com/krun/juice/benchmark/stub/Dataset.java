@@ -0,0 +1,89 @@
+package com.krun.juice.benchmark.stub;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 桩结果集的数据
+ *
+ * 按表实体的字段生成列和行，列值在创建时就已经装箱，读取时不会再产生分配。
+ */
+public final class Dataset {
+
+	final String[] columns;
+	final int[] types;
+	final Object[][] rows;
+
+	private Dataset(String[] columns, int[] types, Object[][] rows) {
+		this.columns = columns;
+		this.types = types;
+		this.rows = rows;
+	}
+
+	public int getColumnCount() {
+		return this.columns.length;
+	}
+
+	public int getRowCount() {
+		return this.rows.length;
+	}
+
+	public Object get(int row, int column) {
+		return this.rows[row][column];
+	}
+
+	/**
+	 * 以表实体的每个实例字段作为一列，生成 rowCount 行数据
+	 * @param entityClass 表实体类型
+	 * @param rowCount 行数
+	 * @return 数据
+	 */
+	public static Dataset of(Class<?> entityClass, int rowCount) {
+		List<Field> fields = new ArrayList<>();
+		for (Field field : entityClass.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers())) fields.add(field);
+		}
+		String[] columns = new String[fields.size()];
+		int[] types = new int[fields.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = fields.get(i).getName();
+			types[i] = sqlType(fields.get(i).getType());
+		}
+		Object[][] rows = new Object[rowCount][];
+		for (int r = 0; r < rowCount; r++) {
+			Object[] row = new Object[columns.length];
+			for (int c = 0; c < columns.length; c++) {
+				row[c] = value(fields.get(c).getType(), r, c);
+			}
+			rows[r] = row;
+		}
+		return new Dataset(columns, types, rows);
+	}
+
+	private static int sqlType(Class<?> type) {
+		if (type == int.class || type == Integer.class) return Types.INTEGER;
+		if (type == long.class || type == Long.class) return Types.BIGINT;
+		if (type == double.class || type == Double.class) return Types.DOUBLE;
+		if (type == boolean.class || type == Boolean.class) return Types.BOOLEAN;
+		if (type == BigDecimal.class) return Types.DECIMAL;
+		if (type == Timestamp.class) return Types.TIMESTAMP;
+		return Types.VARCHAR;
+	}
+
+	private static Object value(Class<?> type, int row, int column) {
+		if (type == int.class || type == Integer.class) return row * 31 + column;
+		if (type == long.class || type == Long.class) return (long) row * 1000003L + column;
+		if (type == double.class || type == Double.class) return row + column / 10.0;
+		if (type == boolean.class || type == Boolean.class) return (row + column) % 2 == 0;
+		if (type == BigDecimal.class) return BigDecimal.valueOf(row * 100L + column, 2);
+		if (type == Timestamp.class) return new Timestamp(1500000000000L + row * 1000L);
+		return "v" + row + "_" + column;
+	}
+}
@@ -0,0 +1,66 @@
+package com.krun.juice.benchmark.stub;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 桩驱动
+ *
+ * 接受 jdbc:juice-stub: 开头的 url，返回 {@link StubJdbc} 的连接。
+ * 所有连接的查询都返回当前设置的数据，基准测试在 @Setup 中设置。
+ */
+public class StubDriver implements Driver {
+
+	public static final String URL = "jdbc:juice-stub:bench";
+
+	private static volatile Dataset dataset;
+
+	public static Dataset getDataset() {
+		return dataset;
+	}
+
+	public static void setDataset(Dataset dataset) {
+		StubDriver.dataset = dataset;
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) {
+		return acceptsURL(url) ? StubJdbc.connection() : null;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith("jdbc:juice-stub:");
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+}
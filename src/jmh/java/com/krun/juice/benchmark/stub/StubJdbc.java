@@ -0,0 +1,184 @@
+package com.krun.juice.benchmark.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Arrays;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 内存中的 JDBC 桩实现
+ *
+ * 连接、语句、结果集都是动态代理，只实现 Juice 用到的方法，其他方法返回默认值。
+ * SELECT 语句返回 {@link StubDriver#getDataset()} 中的数据，其他语句影响一行。
+ * 动态代理本身会为每次调用分配参数数组，基准测试中的 stubScan 给出了这部分开销，用于对照。
+ */
+public final class StubJdbc {
+
+	private StubJdbc() {
+	}
+
+	public static Connection connection() {
+		return proxy(Connection.class, new ConnectionHandler());
+	}
+
+	public static PreparedStatement statement(Connection connection, String sql) {
+		return proxy(PreparedStatement.class, new StatementHandler(connection, sql));
+	}
+
+	public static ResultSet resultSet(Dataset dataset) {
+		return proxy(ResultSet.class, new ResultSetHandler(dataset));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class[] { type }, handler);
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class) return null;
+		if (type == boolean.class) return false;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == double.class) return 0.0;
+		if (type == float.class) return 0.0f;
+		if (type == short.class) return (short) 0;
+		if (type == byte.class) return (byte) 0;
+		return '\0';
+	}
+
+	/**
+	 * 处理 Object 自身的方法，返回 null 表示不是
+	 */
+	private static Object objectMethod(Object proxy, Method method, Object[] args, String description) {
+		switch (method.getName()) {
+			case "toString": return description;
+			case "hashCode": return System.identityHashCode(proxy);
+			case "equals": return proxy == args[0];
+			default: return null;
+		}
+	}
+
+	private static final class ConnectionHandler implements InvocationHandler {
+
+		private boolean closed;
+		private boolean autoCommit = true;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Object result = objectMethod(proxy, method, args, "StubConnection");
+			if (result != null) return result;
+			switch (method.getName()) {
+				case "prepareStatement": return statement((Connection) proxy, (String) args[0]);
+				case "isClosed": return this.closed;
+				case "close": this.closed = true; return null;
+				case "isValid": return !this.closed;
+				case "getAutoCommit": return this.autoCommit;
+				case "setAutoCommit": this.autoCommit = (Boolean) args[0]; return null;
+				default: return defaultValue(method.getReturnType());
+			}
+		}
+	}
+
+	private static final class StatementHandler implements InvocationHandler {
+
+		private final Connection connection;
+		private final String sql;
+		private final boolean query;
+		private int batched;
+		private boolean closed;
+		private ResultSet resultSet;
+
+		StatementHandler(Connection connection, String sql) {
+			this.connection = connection;
+			this.sql = sql;
+			this.query = sql.trim().regionMatches(true, 0, "SELECT", 0, 6);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Object result = objectMethod(proxy, method, args, this.sql);
+			if (result != null) return result;
+			switch (method.getName()) {
+				case "execute":
+					if (this.query) this.resultSet = resultSet(StubDriver.getDataset());
+					return this.query;
+				case "executeQuery":
+					return this.resultSet = resultSet(StubDriver.getDataset());
+				case "getResultSet": return this.resultSet;
+				case "executeUpdate": return 1;
+				case "getUpdateCount": return this.query ? -1 : 1;
+				case "addBatch": this.batched++; return null;
+				case "executeBatch": {
+					int[] counts = new int[this.batched];
+					Arrays.fill(counts, 1);
+					this.batched = 0;
+					return counts;
+				}
+				case "getConnection": return this.connection;
+				case "isClosed": return this.closed;
+				case "close": this.closed = true; return null;
+				default: return defaultValue(method.getReturnType());
+			}
+		}
+	}
+
+	private static final class ResultSetHandler implements InvocationHandler {
+
+		private final Dataset dataset;
+		private int row = -1;
+		private boolean wasNull;
+		private boolean closed;
+
+		ResultSetHandler(Dataset dataset) {
+			this.dataset = dataset;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.startsWith("get") && args != null && args[0] instanceof Integer) {
+				Object value = this.dataset.rows[this.row][(Integer) args[0] - 1];
+				this.wasNull = value == null;
+				return value == null ? defaultValue(method.getReturnType()) : value;
+			}
+			Object result = objectMethod(proxy, method, args, "StubResultSet");
+			if (result != null) return result;
+			switch (name) {
+				case "next": return ++this.row < this.dataset.rows.length;
+				case "wasNull": return this.wasNull;
+				case "getMetaData": return proxy(ResultSetMetaData.class, new MetaDataHandler(this.dataset));
+				case "isClosed": return this.closed;
+				case "close": this.closed = true; return null;
+				default: return defaultValue(method.getReturnType());
+			}
+		}
+	}
+
+	private static final class MetaDataHandler implements InvocationHandler {
+
+		private final Dataset dataset;
+
+		MetaDataHandler(Dataset dataset) {
+			this.dataset = dataset;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Object result = objectMethod(proxy, method, args, "StubResultSetMetaData");
+			if (result != null) return result;
+			switch (method.getName()) {
+				case "getColumnCount": return this.dataset.columns.length;
+				case "getColumnLabel":
+				case "getColumnName": return this.dataset.columns[(Integer) args[0] - 1];
+				case "getColumnType": return this.dataset.types[(Integer) args[0] - 1];
+				default: return defaultValue(method.getReturnType());
+			}
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package com.krun.juice.connection.configuration;
 
+import com.krun.juice.connection.dialect.Dialect;
 import lombok.*;
 
+import java.util.List;
+
 /**
  * Created by krun on 2017/9/23.
  * 数据库连接参数类
@@ -12,7 +15,7 @@ import lombok.*;
  * TO-DO: 加入 properties 支持、读入文件映射 properties 支持。
  */
 
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -27,15 +30,110 @@ public class ConnectionConfiguration {
 	private String connectionURL;
 
 	/**
-	 * 驱动类名，事实上由于当前实现可以说是绑定了 com/mysql/jdbc/PreparedStatement
-	 * 这个 mysql-connector 包里的语句类型，
-	 * 后期估计不会再计划支持其他 sql 实现
-	 *
-	 * 注：其实要取消对这个类的依赖也行...自己写个装饰器保存 sql 预编译语句，但是这样就很难做一个
-	 * 输出编译后语句的效果了。
+	 * 只读副本的连接url，用户名、密码、驱动及连接池参数与主库相同。
+	 * 配置后 SELECT(以及声明了 @Query(readOnly = true) 的方法)会被分发到副本上执行，
+	 * 其他语句和事务中的所有语句仍在主库上执行
+	 */
+	@Singular
+	private List<String> replicaURLs;
+
+	/**
+	 * 在副本之间分发读请求的方式，为 null 时使用轮询
+	 */
+	private ReplicaSelection replicaSelection;
+
+	/**
+	 * 副本连接失败后被摘除，至少经过这个时长(毫秒)后才会重试，连续失败时翻倍，为 0 时使用默认值 1000
+	 */
+	private long replicaRetryInterval;
+
+	/**
+	 * 驱动类名
 	 */
 	private String driverClass;
 
+	/**
+	 * 数据库方言，为 null 时按连接 url 选择(MySQL、H2、PostgreSQL，其他数据库使用标准 sql 方言)
+	 */
+	private Dialect dialect;
+
 	private String username;
 	private String password;
+
+	/**
+	 * 连接池最大连接数，为 0 时不启用连接池，退回到单连接复用模式
+	 */
+	private int maxPoolSize;
+
+	/**
+	 * 连接池保持的最小连接数，空闲回收不会低于这个值
+	 */
+	private int minPoolSize;
+
+	/**
+	 * 借出连接时的最长等待时间(毫秒)，为 0 时使用默认值 30000
+	 */
+	private long borrowTimeout;
+
+	/**
+	 * 空闲连接的最长保留时间(毫秒)，为 0 时使用默认值 600000
+	 */
+	private long idleTimeout;
+
+	/**
+	 * 借出连接前是否校验连接可用
+	 */
+	private boolean validateOnBorrow;
+
+	/**
+	 * 校验连接时的超时时间(秒)，为 0 时使用默认值 3
+	 */
+	private int validationTimeout;
+
+	/**
+	 * 每个连接缓存的预编译语句数量，为 0 时使用默认值 64，为负数时不缓存
+	 */
+	private int statementCacheSize;
+
+	/**
+	 * sql 日志采样率，每 N 次调用输出一次执行的 sql，为 0 时不采样
+	 */
+	private int sqlLogSampleRate;
+
+	/**
+	 * 慢查询阈值(毫秒)，执行耗时超过该值的 sql 总会被输出，为 0 时不记录慢查询
+	 */
+	private long slowQueryThreshold;
+
+	/**
+	 * 以游标形式(Stream、Iterator、Cursor)返回结果的方法所使用的 fetch size，为 0 时使用驱动默认值；
+	 * 设置为 Integer.MIN_VALUE 时逐行读取结果，而不是一次性读入内存，由方言换算为驱动实际接受的值
+	 */
+	private int fetchSize;
+
+	/**
+	 * 批量执行时每次 executeBatch 提交的行数，为 0 时使用默认值 1000
+	 */
+	private int batchSize;
+
+	/**
+	 * 仓库方法默认的执行超时(毫秒)，为 0 时不限制。@Query(timeout = ...) 可以为单个方法覆盖
+	 */
+	private long queryTimeout;
+
+	/**
+	 * 是否开启驱动的批量改写(mysql 的 rewriteBatchedStatements、postgresql 的 reWriteBatchedInserts)，
+	 * 开启后驱动会把一批 INSERT 合并成一条多值 INSERT 发送
+	 */
+	private boolean rewriteBatchedStatements;
+
+	/**
+	 * 只配置连接参数，其余参数使用默认值。保留这个构造器是为了兼容最初的四参数写法
+	 */
+	public ConnectionConfiguration(String connectionURL, String driverClass, String username, String password) {
+		this.connectionURL = connectionURL;
+		this.driverClass = driverClass;
+		this.username = username;
+		this.password = password;
+	}
 }
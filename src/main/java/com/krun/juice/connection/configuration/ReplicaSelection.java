@@ -0,0 +1,19 @@
+package com.krun.juice.connection.configuration;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 在只读副本之间分发读请求的方式
+ */
+public enum ReplicaSelection {
+
+	/**
+	 * 依次选择下一个可用的副本
+	 */
+	ROUND_ROBIN,
+
+	/**
+	 * 选择当前借出连接最少的可用副本，适用于各副本负载或查询耗时差异较大的场景
+	 */
+	LEAST_IN_FLIGHT
+}
@@ -0,0 +1,84 @@
+package com.krun.juice.connection.dialect;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 数据库方言
+ *
+ * 把与具体数据库、具体驱动相关的行为集中到这里，Juice 的其他部分只依赖 java.sql 接口：
+ * 连接参数(批量改写)、游标读取时的 fetch size 及其前提、分页语法、返回自增主键的语句，以及日志中 sql 的输出。
+ * 未在 {@link ConnectionConfiguration#getDialect()} 中指定时，按连接 url 选择。
+ */
+public interface Dialect {
+
+	/**
+	 * 按连接 url 选择方言，无法识别时使用 {@link StandardDialect}
+	 * @param url 连接 url
+	 * @return 方言
+	 */
+	static Dialect of(String url) {
+		for (Dialect dialect : new Dialect[] { MySqlDialect.INSTANCE, H2Dialect.INSTANCE, PostgreSqlDialect.INSTANCE }) {
+			if (dialect.accepts(url)) return dialect;
+		}
+		return StandardDialect.INSTANCE;
+	}
+
+	/**
+	 * @param url 连接 url
+	 * @return 是否适用于该连接
+	 */
+	boolean accepts(String url);
+
+	/**
+	 * 按配置补充连接参数，例如开启驱动的批量改写
+	 * @param url 配置的连接 url
+	 * @param configuration 连接配置
+	 * @return 实际使用的连接 url
+	 */
+	String configureURL(String url, ConnectionConfiguration configuration);
+
+	/**
+	 * 把配置的 fetch size 换算为游标读取时实际设置给语句的值
+	 * @param fetchSize {@link ConnectionConfiguration#getFetchSize()}，Integer.MIN_VALUE 表示逐行读取
+	 * @return 实际使用的 fetch size，为 0 时不设置
+	 */
+	int streamingFetchSize(int fetchSize);
+
+	/**
+	 * @return 驱动是否只在事务中(autoCommit 为 false)才按 fetch size 分批读取游标。
+	 *         为 true 时，事务外以游标形式返回结果的方法会在独占的连接上关闭自动提交，游标关闭时再恢复
+	 */
+	boolean streamingRequiresTransaction();
+
+	/**
+	 * 为查询加上限制行数的子句，行数是语句的最后一个参数，执行时绑定。
+	 * 不同的行数共用同一条语句，不会因为行数不同而产生新的语句
+	 * @param sql 查询语句
+	 * @return 限制行数后的查询语句
+	 */
+	String limit(String sql);
+
+	/**
+	 * 创建一个执行后可以通过 getGeneratedKeys() 读取自增主键的语句
+	 * @param connection 连接
+	 * @param sql INSERT 语句
+	 * @param keyColumns 主键列名，为空时由驱动决定返回哪些列
+	 * @return 预编译语句
+	 * @throws SQLException
+	 */
+	PreparedStatement prepareReturningKeys(Connection connection, String sql, String... keyColumns) throws SQLException;
+
+	/**
+	 * 输出语句对应的 sql，用于日志
+	 * @param statement 执行过的语句
+	 * @return 尽可能带上参数值的 sql
+	 */
+	String render(Statement statement);
+}
@@ -0,0 +1,31 @@
+package com.krun.juice.connection.dialect;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * H2 方言
+ *
+ * H2 的预编译语句 toString() 已经带有参数值；驱动不接受负数的 fetch size，逐行读取时交给驱动决定。
+ */
+public class H2Dialect extends StandardDialect {
+
+	public static final H2Dialect INSTANCE = new H2Dialect();
+
+	protected H2Dialect() {
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith("jdbc:h2:");
+	}
+
+	@Override
+	public int streamingFetchSize(int fetchSize) {
+		return Math.max(fetchSize, 0);
+	}
+
+	@Override
+	public String limit(String sql) {
+		return sql + " LIMIT ?";
+	}
+}
@@ -0,0 +1,86 @@
+package com.krun.juice.connection.dialect;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * MySQL 方言，同时适用于 MariaDB
+ *
+ * Connector/J 5.1 和 8.x 的预编译语句都提供 asSql() 输出填充参数后的 sql，
+ * 这里通过反射调用，从而不依赖具体的驱动版本。
+ */
+public class MySqlDialect extends StandardDialect {
+
+	public static final MySqlDialect INSTANCE = new MySqlDialect();
+
+	/**
+	 * 各语句类型的 asSql() 方法，没有这个方法的类型为 NONE
+	 */
+	private static final ConcurrentHashMap<Class<?>, Method> renderers = new ConcurrentHashMap<>();
+
+	private static final Method NONE;
+
+	static {
+		try {
+			NONE = Object.class.getMethod("toString");
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	protected MySqlDialect() {
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:");
+	}
+
+	@Override
+	public String configureURL(String url, ConnectionConfiguration configuration) {
+		if (!configuration.isRewriteBatchedStatements()) return url;
+		return appendParameter(url, "rewriteBatchedStatements", "true");
+	}
+
+	/**
+	 * Connector/J 只有在 fetch size 为 Integer.MIN_VALUE 时才会逐行读取，
+	 * 正数只在连接参数开启 useCursorFetch 时生效，因此原样使用
+	 */
+	@Override
+	public int streamingFetchSize(int fetchSize) {
+		return fetchSize;
+	}
+
+	@Override
+	public String limit(String sql) {
+		return sql + " LIMIT ?";
+	}
+
+	@Override
+	public String render(Statement statement) {
+		if (statement == null) return "null";
+		Method method = renderers.computeIfAbsent(statement.getClass(), MySqlDialect::rendererOf);
+		if (method != NONE) {
+			try {
+				return String.valueOf(method.invoke(statement));
+			} catch (ReflectiveOperationException | RuntimeException ignored) {
+			}
+		}
+		return super.render(statement);
+	}
+
+	private static Method rendererOf(Class<?> type) {
+		try {
+			Method method = type.getMethod("asSql");
+			method.setAccessible(true);
+			return method;
+		} catch (NoSuchMethodException | RuntimeException e) {
+			return NONE;
+		}
+	}
+}
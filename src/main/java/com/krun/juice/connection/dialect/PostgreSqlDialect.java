@@ -0,0 +1,58 @@
+package com.krun.juice.connection.dialect;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * PostgreSQL 方言
+ *
+ * 驱动只有在事务中(autoCommit 为 false)才会按 fetch size 分批读取游标，否则一次性读入全部结果，
+ * 因此事务外的游标读取需要临时关闭自动提交；逐行读取时每批取 STREAMING_FETCH_SIZE 行；
+ * RETURN_GENERATED_KEYS 会让驱动追加 RETURNING *，因此指定了主键列时只返回这些列。
+ */
+public class PostgreSqlDialect extends StandardDialect {
+
+	public static final PostgreSqlDialect INSTANCE = new PostgreSqlDialect();
+
+	private static final int STREAMING_FETCH_SIZE = 1000;
+
+	protected PostgreSqlDialect() {
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return url.startsWith("jdbc:postgresql:") || url.startsWith("jdbc:pgsql:");
+	}
+
+	@Override
+	public String configureURL(String url, ConnectionConfiguration configuration) {
+		if (!configuration.isRewriteBatchedStatements()) return url;
+		return appendParameter(url, "reWriteBatchedInserts", "true");
+	}
+
+	@Override
+	public int streamingFetchSize(int fetchSize) {
+		return fetchSize == Integer.MIN_VALUE ? STREAMING_FETCH_SIZE : Math.max(fetchSize, 0);
+	}
+
+	@Override
+	public boolean streamingRequiresTransaction() {
+		return true;
+	}
+
+	@Override
+	public String limit(String sql) {
+		return sql + " LIMIT ?";
+	}
+
+	@Override
+	public PreparedStatement prepareReturningKeys(Connection connection, String sql, String... keyColumns) throws SQLException {
+		if (keyColumns == null || keyColumns.length == 0) return super.prepareReturningKeys(connection, sql);
+		return connection.prepareStatement(sql, keyColumns);
+	}
+}
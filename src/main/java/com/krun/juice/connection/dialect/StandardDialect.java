@@ -0,0 +1,73 @@
+package com.krun.juice.connection.dialect;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 标准 sql 方言
+ *
+ * 只使用 JDBC 规范中的行为，也是其他方言的基类：
+ * 不修改连接 url，fetch size 原样使用(逐行读取时为 1)，限制行数使用 FETCH FIRST ? ROWS ONLY 语法，
+ * 自增主键通过 RETURN_GENERATED_KEYS 读取，日志中输出语句的 toString()。
+ */
+public class StandardDialect implements Dialect {
+
+	public static final StandardDialect INSTANCE = new StandardDialect();
+
+	protected StandardDialect() {
+	}
+
+	@Override
+	public boolean accepts(String url) {
+		return true;
+	}
+
+	@Override
+	public String configureURL(String url, ConnectionConfiguration configuration) {
+		return url;
+	}
+
+	@Override
+	public int streamingFetchSize(int fetchSize) {
+		return fetchSize == Integer.MIN_VALUE ? 1 : Math.max(fetchSize, 0);
+	}
+
+	@Override
+	public boolean streamingRequiresTransaction() {
+		return false;
+	}
+
+	@Override
+	public String limit(String sql) {
+		return sql + " FETCH FIRST ? ROWS ONLY";
+	}
+
+	@Override
+	public PreparedStatement prepareReturningKeys(Connection connection, String sql, String... keyColumns) throws SQLException {
+		return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+	}
+
+	@Override
+	public String render(Statement statement) {
+		return String.valueOf(statement);
+	}
+
+	/**
+	 * 为 url 追加一个连接参数，已经配置了同名参数时保持不变
+	 */
+	protected static String appendParameter(String url, String name, String value) {
+		if (url.contains(name + "=")) return url;
+		return url + (url.indexOf('?') < 0 ? "?" : "&") + name + "=" + value;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,76 @@
+package com.krun.juice.connection.provider;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 连接预算
+ *
+ * 限制同时借出的连接数。多个仓库工厂共用一个预算时，它们借出的连接总数不会超过预算；
+ * 仓库接口上的 {@link com.krun.juice.repository.annotation.MaxInFlight} 也用它限制单个仓库的并发。
+ * 使用公平信号量，许可按等待的先后分配，繁忙的工厂或仓库不会让其他调用方一直等不到连接。
+ */
+public final class ConnectionBudget {
+
+	private static final long DEFAULT_TIMEOUT = 30000;
+
+	private final int permits;
+
+	private final long timeout;
+
+	private final Semaphore semaphore;
+
+	/**
+	 * @param permits 同时借出的连接数上限
+	 */
+	public ConnectionBudget(int permits) {
+		this(permits, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param permits 同时借出的连接数上限
+	 * @param timeout 等待许可的最长时间(毫秒)
+	 */
+	public ConnectionBudget(int permits, long timeout) {
+		if (permits <= 0) throw new IllegalArgumentException(String.format("连接预算必须大于 0: [%d]", permits));
+		this.permits = permits;
+		this.timeout = timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+		this.semaphore = new Semaphore(permits, true);
+	}
+
+	/**
+	 * 占用一个许可，借出连接前调用
+	 * @throws SQLException 等待超时或被中断
+	 */
+	public void acquire() throws SQLException {
+		try {
+			if (!this.semaphore.tryAcquire(this.timeout, TimeUnit.MILLISECONDS))
+				throw new SQLTimeoutException(String.format("等待连接预算超时: [%d ms, 上限: %d]", this.timeout, this.permits));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待连接预算时被中断", e);
+		}
+	}
+
+	/**
+	 * 归还一个许可，归还连接后调用
+	 */
+	public void release() {
+		this.semaphore.release();
+	}
+
+	public int getPermits() {
+		return this.permits;
+	}
+
+	/**
+	 * @return 当前借出的连接数
+	 */
+	public int getInFlight() {
+		return this.permits - this.semaphore.availablePermits();
+	}
+}
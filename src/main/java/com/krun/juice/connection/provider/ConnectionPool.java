@@ -0,0 +1,227 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import com.krun.juice.utils.log.LoggerProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/8.
+ *
+ * 有界连接池
+ *
+ * 借出、归还只依赖一个非公平信号量和一个无锁双端队列，不会在监视器上排队：
+ * 信号量限制同时借出的连接数，空闲连接以栈的方式存取，这样热连接总在队首被复用，
+ * 冷连接沉到队尾，由后台线程按空闲时长回收，同时把连接数补足到最小值。
+ */
+public class ConnectionPool extends ConnectionProvider {
+
+	private static final Logger logger = LoggerProvider.provide(ConnectionPool.class);
+
+	private static final long DEFAULT_BORROW_TIMEOUT = 30000;
+	private static final long DEFAULT_IDLE_TIMEOUT = 600000;
+	private static final int DEFAULT_VALIDATION_TIMEOUT = 3;
+
+	/**
+	 * 空闲不超过这个时长(毫秒)的连接借出时不再校验，避免每次借出都多一次往返
+	 */
+	private static final long VALIDATION_SKIP_WINDOW = 500;
+
+	/**
+	 * 所有连接池共用一个后台回收线程
+	 */
+	private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "juice-pool-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final int maxSize;
+	private final int minSize;
+	private final long borrowTimeout;
+	private final long idleTimeout;
+	private final boolean validateOnBorrow;
+	private final int validationTimeout;
+
+	private final ConcurrentLinkedDeque<PooledConnection> idle;
+	private final Semaphore permits;
+
+	/**
+	 * 池中连接总数，包括空闲的和借出的
+	 */
+	private final AtomicInteger total;
+
+	private final ScheduledFuture<?> evictTask;
+
+	private volatile boolean closed;
+
+	public ConnectionPool(ConnectionConfiguration configuration) {
+		super(configuration);
+		this.maxSize = configuration.getMaxPoolSize();
+		this.minSize = Math.min(Math.max(configuration.getMinPoolSize(), 0), this.maxSize);
+		this.borrowTimeout = configuration.getBorrowTimeout() > 0 ? configuration.getBorrowTimeout() : DEFAULT_BORROW_TIMEOUT;
+		this.idleTimeout = configuration.getIdleTimeout() > 0 ? configuration.getIdleTimeout() : DEFAULT_IDLE_TIMEOUT;
+		this.validateOnBorrow = configuration.isValidateOnBorrow();
+		this.validationTimeout = configuration.getValidationTimeout() > 0 ? configuration.getValidationTimeout() : DEFAULT_VALIDATION_TIMEOUT;
+
+		this.idle = new ConcurrentLinkedDeque<>();
+		this.permits = new Semaphore(this.maxSize);
+		this.total = new AtomicInteger();
+
+		long period = Math.min(Math.max(this.idleTimeout / 2, 1000), 30000);
+		this.evictTask = evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+		logger.info(String.format("创建连接池: [min: %d, max: %d]", this.minSize, this.maxSize));
+	}
+
+	@Override
+	public PooledConnection borrow() throws SQLException {
+		if (this.closed) throw new SQLException("连接池已关闭.");
+		try {
+			if (!this.permits.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS))
+				throw new SQLTimeoutException(String.format("等待数据库连接超时: [%d ms]", this.borrowTimeout));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("等待数据库连接时被中断", e);
+		}
+		try {
+			for (;;) {
+				PooledConnection pooled = this.idle.pollFirst();
+				if (pooled != null) {
+					if (isUsable(pooled)) {
+						pooled.touch();
+						return pooled;
+					}
+					discard(pooled);
+					continue;
+				}
+				/*
+				  持有许可却拿不到空闲连接，说明还没到上限或者另一个连接正在归还的路上
+				 */
+				if (reserve()) return open();
+				Thread.yield();
+			}
+		} catch (RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void release(PooledConnection pooled) {
+		if (pooled == null) return;
+		try {
+			if (this.closed || pooled.getConnection().isClosed()) {
+				discard(pooled);
+			} else {
+				pooled.touch();
+				this.idle.offerFirst(pooled);
+			}
+		} catch (SQLException e) {
+			discard(pooled);
+		} finally {
+			this.permits.release();
+		}
+	}
+
+	/**
+	 * 连接池中借出的连接本身就是独占的
+	 */
+	@Override
+	public PooledConnection borrowExclusive() throws SQLException {
+		return borrow();
+	}
+
+	@Override
+	public void releaseExclusive(PooledConnection pooled) {
+		release(pooled);
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		this.evictTask.cancel(false);
+		PooledConnection pooled;
+		while ((pooled = this.idle.pollFirst()) != null) {
+			discard(pooled);
+		}
+		super.close();
+	}
+
+	/**
+	 * 在不超过上限的前提下占用一个连接名额
+	 * @return 是否占用成功
+	 */
+	private boolean reserve() {
+		for (;;) {
+			int current = this.total.get();
+			if (current >= this.maxSize) return false;
+			if (this.total.compareAndSet(current, current + 1)) return true;
+		}
+	}
+
+	/**
+	 * 为已经占用的名额创建连接，失败时归还名额
+	 */
+	private PooledConnection open() {
+		try {
+			return new PooledConnection(this, create(), false, this.statementCacheSize);
+		} catch (RuntimeException e) {
+			this.total.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			Connection connection = pooled.getConnection();
+			if (connection.isClosed()) return false;
+			if (!this.validateOnBorrow) return true;
+			if (System.currentTimeMillis() - pooled.getLastAccess() < VALIDATION_SKIP_WINDOW) return true;
+			return connection.isValid(this.validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(PooledConnection pooled) {
+		this.total.decrementAndGet();
+		if (pooled.getStatementCache() != null) pooled.getStatementCache().clear();
+		try {
+			pooled.getConnection().close();
+		} catch (SQLException e) {
+			logger.warning(String.format("关闭数据库连接失败: %s", e.getMessage()));
+		}
+	}
+
+	/**
+	 * 回收空闲过久的连接，并把连接数补足到最小值
+	 */
+	private void evict() {
+		try {
+			long deadline = System.currentTimeMillis() - this.idleTimeout;
+			for (PooledConnection pooled : this.idle) {
+				if (this.total.get() <= this.minSize) break;
+				if (pooled.getLastAccess() > deadline) continue;
+				/*
+				  remove 成功说明这段时间里没有被借走
+				 */
+				if (this.idle.remove(pooled)) discard(pooled);
+			}
+			while (!this.closed && this.total.get() < this.minSize && reserve()) {
+				this.idle.offerLast(open());
+			}
+		} catch (RuntimeException e) {
+			logger.warning(String.format("维护连接池时发生错误: %s", e.getMessage()));
+		}
+	}
+}
@@ -1,13 +1,18 @@
 package com.krun.juice.connection.provider;
 
 import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import com.krun.juice.connection.dialect.Dialect;
 import com.krun.juice.utils.log.LoggerProvider;
 
-import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 /**
@@ -15,79 +20,286 @@ import java.util.logging.Logger;
  *
  * 连接供应器
  *
- * 并不是一个连接池实现，只是尽可能复用一个连接，推迟连接获取时间。
+ * 本身并不是一个连接池实现，只是尽可能复用一个连接，推迟连接获取时间；
+ * 当配置了 maxPoolSize 时，configure 会返回一个 {@link ConnectionPool}。
+ * 配置了只读副本时，{@link #borrowReadOnly()} 从副本借出连接，其余借出方式总是使用主库。
+ *
+ * 获取连接时使用 ReentrantLock 而不是 synchronized，建立连接的网络等待不会把虚拟线程钉在载体线程上。
  */
 public class ConnectionProvider {
 
 	private static Logger logger = LoggerProvider.provide(ConnectionProvider.class);
 
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+	/**
+	 * 已经加载的驱动类名 -> 驱动
+	 */
+	private static final ConcurrentHashMap<String, Driver> drivers = new ConcurrentHashMap<>();
+
 	/**
 	 * 主要用于 Java SE 环境中使用 Juice。
 	 * @param configuration 数据库连接配置类
 	 * @return 一个连接供应器实例
 	 */
 	public static ConnectionProvider configure(ConnectionConfiguration configuration) {
+		if (configuration.getMaxPoolSize() > 0) return new ConnectionPool(configuration);
 		return new ConnectionProvider(configuration);
 	}
 
-	private final ConnectionConfiguration configuration;
+	protected final ConnectionConfiguration configuration;
 
 	/**
-	 * 用于每次获取链接时检查是否已经加载驱动
-	 *
-	 * 注：本来想通过保存 Driver 来避免 DriverManager.getConnection(url)，
-	 * 因为这种连接获取方式会遍历 Driver 列表，由于本实现是带锁的，每次都遍历也许会
+	 * 接受连接 url 的驱动，创建连接时直接调用它，不再经过 DriverManager 遍历已注册的驱动
 	 */
 	private final Driver driver;
 
+	/**
+	 * 按配置补充过参数的连接 url，以及用户名、密码
+	 */
+	private final String url;
+	private final Properties info;
+
 	private volatile Connection connection;
 
+	/**
+	 * 单连接模式下借出的共享连接
+	 */
+	private PooledConnection shared;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 关闭后不再创建新的连接
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * 每个连接缓存的语句数量
+	 */
+	protected final int statementCacheSize;
+
+	protected final Dialect dialect;
+
+	/**
+	 * 只读副本，没有配置时为 null
+	 */
+	private final ReplicaSet replicas;
 
 	public ConnectionProvider(ConnectionConfiguration configuration) {
 		this.configuration = configuration;
+		this.statementCacheSize = configuration.getStatementCacheSize() == 0
+				? DEFAULT_STATEMENT_CACHE_SIZE : configuration.getStatementCacheSize();
+		this.dialect = configuration.getDialect() != null
+				? configuration.getDialect() : Dialect.of(configuration.getConnectionURL());
 
-		DriverManager.setLogWriter(new PrintWriter(System.out));
+		this.driver = loadDriver(configuration.getDriverClass(), configuration.getConnectionURL());
+		this.url = this.dialect.configureURL(configuration.getConnectionURL(), configuration);
+		this.info = new Properties();
+		if (configuration.getUsername() != null) this.info.setProperty("user", configuration.getUsername());
+		if (configuration.getPassword() != null) this.info.setProperty("password", configuration.getPassword());
 
-		try {
-			DriverManager.registerDriver(
-					(Driver) Class.forName(this.configuration.getDriverClass())
-					.newInstance()
-			);
-		} catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
-			throw new RuntimeException("无法加载数据库驱动", e);
-		}
+		List<String> replicaURLs = configuration.getReplicaURLs();
+		this.replicas = replicaURLs == null || replicaURLs.isEmpty() ? null : new ReplicaSet(configuration, replicaURLs);
+	}
 
+	/**
+	 * 加载驱动类并找到接受连接 url 的驱动。
+	 * 驱动类在整个进程中只加载、注册一次，同一个工厂的副本以及其他工厂不会重复注册
+	 * @param driverClass 驱动类名，为 null 时只从已注册的驱动中查找
+	 * @param url 连接 url
+	 * @return 驱动
+	 */
+	private static Driver loadDriver(String driverClass, String url) {
+		if (driverClass != null) drivers.computeIfAbsent(driverClass, ConnectionProvider::registerDriver);
 		try {
-			this.driver = DriverManager.getDriver(this.configuration.getConnectionURL());
+			return DriverManager.getDriver(url);
 		} catch (SQLException e) {
-			throw new RuntimeException("获取数据库驱动失败", e);
+			throw new RuntimeException(String.format("获取数据库驱动失败: [%s]", url), e);
 		}
 	}
 
-	private synchronized Connection create() {
-		if (this.driver == null)
-			throw new RuntimeException("尚未加载数据库驱动.");
+	/**
+	 * 加载驱动类。JDBC 4 的驱动在类初始化时会自行注册，没有注册的驱动才在这里注册一个实例
+	 */
+	private static Driver registerDriver(String driverClass) {
+		try {
+			Class<?> type = Class.forName(driverClass);
+			for (Enumeration<Driver> registered = DriverManager.getDrivers(); registered.hasMoreElements(); ) {
+				Driver driver = registered.nextElement();
+				if (type.isInstance(driver)) return driver;
+			}
+			Driver driver = (Driver) type.newInstance();
+			DriverManager.registerDriver(driver);
+			return driver;
+		} catch (SQLException | InstantiationException | IllegalAccessException | ClassNotFoundException | ClassCastException e) {
+			throw new RuntimeException(String.format("无法加载数据库驱动: [%s]", driverClass), e);
+		}
+	}
 
+	protected Connection create() {
+		if (this.closed) throw new IllegalStateException("连接供应器已关闭.");
 		try {
-			return DriverManager.getConnection(this.configuration.getConnectionURL(),
-							this.configuration.getUsername(), this.configuration.getPassword()
-			);
+			Connection connection = this.driver.connect(this.url, this.info);
+			if (connection == null)
+				throw new SQLException(String.format("数据库驱动不接受连接 url: [%s]", this.url));
+			return connection;
 		} catch (SQLException e) {
 			throw new RuntimeException("获取数据库连接失败", e);
 		}
 	}
 
 	/**
-	 * 做一层延迟加载
-	 * @return
+	 * @return 实际使用的连接 url
+	 */
+	protected String getConnectionURL() {
+		return this.url;
+	}
+
+	public Dialect getDialect() {
+		return this.dialect;
+	}
+
+	/**
+	 * 做一层延迟加载，返回单连接模式下共享的连接。
+	 * 直接拿到的连接无法归还，连接池模式下它也不属于连接池，只在供应器关闭时关闭
+	 * @return 共享连接
 	 * @throws SQLException
+	 * @deprecated 请使用 {@link #borrow()} / {@link #release(PooledConnection)} 借出和归还连接
 	 */
-	public synchronized Connection provide() throws SQLException {
-		if (this.connection == null) {
-			this.connection = create();
-		} else if (this.connection.isClosed()) {
-			this.connection = create();
+	@Deprecated
+	public Connection provide() throws SQLException {
+		return connection();
+	}
+
+	private Connection connection() throws SQLException {
+		this.lock.lock();
+		try {
+			if (this.connection == null) {
+				this.connection = create();
+			} else if (this.connection.isClosed()) {
+				this.connection = create();
+			}
+			return this.connection;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 借出一个连接，调用结束后需要通过 {@link #release(PooledConnection)} 归还。
+	 *
+	 * 单连接模式下总是借出同一个共享连接。
+	 * @return 借出的连接
+	 * @throws SQLException
+	 */
+	public PooledConnection borrow() throws SQLException {
+		this.lock.lock();
+		try {
+			Connection connection = connection();
+			if (this.shared == null || this.shared.getConnection() != connection) {
+				if (this.shared != null && this.shared.getStatementCache() != null)
+					this.shared.getStatementCache().clear();
+				this.shared = new PooledConnection(this, connection, true, this.statementCacheSize);
+			}
+			return this.shared;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * 归还一个借出的连接，单连接模式下共享连接会一直保留，因此什么也不做。
+	 * @param pooled 借出的连接
+	 */
+	public void release(PooledConnection pooled) {
+	}
+
+	/**
+	 * 为只读查询借出一个连接，调用结束后需要通过 {@link #releaseReadOnly(PooledConnection)} 归还。
+	 *
+	 * 配置了只读副本时从一个可用的副本借出，没有副本或者副本都不可用时从主库借出。
+	 * @return 借出的连接
+	 * @throws SQLException
+	 */
+	public PooledConnection borrowReadOnly() throws SQLException {
+		if (this.replicas != null) {
+			PooledConnection pooled = this.replicas.borrow();
+			if (pooled != null) return pooled;
+		}
+		return borrow();
+	}
+
+	/**
+	 * @return 是否配置了只读副本
+	 */
+	public boolean hasReplicas() {
+		return this.replicas != null;
+	}
+
+	/**
+	 * 归还 {@link #borrowReadOnly()} 借出的连接
+	 * @param pooled 借出的连接
+	 */
+	public void releaseReadOnly(PooledConnection pooled) {
+		if (this.replicas == null || !this.replicas.release(pooled)) release(pooled);
+	}
+
+	/**
+	 * 报告在借出的连接上执行时发生的错误，连接层面的错误会使连接所属的只读副本被暂时摘除
+	 * @param pooled 借出的连接
+	 * @param error 执行时抛出的异常
+	 */
+	public void failed(PooledConnection pooled, Throwable error) {
+		if (this.replicas != null) this.replicas.failed(pooled, error);
+	}
+
+	/**
+	 * 借出一个独占的连接，用于事务等需要在一段时间内独占连接状态的场景，
+	 * 用完后需要通过 {@link #releaseExclusive(PooledConnection)} 归还。
+	 *
+	 * 单连接模式下共享连接不能被独占，因此创建一个新的连接。
+	 * @return 借出的连接
+	 * @throws SQLException
+	 */
+	public PooledConnection borrowExclusive() throws SQLException {
+		return new PooledConnection(this, create(), false, this.statementCacheSize);
+	}
+
+	/**
+	 * 归还独占的连接，单连接模式下直接关闭
+	 * @param pooled 借出的连接
+	 */
+	public void releaseExclusive(PooledConnection pooled) {
+		if (pooled == null) return;
+		if (pooled.getStatementCache() != null) pooled.getStatementCache().clear();
+		try {
+			pooled.getConnection().close();
+		} catch (SQLException e) {
+			logger.warning(String.format("关闭数据库连接失败: %s", e.getMessage()));
+		}
+	}
+
+	/**
+	 * 关闭供应器所持有的连接，以及只读副本的连接，之后不能再借出连接
+	 */
+	public void close() {
+		this.closed = true;
+		if (this.replicas != null) this.replicas.close();
+		this.lock.lock();
+		try {
+			if (this.connection == null) return;
+			if (this.shared != null && this.shared.getStatementCache() != null)
+				this.shared.getStatementCache().clear();
+			try {
+				this.connection.close();
+			} catch (SQLException e) {
+				logger.warning(String.format("关闭数据库连接失败: %s", e.getMessage()));
+			}
+			this.connection = null;
+			this.shared = null;
+		} finally {
+			this.lock.unlock();
 		}
-		return this.connection;
 	}
 }
@@ -0,0 +1,68 @@
+package com.krun.juice.connection.provider;
+
+import java.sql.Connection;
+
+/**
+ * Created by krun on 2017/10/8.
+ *
+ * 借出的连接
+ *
+ * 由连接供应器借出、并在调用结束后归还。
+ * 单连接模式下所有调用方拿到的是同一个共享实例，连接池模式下每个实例同一时刻只会被一个调用方持有。
+ */
+public class PooledConnection {
+
+	private final Connection connection;
+
+	/**
+	 * 借出这个连接的供应器，归还时据此找到所属的只读副本
+	 */
+	private final ConnectionProvider owner;
+
+	/**
+	 * 是否为单连接模式下的共享连接
+	 */
+	private final boolean shared;
+
+	/**
+	 * 这个连接上创建过的语句，为 null 时不缓存
+	 */
+	private final StatementCache statementCache;
+
+	/**
+	 * 最后一次借出或归还的时间，用于空闲回收和借出校验
+	 */
+	private volatile long lastAccess;
+
+	PooledConnection(ConnectionProvider owner, Connection connection, boolean shared, int statementCacheSize) {
+		this.owner = owner;
+		this.connection = connection;
+		this.shared = shared;
+		this.statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+		this.lastAccess = System.currentTimeMillis();
+	}
+
+	public Connection getConnection() {
+		return this.connection;
+	}
+
+	ConnectionProvider getOwner() {
+		return this.owner;
+	}
+
+	public boolean isShared() {
+		return this.shared;
+	}
+
+	public StatementCache getStatementCache() {
+		return this.statementCache;
+	}
+
+	long getLastAccess() {
+		return this.lastAccess;
+	}
+
+	void touch() {
+		this.lastAccess = System.currentTimeMillis();
+	}
+}
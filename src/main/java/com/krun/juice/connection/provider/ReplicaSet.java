@@ -0,0 +1,187 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import com.krun.juice.connection.configuration.ReplicaSelection;
+import com.krun.juice.utils.log.LoggerProvider;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 只读副本
+ *
+ * 每个副本都有自己的连接供应器(按主库的配置创建，只替换连接 url)，读请求按配置的方式在可用的副本之间分发。
+ * 副本借出连接失败或者在执行中断开时会被摘除，经过一段退避时间后再重新参与选择，连续失败时退避时间翻倍；
+ * 没有可用的副本时返回 null，由调用方退回到主库。
+ */
+final class ReplicaSet {
+
+	private static final Logger logger = LoggerProvider.provide(ReplicaSet.class);
+
+	private static final long DEFAULT_RETRY_INTERVAL = 1000;
+	private static final long MAX_RETRY_INTERVAL = 60000;
+
+	private final Replica[] replicas;
+	private final ReplicaSelection selection;
+	private final long retryInterval;
+
+	/**
+	 * 轮询的起点，最少借出模式下用于在借出数相同的副本之间轮换
+	 */
+	private final AtomicInteger next = new AtomicInteger();
+
+	ReplicaSet(ConnectionConfiguration configuration, List<String> urls) {
+		this.replicas = new Replica[urls.size()];
+		for (int i = 0; i < this.replicas.length; i++) {
+			ConnectionConfiguration replica = configuration.toBuilder()
+					.connectionURL(urls.get(i))
+					.clearReplicaURLs()
+					.build();
+			this.replicas[i] = new Replica(urls.get(i), ConnectionProvider.configure(replica));
+		}
+		this.selection = configuration.getReplicaSelection() == null
+				? ReplicaSelection.ROUND_ROBIN : configuration.getReplicaSelection();
+		this.retryInterval = configuration.getReplicaRetryInterval() > 0
+				? configuration.getReplicaRetryInterval() : DEFAULT_RETRY_INTERVAL;
+		logger.info(String.format("配置只读副本: [count: %d, selection: %s]", this.replicas.length, this.selection));
+	}
+
+	/**
+	 * 从一个可用的副本借出连接，借出失败的副本会被摘除并换下一个
+	 * @return 借出的连接，没有可用的副本时为 null
+	 * @throws SQLException 等待副本连接超时
+	 */
+	PooledConnection borrow() throws SQLException {
+		for (int attempt = 0; attempt < this.replicas.length; attempt++) {
+			Replica replica = select();
+			if (replica == null) return null;
+			replica.inFlight.incrementAndGet();
+			try {
+				PooledConnection pooled = replica.provider.borrow();
+				replica.recovered();
+				return pooled;
+			} catch (SQLTimeoutException e) {
+				/*
+				  副本的连接池已满不代表副本不可用，不摘除
+				 */
+				replica.inFlight.decrementAndGet();
+				throw e;
+			} catch (SQLException | RuntimeException e) {
+				replica.inFlight.decrementAndGet();
+				eject(replica, e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 归还副本借出的连接
+	 * @param pooled 借出的连接
+	 * @return 连接是否属于某个副本
+	 */
+	boolean release(PooledConnection pooled) {
+		Replica replica = ownerOf(pooled);
+		if (replica == null) return false;
+		replica.inFlight.decrementAndGet();
+		replica.provider.release(pooled);
+		return true;
+	}
+
+	/**
+	 * 执行中发生连接层面的错误(SQLState 为 08 开头)时摘除连接所属的副本
+	 * @param pooled 借出的连接
+	 * @param error 执行时抛出的异常
+	 */
+	void failed(PooledConnection pooled, Throwable error) {
+		if (!isConnectionFailure(error)) return;
+		Replica replica = ownerOf(pooled);
+		if (replica != null) eject(replica, error);
+	}
+
+	void close() {
+		for (Replica replica : this.replicas) {
+			replica.provider.close();
+		}
+	}
+
+	private Replica ownerOf(PooledConnection pooled) {
+		for (Replica replica : this.replicas) {
+			if (pooled.getOwner() == replica.provider) return replica;
+		}
+		return null;
+	}
+
+	private Replica select() {
+		long now = System.currentTimeMillis();
+		int length = this.replicas.length;
+		int start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % length;
+		Replica selected = null;
+		for (int i = 0; i < length; i++) {
+			Replica replica = this.replicas[(start + i) % length];
+			if (replica.retryAt > now) continue;
+			if (this.selection == ReplicaSelection.ROUND_ROBIN) return replica;
+			if (selected == null || replica.inFlight.get() < selected.inFlight.get()) selected = replica;
+		}
+		return selected;
+	}
+
+	private void eject(Replica replica, Throwable error) {
+		long interval;
+		synchronized (replica) {
+			interval = Math.min(this.retryInterval << Math.min(replica.failures, 16), MAX_RETRY_INTERVAL);
+			replica.failures++;
+			replica.retryAt = System.currentTimeMillis() + interval;
+		}
+		logger.warning(String.format("只读副本 [%s] 不可用，%d ms 后重试: %s", replica.url, interval, error.getMessage()));
+	}
+
+	private static boolean isConnectionFailure(Throwable error) {
+		if (error instanceof SQLNonTransientConnectionException || error instanceof SQLTransientConnectionException) return true;
+		if (!(error instanceof SQLException)) return false;
+		String state = ((SQLException) error).getSQLState();
+		return state != null && state.startsWith("08");
+	}
+
+	private static final class Replica {
+
+		final String url;
+		final ConnectionProvider provider;
+
+		/**
+		 * 当前借出的连接数
+		 */
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		/**
+		 * 连续失败的次数，决定下一次的退避时间
+		 */
+		int failures;
+
+		/**
+		 * 被摘除的副本在这个时间之后才会重新参与选择
+		 */
+		volatile long retryAt;
+
+		Replica(String url, ConnectionProvider provider) {
+			this.url = url;
+			this.provider = provider;
+		}
+
+		void recovered() {
+			if (this.retryAt == 0) return;
+			synchronized (this) {
+				if (this.retryAt == 0) return;
+				this.failures = 0;
+				this.retryAt = 0;
+			}
+			logger.info(String.format("只读副本 [%s] 已恢复", this.url));
+		}
+	}
+}
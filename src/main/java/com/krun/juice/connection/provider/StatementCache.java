@@ -0,0 +1,86 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.utils.log.LoggerProvider;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/9.
+ *
+ * 语句缓存
+ *
+ * 每个连接各有一份，以 sql 为键、按最近最少使用淘汰，被淘汰的语句会被关闭。
+ * 语句以 "取出-放回" 的方式使用：取出后缓存中不再持有它，直到调用方用完放回，
+ * 这样即使是单连接模式下多个线程共用一个连接，也不会有两个线程同时操作同一个语句。
+ */
+public class StatementCache {
+
+	private static final Logger logger = LoggerProvider.provide(StatementCache.class);
+
+	private final LinkedHashMap<String, Statement> statements;
+
+	public StatementCache(final int capacity) {
+		this.statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+				if (size() <= capacity) return false;
+				close(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * 取出一个缓存的语句
+	 * @param sql 语句对应的 sql
+	 * @return 缓存的语句，没有时返回 null
+	 */
+	public synchronized Statement take(String sql) {
+		return this.statements.remove(sql);
+	}
+
+	/**
+	 * 放回一个用完的语句，如果同一个 sql 已经有语句被放回，则关闭这一个
+	 * @param sql 语句对应的 sql
+	 * @param statement 用完的语句
+	 */
+	public void put(String sql, Statement statement) {
+		try {
+			if (statement instanceof PreparedStatement)
+				((PreparedStatement) statement).clearParameters();
+		} catch (SQLException e) {
+			close(statement);
+			return;
+		}
+		synchronized ( this ) {
+			if (this.statements.containsKey(sql)) {
+				close(statement);
+				return;
+			}
+			this.statements.put(sql, statement);
+		}
+	}
+
+	/**
+	 * 关闭并清空所有缓存的语句
+	 */
+	public synchronized void clear() {
+		for (Statement statement : this.statements.values()) {
+			close(statement);
+		}
+		this.statements.clear();
+	}
+
+	private static void close(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.warning(String.format("关闭语句失败: %s", e.getMessage()));
+		}
+	}
+}
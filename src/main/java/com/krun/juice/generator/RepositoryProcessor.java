@@ -0,0 +1,308 @@
+package com.krun.juice.generator;
+
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Entity;
+import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.factory.RepositoryFactory;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 仓库实现类生成器
+ *
+ * 在编译期为每个带有 @Query 方法的仓库接口生成一个实现类 [接口名]_JuiceImpl，
+ * 每个 @Query 方法直接以下标调用 {@link com.krun.juice.repository.invocation.RepositoryInvocationHandler#invoke(int, Object[])}，
+ * 仓库工厂找到实现类时不再创建动态代理，也不再扫描整个仓库接口。
+ *
+ * 同时在编译期检查仓库接口的声明：@Query 只能用于仓库接口，仓库接口需要直接继承 Repository&lt;E, I&gt;，
+ * 没有 @Query 的抽象方法会得到一个警告(调用时抛出 UnsupportedOperationException)。
+ */
+@SupportedAnnotationTypes("com.krun.juice.repository.annotation.Query")
+public class RepositoryProcessor extends AbstractProcessor {
+
+	private Elements elements;
+	private Types types;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		this.elements = this.processingEnv.getElementUtils();
+		this.types = this.processingEnv.getTypeUtils();
+
+		Set<TypeElement> repositories = new LinkedHashSet<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(Query.class)) {
+			Element owner = element.getEnclosingElement();
+			if (owner.getKind() != ElementKind.INTERFACE) {
+				error(element, "@Query 只能用于仓库接口的方法");
+				continue;
+			}
+			repositories.add((TypeElement) owner);
+		}
+		for (TypeElement repository : repositories) {
+			try {
+				generate(repository);
+			} catch (IOException e) {
+				error(repository, "生成仓库实现类失败: " + e.getMessage());
+			}
+		}
+		return false;
+	}
+
+	private void generate(TypeElement repository) throws IOException {
+		if (!repository.getTypeParameters().isEmpty()) {
+			warning(repository, "带类型参数的仓库接口不会生成实现类，将使用动态代理");
+			return;
+		}
+		if (!checkRepository(repository)) return;
+
+		TypeElement repositoryElement = this.elements.getTypeElement(Repository.class.getCanonicalName());
+		List<ExecutableElement> queries = new ArrayList<>();
+		List<ExecutableElement> inherited = new ArrayList<>();
+		List<ExecutableElement> others = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(this.elements.getAllMembers(repository))) {
+			if (!method.getModifiers().contains(Modifier.ABSTRACT)) continue;
+			if (method.getAnnotation(Query.class) != null) {
+				queries.add(method);
+			} else if (method.getEnclosingElement().equals(repositoryElement)) {
+				inherited.add(method);
+			} else {
+				others.add(method);
+				warning(method, String.format("方法 %s.%s() 没有 @Query 注解，调用时将抛出 UnsupportedOperationException",
+						repository.getSimpleName(), method.getSimpleName()));
+			}
+		}
+
+		PackageElement packageElement = this.elements.getPackageOf(repository);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+		String binaryName = this.elements.getBinaryName(repository).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+				.replace('$', '_') + RepositoryFactory.GENERATED_SUFFIX;
+		String repositoryName = repository.getQualifiedName().toString();
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+		source.append("/**\n")
+				.append(" * 由 Juice 注解处理器为 ").append(repositoryName).append(" 生成，请勿修改\n")
+				.append(" */\n")
+				.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n")
+				.append("public final class ").append(simpleName).append(" implements ").append(repositoryName).append(" {\n\n");
+
+		source.append("\tprivate static final java.lang.reflect.Method[] METHODS;\n\n")
+				.append("\tstatic {\n")
+				.append("\t\ttry {\n")
+				.append("\t\t\tMETHODS = new java.lang.reflect.Method[] {\n");
+		for (ExecutableElement method : queries) {
+			source.append("\t\t\t\t").append(repositoryName).append(".class.getMethod(\"").append(method.getSimpleName()).append('"');
+			for (VariableElement parameter : method.getParameters()) {
+				source.append(", ").append(this.types.erasure(parameter.asType())).append(".class");
+			}
+			source.append("),\n");
+		}
+		source.append("\t\t\t};\n")
+				.append("\t\t} catch (NoSuchMethodException e) {\n")
+				.append("\t\t\tthrow new ExceptionInInitializerError(e);\n")
+				.append("\t\t}\n")
+				.append("\t}\n\n");
+
+		source.append("\tprivate final com.krun.juice.repository.invocation.RepositoryInvocationHandler<")
+				.append(repositoryName).append("> handler;\n\n")
+				.append("\tpublic ").append(simpleName).append("(com.krun.juice.repository.factory.RepositoryFactory factory) {\n")
+				.append("\t\tthis.handler = factory.createHandler(")
+				.append(repositoryName).append(".class, METHODS);\n")
+				.append("\t}\n");
+
+		DeclaredType repositoryType = (DeclaredType) repository.asType();
+		for (int i = 0; i < queries.size(); i++) {
+			appendQueryMethod(source, repositoryType, queries.get(i), i);
+		}
+		for (ExecutableElement method : inherited) {
+			appendRepositoryMethod(source, repositoryType, method);
+		}
+		for (ExecutableElement method : others) {
+			appendUnsupportedMethod(source, repositoryType, repositoryName, method);
+		}
+
+		source.append("\n\t@Override\n")
+				.append("\tpublic String toString() {\n")
+				.append("\t\treturn \"").append(simpleName).append("\";\n")
+				.append("\t}\n")
+				.append("}\n");
+
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		try (Writer writer = this.processingEnv.getFiler().createSourceFile(qualifiedName, repository).openWriter()) {
+			writer.write(source.toString());
+		}
+	}
+
+	/**
+	 * 仓库接口需要把 Repository&lt;E, I&gt; 作为第一个父接口，运行时从这里取得表实体类型
+	 */
+	private boolean checkRepository(TypeElement repository) {
+		TypeElement repositoryElement = this.elements.getTypeElement(Repository.class.getCanonicalName());
+		List<? extends TypeMirror> interfaces = repository.getInterfaces();
+		if (interfaces.isEmpty()
+				|| !this.types.isSameType(this.types.erasure(interfaces.get(0)), this.types.erasure(repositoryElement.asType()))) {
+			error(repository, String.format("仓库接口 %s 需要以 Repository<E, I> 作为第一个父接口", repository.getSimpleName()));
+			return false;
+		}
+		List<? extends TypeMirror> arguments = ((DeclaredType) interfaces.get(0)).getTypeArguments();
+		if (arguments.isEmpty() || arguments.get(0).getKind() != TypeKind.DECLARED) {
+			error(repository, String.format("仓库接口 %s 需要指定表实体类型", repository.getSimpleName()));
+			return false;
+		}
+		TypeElement entity = (TypeElement) ((DeclaredType) arguments.get(0)).asElement();
+		boolean hasDefaultConstructor = false;
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()) hasDefaultConstructor = true;
+		}
+		if (!hasDefaultConstructor)
+			warning(repository, String.format("表实体 %s 没有无参构造器，无法映射查询结果", entity.getSimpleName()));
+		if (entity.getAnnotation(Entity.class) == null)
+			note(repository, String.format("表实体 %s 没有 @Entity 注解，将使用小写类名作为表名", entity.getSimpleName()));
+		return true;
+	}
+
+	private void appendQueryMethod(StringBuilder source, DeclaredType repositoryType, ExecutableElement method, int index) {
+		StringBuilder call = new StringBuilder("this.handler.invoke(").append(index).append(", ");
+		List<? extends VariableElement> parameters = method.getParameters();
+		if (parameters.isEmpty()) {
+			call.append("null");
+		} else {
+			call.append("new Object[] { ");
+			for (int i = 0; i < parameters.size(); i++) {
+				if (i > 0) call.append(", ");
+				call.append(parameters.get(i).getSimpleName());
+			}
+			call.append(" }");
+		}
+		call.append(')');
+		appendDelegation(source, repositoryType, method, call);
+	}
+
+	/**
+	 * Repository 自身声明的方法(save、saveAll)交给调用处理器的同名方法
+	 */
+	private void appendRepositoryMethod(StringBuilder source, DeclaredType repositoryType, ExecutableElement method) {
+		StringBuilder call = new StringBuilder("this.handler.").append(method.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = method.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0) call.append(", ");
+			call.append(parameters.get(i).getSimpleName());
+		}
+		call.append(')');
+		appendDelegation(source, repositoryType, method, call);
+	}
+
+	private void appendDelegation(StringBuilder source, DeclaredType repositoryType, ExecutableElement method, CharSequence call) {
+		ExecutableType type = (ExecutableType) this.types.asMemberOf(repositoryType, method);
+		appendSignature(source, method, type);
+
+		TypeMirror returnType = type.getReturnType();
+		source.append("\t\ttry {\n");
+		if (returnType.getKind() == TypeKind.VOID) {
+			source.append("\t\t\t").append(call).append(";\n");
+		} else {
+			String castType = returnType.getKind().isPrimitive()
+					? this.types.boxedClass((PrimitiveType) returnType).getQualifiedName().toString()
+					: returnType.toString();
+			source.append("\t\t\treturn (").append(castType).append(") ").append(call).append(";\n");
+		}
+		source.append("\t\t} catch (Throwable thrown$) {\n")
+				.append("\t\t\tif (thrown$ instanceof RuntimeException) throw (RuntimeException) thrown$;\n")
+				.append("\t\t\tif (thrown$ instanceof Error) throw (Error) thrown$;\n");
+		for (TypeMirror thrown : type.getThrownTypes()) {
+			String name = this.types.erasure(thrown).toString();
+			source.append("\t\t\tif (thrown$ instanceof ").append(name).append(") throw (").append(name).append(") thrown$;\n");
+		}
+		source.append("\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(thrown$);\n")
+				.append("\t\t}\n")
+				.append("\t}\n");
+	}
+
+	private void appendUnsupportedMethod(StringBuilder source, DeclaredType repositoryType, String repositoryName, ExecutableElement method) {
+		appendSignature(source, method, (ExecutableType) this.types.asMemberOf(repositoryType, method));
+		source.append("\t\tthrow new UnsupportedOperationException(\"方法 ")
+				.append(repositoryName).append('.').append(method.getSimpleName())
+				.append("() 没有 @Query 注解\");\n")
+				.append("\t}\n");
+	}
+
+	private void appendSignature(StringBuilder source, ExecutableElement method, ExecutableType type) {
+		source.append("\n\t@Override\n\tpublic ");
+		List<? extends TypeParameterElement> typeParameters = method.getTypeParameters();
+		if (!typeParameters.isEmpty()) {
+			source.append('<');
+			for (int i = 0; i < typeParameters.size(); i++) {
+				if (i > 0) source.append(", ");
+				TypeParameterElement parameter = typeParameters.get(i);
+				source.append(parameter.getSimpleName());
+				List<? extends TypeMirror> bounds = parameter.getBounds();
+				if (bounds.size() == 1 && "java.lang.Object".equals(bounds.get(0).toString())) continue;
+				for (int j = 0; j < bounds.size(); j++) {
+					source.append(j == 0 ? " extends " : " & ").append(bounds.get(j));
+				}
+			}
+			source.append("> ");
+		}
+		source.append(type.getReturnType()).append(' ').append(method.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = method.getParameters();
+		List<? extends TypeMirror> parameterTypes = type.getParameterTypes();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0) source.append(", ");
+			String parameterType = parameterTypes.get(i).toString();
+			if (method.isVarArgs() && i == parameters.size() - 1 && parameterType.endsWith("[]"))
+				parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+			source.append(parameterType).append(' ').append(parameters.get(i).getSimpleName());
+		}
+		source.append(')');
+		List<? extends TypeMirror> thrownTypes = type.getThrownTypes();
+		for (int i = 0; i < thrownTypes.size(); i++) {
+			source.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+		}
+		source.append(" {\n");
+	}
+
+	private void error(Element element, String message) {
+		this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	private void warning(Element element, String message) {
+		this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+	}
+
+	private void note(Element element, String message) {
+		this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+	}
+}
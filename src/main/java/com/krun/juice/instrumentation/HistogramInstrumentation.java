@@ -0,0 +1,143 @@
+package com.krun.juice.instrumentation;
+
+import com.krun.juice.utils.log.LoggerProvider;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 默认的度量实现
+ *
+ * 为每个仓库方法维护一个 {@link MethodMetrics}，可以选择注册到平台 MBeanServer，
+ * ObjectName 为 com.krun.juice:type=RepositoryMethod,factory=工厂名,repository=仓库类名,method=方法签名。
+ * 度量按 (工厂, 仓库, 方法) 区分，同一个实例可以配置给多个工厂，继承自同一父接口的方法在不同仓库中也分别记录。
+ */
+public class HistogramInstrumentation implements Instrumentation {
+
+	private static final Logger logger = LoggerProvider.provide(HistogramInstrumentation.class);
+
+	public static final String JMX_DOMAIN = "com.krun.juice";
+
+	private final boolean jmx;
+
+	private final ConcurrentHashMap<Key, MethodMetrics> metrics = new ConcurrentHashMap<>();
+
+	private final List<ObjectName> registered = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * @param jmx 是否把每个方法的度量注册为 MXBean
+	 */
+	public HistogramInstrumentation(boolean jmx) {
+		this.jmx = jmx;
+	}
+
+	@Override
+	public MethodRecorder recorder(String factoryName, Class<?> repositoryClass, Method method) {
+		return this.metrics.computeIfAbsent(new Key(factoryName, repositoryClass, method), key -> {
+			MethodMetrics metrics = new MethodMetrics(factoryName, repositoryClass, method);
+			if (this.jmx) register(factoryName, repositoryClass, method, metrics);
+			return metrics;
+		});
+	}
+
+	/**
+	 * @param factoryName 仓库工厂名称
+	 * @param repositoryClass 仓库类型
+	 * @param method 仓库方法
+	 * @return 方法的度量，没有记录过该方法时为 null
+	 */
+	public MethodMetrics getMetrics(String factoryName, Class<?> repositoryClass, Method method) {
+		return this.metrics.get(new Key(factoryName, repositoryClass, method));
+	}
+
+	public Collection<MethodMetrics> getMetrics() {
+		return Collections.unmodifiableCollection(this.metrics.values());
+	}
+
+	/**
+	 * 注销所有已注册的 MXBean
+	 */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized ( this.registered ) {
+			for (ObjectName name : this.registered) {
+				try {
+					server.unregisterMBean(name);
+				} catch (JMException ignored) {
+				}
+			}
+			this.registered.clear();
+		}
+	}
+
+	private void register(String factoryName, Class<?> repositoryClass, Method method, MethodMetrics metrics) {
+		try {
+			ObjectName name = new ObjectName(String.format("%s:type=RepositoryMethod,factory=%s,repository=%s,method=%s",
+					JMX_DOMAIN,
+					ObjectName.quote(factoryName),
+					ObjectName.quote(repositoryClass.getName()),
+					ObjectName.quote(signatureOf(method))));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) server.unregisterMBean(name);
+			server.registerMBean(metrics, name);
+			this.registered.add(name);
+		} catch (JMException e) {
+			logger.warning(String.format("注册方法 [%s.%s()] 的 MXBean 失败: %s",
+					repositoryClass.getSimpleName(),
+					method.getName(),
+					e.getMessage()));
+		}
+	}
+
+	private static String signatureOf(Method method) {
+		StringBuilder builder = new StringBuilder(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) builder.append(',');
+			builder.append(parameterTypes[i].getSimpleName());
+		}
+		return builder.append(')').toString();
+	}
+
+	/**
+	 * 度量的键: (工厂名称, 仓库类型, 仓库方法)
+	 */
+	private static final class Key {
+
+		private final String factoryName;
+		private final Class<?> repositoryClass;
+		private final Method method;
+
+		Key(String factoryName, Class<?> repositoryClass, Method method) {
+			this.factoryName = factoryName;
+			this.repositoryClass = repositoryClass;
+			this.method = method;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return this.factoryName.equals(key.factoryName)
+					&& this.repositoryClass == key.repositoryClass
+					&& this.method.equals(key.method);
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.factoryName.hashCode() * 31 + this.repositoryClass.hashCode()) * 31 + this.method.hashCode();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.krun.juice.instrumentation;
+
+import java.lang.reflect.Method;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 仓库方法的度量扩展点
+ *
+ * 仓库代理扫描方法时为每个 @Query 方法获取一个记录器，之后每次调用结束时把该次调用的各阶段耗时交给它。
+ * 返回 null 的方法完全不计时，调用路径上只多一次判空。
+ * 通过 RepositoryFactory.setInstrumentation(instrumentation) 配置，需要在获取仓库之前设置。
+ */
+public interface Instrumentation {
+
+	/**
+	 * 不记录任何方法
+	 */
+	Instrumentation NONE = (factoryName, repositoryClass, method) -> null;
+
+	/**
+	 * 为一个仓库方法创建记录器
+	 * @param factoryName 仓库工厂名称
+	 * @param repositoryClass 仓库类型
+	 * @param method 仓库方法
+	 * @return 记录器，为 null 时不记录该方法
+	 */
+	MethodRecorder recorder(String factoryName, Class<?> repositoryClass, Method method);
+}
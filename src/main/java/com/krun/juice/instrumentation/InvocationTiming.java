@@ -0,0 +1,115 @@
+package com.krun.juice.instrumentation;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 一次仓库方法调用的计时
+ *
+ * 调用路径依次经过以下阶段，每个阶段结束时记录一个时间点:
+ * wait(借出连接) -> prepare(取出或创建语句) -> bind(参数处理器) -> execute(执行语句) -> map(映射结果)
+ *
+ * 没有经过的阶段耗时为 0：例如自定义结果解析器的执行和映射无法区分，全部计入 execute；
+ * 批量方法的绑定和执行交替进行，全部计入 execute。
+ * 以游标形式返回的方法只计到游标创建为止，行数未知。
+ */
+public final class InvocationTiming {
+
+	private final long start;
+	private long borrowed;
+	private long prepared;
+	private long bound;
+	private long executed;
+	private long mapped;
+	private long end;
+	private long rows = -1;
+	private boolean failed;
+
+	private InvocationTiming(long start) {
+		this.start = start;
+	}
+
+	public static InvocationTiming start() {
+		return new InvocationTiming(System.nanoTime());
+	}
+
+	public void borrowed() {
+		this.borrowed = System.nanoTime();
+	}
+
+	public void prepared() {
+		this.prepared = System.nanoTime();
+	}
+
+	public void bound() {
+		this.bound = System.nanoTime();
+	}
+
+	public void executed() {
+		this.executed = System.nanoTime();
+	}
+
+	public void mapped() {
+		this.mapped = System.nanoTime();
+	}
+
+	public void rows(long rows) {
+		this.rows = rows;
+	}
+
+	public void failed() {
+		this.failed = true;
+	}
+
+	/**
+	 * 结束计时，把没有经过的阶段的时间点补为前一个时间点
+	 */
+	public void finish() {
+		this.end = System.nanoTime();
+		if (this.borrowed == 0) this.borrowed = this.start;
+		if (this.prepared == 0) this.prepared = this.borrowed;
+		if (this.bound == 0) this.bound = this.prepared;
+		if (this.executed == 0) this.executed = this.bound;
+		if (this.mapped == 0) this.mapped = this.executed;
+	}
+
+	/**
+	 * @return 等待连接的耗时(纳秒)
+	 */
+	public long getWait() {
+		return this.borrowed - this.start;
+	}
+
+	public long getPrepare() {
+		return this.prepared - this.borrowed;
+	}
+
+	public long getBind() {
+		return this.bound - this.prepared;
+	}
+
+	public long getExecute() {
+		return this.executed - this.bound;
+	}
+
+	public long getMap() {
+		return this.mapped - this.executed;
+	}
+
+	/**
+	 * @return 整个调用的耗时(纳秒)
+	 */
+	public long getTotal() {
+		return this.end - this.start;
+	}
+
+	/**
+	 * @return 读取或影响的行数，未知时为 -1
+	 */
+	public long getRows() {
+		return this.rows;
+	}
+
+	public boolean isFailed() {
+		return this.failed;
+	}
+}
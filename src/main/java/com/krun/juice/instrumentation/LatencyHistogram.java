@@ -0,0 +1,98 @@
+package com.krun.juice.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 延迟直方图
+ *
+ * 与 HdrHistogram 相同的对数-线性分桶：每个 2 的幂区间再等分为 16 个桶，
+ * 因此任何值的相对误差不超过 1/16；最大记录约 18 分钟(2^40 纳秒)，超出的值计入最后一个桶。
+ * 记录只有几次位运算和一次原子加(最大值只在变大时更新)，不加锁、不分配；
+ * 与 HdrHistogram 一样，平均值由各桶的中点估算。
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param value 耗时(纳秒)，负数按 0 记录
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		if (value > MAX_VALUE) value = MAX_VALUE;
+		this.counts.getAndIncrement(indexOf(value));
+		long max;
+		while (value > (max = this.max.get()) && !this.max.compareAndSet(max, value)) {
+		}
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	/**
+	 * @return 桶所覆盖区间的中点
+	 */
+	static long valueOf(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int shift = exponent - SUB_BUCKET_BITS;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + ((1L << shift) >> 1);
+	}
+
+	/**
+	 * 生成当前分布的快照，快照期间的并发记录可能只有部分被计入
+	 * @return 快照
+	 */
+	public LatencySnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.counts.get(i);
+			total += counts[i];
+			sum += (double) counts[i] * valueOf(i);
+		}
+		long max = this.max.get();
+		return new LatencySnapshot(
+				total,
+				total == 0 ? 0 : sum / total,
+				percentile(counts, total, 0.5, max),
+				percentile(counts, total, 0.9, max),
+				percentile(counts, total, 0.99, max),
+				percentile(counts, total, 0.999, max),
+				max);
+	}
+
+	private static long percentile(long[] counts, long total, double quantile, long max) {
+		if (total == 0) return 0;
+		long rank = (long) Math.ceil(total * quantile);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return Math.min(valueOf(i), max);
+		}
+		return max;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.max.set(0);
+	}
+}
@@ -0,0 +1,71 @@
+package com.krun.juice.instrumentation;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 延迟分布快照，单位为纳秒
+ */
+public final class LatencySnapshot {
+
+	private final long count;
+	private final double mean;
+	private final long p50;
+	private final long p90;
+	private final long p99;
+	private final long p999;
+	private final long max;
+
+	@ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "p999", "max" })
+	public LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public double getMean() {
+		return this.mean;
+	}
+
+	public long getP50() {
+		return this.p50;
+	}
+
+	public long getP90() {
+		return this.p90;
+	}
+
+	public long getP99() {
+		return this.p99;
+	}
+
+	public long getP999() {
+		return this.p999;
+	}
+
+	public long getMax() {
+		return this.max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("{count: %d, mean: %.1f us, p50: %d us, p90: %d us, p99: %d us, p999: %d us, max: %d us}",
+				this.count,
+				this.mean / 1000,
+				TimeUnit.NANOSECONDS.toMicros(this.p50),
+				TimeUnit.NANOSECONDS.toMicros(this.p90),
+				TimeUnit.NANOSECONDS.toMicros(this.p99),
+				TimeUnit.NANOSECONDS.toMicros(this.p999),
+				TimeUnit.NANOSECONDS.toMicros(this.max));
+	}
+}
@@ -0,0 +1,126 @@
+package com.krun.juice.instrumentation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 单个仓库方法的度量：调用次数、失败次数、行数，以及整体和各阶段的延迟直方图
+ */
+public final class MethodMetrics implements MethodRecorder, MethodMetricsMXBean {
+
+	private final String factory;
+	private final String repository;
+	private final String method;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+
+	private final LatencyHistogram total = new LatencyHistogram();
+	private final LatencyHistogram wait = new LatencyHistogram();
+	private final LatencyHistogram prepare = new LatencyHistogram();
+	private final LatencyHistogram bind = new LatencyHistogram();
+	private final LatencyHistogram execute = new LatencyHistogram();
+	private final LatencyHistogram map = new LatencyHistogram();
+
+	public MethodMetrics(String factoryName, Class<?> repositoryClass, Method method) {
+		this.factory = factoryName;
+		this.repository = repositoryClass.getName();
+		this.method = method.getName();
+	}
+
+	@Override
+	public void record(InvocationTiming timing) {
+		this.calls.increment();
+		if (timing.isFailed()) this.errors.increment();
+		if (timing.getRows() > 0) this.rows.add(timing.getRows());
+		this.total.record(timing.getTotal());
+		this.wait.record(timing.getWait());
+		this.prepare.record(timing.getPrepare());
+		this.bind.record(timing.getBind());
+		this.execute.record(timing.getExecute());
+		this.map.record(timing.getMap());
+	}
+
+	@Override
+	public String getFactory() {
+		return this.factory;
+	}
+
+	@Override
+	public String getRepository() {
+		return this.repository;
+	}
+
+	@Override
+	public String getMethod() {
+		return this.method;
+	}
+
+	@Override
+	public long getCalls() {
+		return this.calls.sum();
+	}
+
+	@Override
+	public long getErrors() {
+		return this.errors.sum();
+	}
+
+	@Override
+	public long getRows() {
+		return this.rows.sum();
+	}
+
+	@Override
+	public LatencySnapshot getTotal() {
+		return this.total.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getWait() {
+		return this.wait.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getPrepare() {
+		return this.prepare.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getBind() {
+		return this.bind.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getExecute() {
+		return this.execute.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getMap() {
+		return this.map.snapshot();
+	}
+
+	@Override
+	public void reset() {
+		this.calls.reset();
+		this.errors.reset();
+		this.rows.reset();
+		this.total.reset();
+		this.wait.reset();
+		this.prepare.reset();
+		this.bind.reset();
+		this.execute.reset();
+		this.map.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s] %s.%s() calls: %d, errors: %d, rows: %d\n\ttotal: %s\n\twait: %s\n\tprepare: %s\n\tbind: %s\n\texecute: %s\n\tmap: %s",
+				this.factory, this.repository, this.method, getCalls(), getErrors(), getRows(),
+				getTotal(), getWait(), getPrepare(), getBind(), getExecute(), getMap());
+	}
+}
@@ -0,0 +1,35 @@
+package com.krun.juice.instrumentation;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 仓库方法度量的 JMX 视图，延迟单位为纳秒
+ */
+public interface MethodMetricsMXBean {
+
+	String getFactory();
+
+	String getRepository();
+
+	String getMethod();
+
+	long getCalls();
+
+	long getErrors();
+
+	long getRows();
+
+	LatencySnapshot getTotal();
+
+	LatencySnapshot getWait();
+
+	LatencySnapshot getPrepare();
+
+	LatencySnapshot getBind();
+
+	LatencySnapshot getExecute();
+
+	LatencySnapshot getMap();
+
+	void reset();
+}
@@ -0,0 +1,17 @@
+package com.krun.juice.instrumentation;
+
+/**
+ * Created by krun on 2017/10/16.
+ *
+ * 仓库方法的记录器
+ *
+ * 每次访问数据库的调用结束后(包括失败的调用)调用一次，命中缓存的调用不会记录。
+ * 实现会在调用线程上同步执行，应当足够轻量，并且可以被多个线程同时调用。
+ */
+public interface MethodRecorder {
+
+	/**
+	 * @param timing 本次调用的各阶段耗时，只在此方法内有效，不要保留它
+	 */
+	void record(InvocationTiming timing);
+}
@@ -0,0 +1,150 @@
+package com.krun.juice.repository;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 表实体修改跟踪器
+ *
+ * 行映射器创建表实体后在这里记录一份快照：本次查询写入的字段下标，以及这些字段当时的值。
+ * 快照只引用字段值本身(字符串、包装类型等不可变的值与表实体共用)，byte[] 和 Date 这类可变值会复制一份；
+ * 原地修改其他可变值(例如集合)不会被发现，请替换整个值。
+ *
+ * 快照以表实体的身份(而不是 equals/hashCode)为键，并且弱引用表实体，表实体被回收后快照随之清理，
+ * 不需要调用方显式释放。
+ */
+public final class ChangeTracker<E> {
+
+	private static final int[] NONE = new int[0];
+
+	private final EntityMetadata<E> entity;
+
+	private final ConcurrentHashMap<IdentityKey, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+	ChangeTracker(EntityMetadata<E> entity) {
+		this.entity = entity;
+	}
+
+	/**
+	 * 记录表实体当前的快照，覆盖之前的快照
+	 * @param entity 表实体
+	 * @param fields 需要记录的字段在 {@link EntityMetadata#getFields()} 中的下标
+	 */
+	public void track(E entity, int[] fields) {
+		expunge();
+		Object[] values = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			values[i] = copyOf(this.entity.valueOf(entity, fields[i]));
+		}
+		this.snapshots.put(new IdentityKey(entity, this.queue), new Snapshot(fields, values));
+	}
+
+	/**
+	 * 保存成功后重新记录快照：已有快照时记录原来的字段，否则记录给定的字段
+	 * @param entity 表实体
+	 * @param fields 没有快照时需要记录的字段
+	 */
+	public void refresh(E entity, int[] fields) {
+		Snapshot snapshot = this.snapshots.get(new IdentityKey(entity, null));
+		track(entity, snapshot == null ? fields : snapshot.fields);
+	}
+
+	/**
+	 * 比较表实体与快照
+	 * @param entity 表实体
+	 * @return 值与快照不同的字段下标，没有快照时为 null
+	 */
+	public int[] changed(E entity) {
+		Snapshot snapshot = this.snapshots.get(new IdentityKey(entity, null));
+		if (snapshot == null) return null;
+		int[] changed = null;
+		int count = 0;
+		for (int i = 0; i < snapshot.fields.length; i++) {
+			if (Objects.deepEquals(snapshot.values[i], this.entity.valueOf(entity, snapshot.fields[i]))) continue;
+			if (changed == null) changed = new int[snapshot.fields.length - i];
+			changed[count++] = snapshot.fields[i];
+		}
+		return changed == null ? NONE : Arrays.copyOf(changed, count);
+	}
+
+	/**
+	 * @param entity 表实体
+	 * @return 是否记录了表实体的快照
+	 */
+	public boolean isTracked(E entity) {
+		return this.snapshots.containsKey(new IdentityKey(entity, null));
+	}
+
+	/**
+	 * 不再跟踪表实体，之后保存时更新所有列
+	 * @param entity 表实体
+	 */
+	public void forget(E entity) {
+		this.snapshots.remove(new IdentityKey(entity, null));
+	}
+
+	/**
+	 * @return 当前记录的快照数量(包括表实体已被回收、尚未清理的快照)
+	 */
+	public int size() {
+		expunge();
+		return this.snapshots.size();
+	}
+
+	private void expunge() {
+		for (Object key; (key = this.queue.poll()) != null; ) {
+			this.snapshots.remove(key);
+		}
+	}
+
+	private static Object copyOf(Object value) {
+		if (value instanceof byte[]) return ((byte[]) value).clone();
+		if (value instanceof Date) return ((Date) value).clone();
+		return value;
+	}
+
+	private static final class Snapshot {
+
+		final int[] fields;
+		final Object[] values;
+
+		Snapshot(int[] fields, Object[] values) {
+			this.fields = fields;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * 按身份比较的弱引用键，查找时使用不带引用队列的临时键
+	 */
+	private static final class IdentityKey extends WeakReference<Object> {
+
+		private final int hash;
+
+		IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) return true;
+			if (!(other instanceof IdentityKey)) return false;
+			Object referent = get();
+			return referent != null && referent == ((IdentityKey) other).get();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.krun.juice.repository;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Created by krun on 2017/10/13.
+ *
+ * 游标
+ *
+ * 仓库方法声明返回 Cursor&lt;E&gt;、Iterator&lt;E&gt; 或 Stream&lt;E&gt; 时，结果不会被一次性读入内存，
+ * 而是在遍历时逐行从数据库结果集中映射。游标持有语句和连接，遍历结束后会自动关闭，
+ * 提前结束遍历时需要调用 close() 归还连接(Stream 同样需要 close)。
+ *
+ * 游标只能遍历一次。
+ */
+public interface Cursor<E> extends Iterator<E>, Iterable<E>, AutoCloseable {
+
+	/**
+	 * 以 Stream 的形式遍历游标，关闭 Stream 时会关闭游标
+	 * @return 顺序流
+	 */
+	Stream<E> stream();
+
+	@Override
+	void close();
+}
@@ -0,0 +1,100 @@
+package com.krun.juice.repository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 调用方的截止时间
+ *
+ * 在当前线程上设置一个截止时间，之后这个线程中的仓库调用剩余的时间不足时直接超时，
+ * 其余调用的执行超时不会超过剩余的时间。一般以 try-with-resources 的方式使用：
+ * <pre>
+ * try (Deadline deadline = Deadline.after(200, TimeUnit.MILLISECONDS)) {
+ *     repository.findById(id);
+ *     repository.findAllAsync().join();
+ * }
+ * </pre>
+ * 嵌套设置时取较早的截止时间，内层不能延长外层的截止时间。
+ * 异步方法在调用时取得调用线程的截止时间，并在执行器上沿用。
+ * 截止时间由子线程继承，在作用域中 fork 的线程(包括 StructuredTaskScope 的子任务)同样受它约束；
+ * 在作用域中首次创建的线程池线程也会继承它，请不要在作用域中创建长期存在的线程池。
+ */
+public final class Deadline implements AutoCloseable {
+
+	private static final InheritableThreadLocal<Deadline> current = new InheritableThreadLocal<>();
+
+	/**
+	 * 截止时间，System.nanoTime() 的值
+	 */
+	private final long expiresAt;
+
+	/**
+	 * 设置前的截止时间，关闭时恢复
+	 */
+	private final Deadline previous;
+
+	private Deadline(long expiresAt, Deadline previous) {
+		this.expiresAt = expiresAt;
+		this.previous = previous;
+	}
+
+	/**
+	 * 在当前线程上设置截止时间
+	 * @param timeout 从现在起的时长
+	 * @param unit 时长的单位
+	 * @return 截止时间，关闭时恢复之前的截止时间
+	 */
+	public static Deadline after(long timeout, TimeUnit unit) {
+		Deadline previous = current.get();
+		long expiresAt = System.nanoTime() + unit.toNanos(timeout);
+		if (previous != null && previous.expiresAt - expiresAt < 0) expiresAt = previous.expiresAt;
+		Deadline deadline = new Deadline(expiresAt, previous);
+		current.set(deadline);
+		return deadline;
+	}
+
+	/**
+	 * @return 当前线程的截止时间，没有时为 null
+	 */
+	public static Deadline current() {
+		return current.get();
+	}
+
+	/**
+	 * 在另一个线程上沿用调用方的截止时间，供异步执行使用
+	 * @param deadline 调用方的截止时间，可以为 null
+	 * @return 当前线程原来的截止时间，执行结束后再以它调用一次以恢复
+	 */
+	public static Deadline swap(Deadline deadline) {
+		Deadline previous = current.get();
+		if (deadline == null) current.remove();
+		else current.set(deadline);
+		return previous;
+	}
+
+	/**
+	 * @param unit 时长的单位
+	 * @return 剩余的时长，已经过了截止时间时为 0 或负数
+	 */
+	public long remaining(TimeUnit unit) {
+		return unit.convert(this.expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	public boolean isExpired() {
+		return this.expiresAt - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * 恢复设置前的截止时间
+	 */
+	@Override
+	public void close() {
+		if (current.get() == this) swap(this.previous);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Deadline{remaining=%d ms}", remaining(TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,355 @@
+package com.krun.juice.repository;
+
+import com.krun.juice.repository.annotation.Column;
+import com.krun.juice.repository.annotation.Entity;
+import com.krun.juice.repository.annotation.Id;
+import com.krun.juice.repository.resolver.RowMapper;
+import com.krun.juice.util.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 表实体元数据
+ *
+ * 每个表实体类型只解析一次：表名、列名与字段的对应关系(包括父类中声明的字段)、无参构造器，
+ * 以及按结果集结构编译好的行映射器。元数据在所有仓库工厂和仓库之间共享，
+ * 创建后不再修改(行映射器表除外，它本身是并发安全的)，读取时不需要加锁。
+ *
+ * 仓库方法的结果类型同样在这里解析一次并缓存，见 {@link #resultTypeOf(Method)}。
+ */
+public final class EntityMetadata<E> {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final ConcurrentHashMap<Class<?>, EntityMetadata<?>> entities = new ConcurrentHashMap<>();
+
+	private static final ConcurrentHashMap<Method, ResultType> resultTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * 获取表实体的元数据，第一次获取时解析
+	 * @param entityClass 表实体类型
+	 * @param <E> 表实体类型
+	 * @return 元数据
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E> EntityMetadata<E> of(Class<E> entityClass) {
+		return (EntityMetadata<E>) entities.computeIfAbsent(entityClass, EntityMetadata::new);
+	}
+
+	/**
+	 * 获取仓库方法的结果类型，第一次获取时解析
+	 * @param method 仓库方法
+	 * @return 结果类型
+	 */
+	public static ResultType resultTypeOf(Method method) {
+		return resultTypes.computeIfAbsent(method, ResultType::new);
+	}
+
+	private final Class<E> entityClass;
+
+	private final String tableName;
+
+	/**
+	 * 构造器不可用时为 null，直到真正需要创建表实体时才报错
+	 */
+	private final MethodHandle constructor;
+
+	/**
+	 * 列名(@Column 别名或字段名) -> 字段，字段名优先于别名，子类字段优先于父类字段
+	 */
+	private final Map<String, Field> columns;
+
+	/**
+	 * 同上，键为小写列名，用于忽略大小写匹配
+	 */
+	private final Map<String, Field> lowerCaseColumns;
+
+	/**
+	 * 所有可映射的字段，子类在前
+	 */
+	private final List<Field> fields;
+
+	/**
+	 * 与 fields 一一对应的字段读取器，类型为 (Object) -> Object
+	 */
+	private final MethodHandle[] getters;
+
+	/**
+	 * 主键列名，父类在前，没有主键时为空
+	 */
+	private final List<String> keyColumns;
+
+	/**
+	 * @Entity(trackChanges = true) 的表实体的修改跟踪器，其他表实体为 null
+	 */
+	private final ChangeTracker<E> changeTracker;
+
+	/**
+	 * 结果集结构 -> 行映射器
+	 */
+	private final ConcurrentHashMap<String, RowMapper<E>> mappers = new ConcurrentHashMap<>();
+
+	private EntityMetadata(Class<E> entityClass) {
+		this.entityClass = entityClass;
+		Entity entity = entityClass.getAnnotation(Entity.class);
+		this.tableName = entity == null ? entityClass.getSimpleName().toLowerCase() : entity.value();
+		this.constructor = constructorOf(entityClass);
+
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+				field.setAccessible(true);
+				fields.add(field);
+			}
+		}
+
+		Map<String, Field> columns = new LinkedHashMap<>();
+		for (Field field : fields) {
+			Column column = field.getAnnotation(Column.class);
+			if (column != null) columns.putIfAbsent(column.value(), field);
+		}
+		/*
+		  字段名覆盖别名，但子类字段不被父类同名字段覆盖
+		 */
+		Map<String, Field> names = new HashMap<>();
+		for (Field field : fields) {
+			names.putIfAbsent(field.getName(), field);
+		}
+		columns.putAll(names);
+
+		Map<String, Field> lowerCaseColumns = new HashMap<>();
+		for (Map.Entry<String, Field> entry : columns.entrySet()) {
+			lowerCaseColumns.putIfAbsent(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue());
+		}
+
+		List<Field> keyFields = new ArrayList<>();
+		for (Field field : fields) {
+			if (field.isAnnotationPresent(Id.class)) keyFields.add(field);
+		}
+		/*
+		  fields 中子类在前，稳定排序后父类在前、同一个类中保持声明顺序
+		 */
+		keyFields.sort(Comparator.comparingInt(field -> depthOf(field.getDeclaringClass())));
+		List<String> keyColumns = new ArrayList<>();
+		for (Field field : keyFields) {
+			keyColumns.add(columnOf(field));
+		}
+		if (keyColumns.isEmpty() && columns.containsKey("id")) keyColumns.add("id");
+
+		this.getters = new MethodHandle[fields.size()];
+		for (int i = 0; i < this.getters.length; i++) {
+			this.getters[i] = getterOf(fields.get(i));
+		}
+
+		this.fields = Collections.unmodifiableList(fields);
+		this.keyColumns = Collections.unmodifiableList(keyColumns);
+		this.columns = Collections.unmodifiableMap(columns);
+		this.lowerCaseColumns = Collections.unmodifiableMap(lowerCaseColumns);
+		this.changeTracker = entity != null && entity.trackChanges() ? new ChangeTracker<>(this) : null;
+	}
+
+	private static int depthOf(Class<?> type) {
+		int depth = 0;
+		for (Class<?> parent = type.getSuperclass(); parent != null; parent = parent.getSuperclass()) depth++;
+		return depth;
+	}
+
+	/**
+	 * @param field 表实体字段
+	 * @return 字段对应的列名，来自 @Column，没有时为字段名
+	 */
+	public static String columnOf(Field field) {
+		Column column = field.getAnnotation(Column.class);
+		return column == null ? field.getName() : column.value();
+	}
+
+	private static MethodHandle getterOf(Field field) {
+		try {
+			return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(String.format("无法读取字段 [%s.%s]", field.getDeclaringClass().getName(), field.getName()), e);
+		}
+	}
+
+	private static MethodHandle constructorOf(Class<?> entityClass) {
+		try {
+			Constructor<?> constructor = entityClass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+		} catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	public Class<E> getEntityClass() {
+		return this.entityClass;
+	}
+
+	/**
+	 * @return 表名，来自 @Entity，没有时为小写的类名
+	 */
+	public String getTableName() {
+		return this.tableName;
+	}
+
+	/**
+	 * @return 列名到字段的只读映射
+	 */
+	public Map<String, Field> getColumns() {
+		return this.columns;
+	}
+
+	/**
+	 * @return 所有可映射字段，子类在前
+	 */
+	public List<Field> getFields() {
+		return this.fields;
+	}
+
+	/**
+	 * @return 主键列名，来自 @Id 字段(父类在前)，没有时为名为 id 的列，都没有时为空
+	 */
+	public List<String> getKeyColumns() {
+		return this.keyColumns;
+	}
+
+	/**
+	 * @return 修改跟踪器，表实体没有开启 @Entity(trackChanges = true) 时为 null
+	 */
+	public ChangeTracker<E> getChangeTracker() {
+		return this.changeTracker;
+	}
+
+	/**
+	 * 读取表实体的字段值
+	 * @param entity 表实体
+	 * @param index 字段在 {@link #getFields()} 中的下标
+	 * @return 字段值，基本类型会被装箱
+	 */
+	public Object valueOf(Object entity, int index) {
+		try {
+			return (Object) this.getters[index].invokeExact(entity);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * 查找列对应的字段，先精确匹配，再忽略大小写匹配(部分数据库会把未加引号的列名转为大写)
+	 * @param column 列名
+	 * @return 字段，找不到时为 null
+	 */
+	public Field findField(String column) {
+		if (column == null) return null;
+		Field field = this.columns.get(column);
+		if (field != null) return field;
+		return this.lowerCaseColumns.get(column.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * 无参构造器，类型为 () -> Object
+	 */
+	public MethodHandle getConstructor() {
+		if (this.constructor == null)
+			throw new RuntimeException(String.format("表实体 [%s] 缺少可用的无参构造器", this.entityClass.getName()));
+		return this.constructor;
+	}
+
+	/**
+	 * 获取与结果集结构对应的行映射器，没有时编译一个
+	 * @param metaData 结果集结构
+	 * @return 行映射器
+	 * @throws SQLException
+	 */
+	public RowMapper<E> getRowMapper(ResultSetMetaData metaData) throws SQLException {
+		String shape = shapeOf(metaData);
+		RowMapper<E> mapper = this.mappers.get(shape);
+		if (mapper == null) {
+			mapper = RowMapper.compile(this, metaData);
+			RowMapper<E> previous = this.mappers.putIfAbsent(shape, mapper);
+			if (previous != null) mapper = previous;
+		}
+		return mapper;
+	}
+
+	/**
+	 * 以列名和列类型描述结果集结构，用作按结构缓存映射器的键
+	 * @param metaData 结果集结构
+	 * @return 结构描述
+	 * @throws SQLException
+	 */
+	public static String shapeOf(ResultSetMetaData metaData) throws SQLException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 1; i <= metaData.getColumnCount(); i++) {
+			builder.append(metaData.getColumnLabel(i)).append(':').append(metaData.getColumnType(i)).append(',');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 仓库方法的结果类型
+	 *
+	 * 异步方法取 CompletableFuture 的类型参数，例如 CompletableFuture&lt;List&lt;Student&gt;&gt;
+	 * 的 type 为 List&lt;Student&gt;，rawClass 为 List，elementClass 为 Student。
+	 */
+	public static final class ResultType {
+
+		private final Type type;
+		private final Class<?> rawClass;
+		private final Class<?> elementClass;
+		private final boolean async;
+
+		private ResultType(Method method) {
+			this.type = ClassUtils.getResultType(method);
+			this.rawClass = ClassUtils.getRawClass(this.type);
+			this.elementClass = ClassUtils.getActualType(this.type);
+			this.async = ClassUtils.isFutureType(method.getReturnType());
+		}
+
+		public Type getType() {
+			return this.type;
+		}
+
+		public Class<?> getRawClass() {
+			return this.rawClass;
+		}
+
+		/**
+		 * @return 第一个类型参数，没有类型参数时为 null
+		 */
+		public Class<?> getElementClass() {
+			return this.elementClass;
+		}
+
+		public boolean isAsync() {
+			return this.async;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.krun.juice.repository;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 一页结果
+ *
+ * 按主键分页不会统计总行数，只知道是否还有下一页；
+ * 有下一页时 {@link #getNextToken()} 返回的分页标记可以交给客户端，之后通过 {@link Pageable#after(String, int)} 继续读取。
+ */
+public final class Page<E> implements Iterable<E> {
+
+	private final List<E> content;
+
+	private final int size;
+
+	private final String nextToken;
+
+	private Page(List<E> content, int size, String nextToken) {
+		this.content = Collections.unmodifiableList(content);
+		this.size = size;
+		this.nextToken = nextToken;
+	}
+
+	/**
+	 * @param content 这一页的内容
+	 * @param size 每页行数
+	 * @param lastKeys 有下一页时为这一页最后一行的主键值，否则为 null
+	 * @param <E> 元素类型
+	 * @return 一页结果
+	 */
+	public static <E> Page<E> of(List<E> content, int size, Object[] lastKeys) {
+		return new Page<>(content, size, lastKeys == null ? null : PageToken.encode(lastKeys));
+	}
+
+	public List<E> getContent() {
+		return this.content;
+	}
+
+	/**
+	 * @return 每页行数
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	public boolean hasNext() {
+		return this.nextToken != null;
+	}
+
+	/**
+	 * @return 下一页的分页标记，没有下一页时为 null
+	 */
+	public String getNextToken() {
+		return this.nextToken;
+	}
+
+	/**
+	 * @return 下一页的分页参数，没有下一页时为 null
+	 */
+	public Pageable next() {
+		return this.nextToken == null ? null : Pageable.after(this.nextToken, this.size);
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return this.content.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return "Page{content=" + this.content + ", next=" + this.nextToken + "}";
+	}
+}
@@ -0,0 +1,159 @@
+package com.krun.juice.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 分页标记的编码
+ *
+ * 把主键值按类型标记逐个写出，再以 url 安全的 Base64 编码，便于直接放进查询参数。
+ * 解码时只会还原这里列出的几种值类型，不使用 Java 序列化，客户端传回的标记不会被当作对象图反序列化；
+ * 还原出的值只作为语句参数绑定，不会拼进 sql。
+ */
+final class PageToken {
+
+	private static final int VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte SHORT = 4;
+	private static final byte BIG_DECIMAL = 5;
+	private static final byte BIG_INTEGER = 6;
+	private static final byte DOUBLE = 7;
+	private static final byte FLOAT = 8;
+	private static final byte BOOLEAN = 9;
+	private static final byte TIMESTAMP = 10;
+	private static final byte DATE = 11;
+	private static final byte LOCAL_DATE = 12;
+	private static final byte LOCAL_DATE_TIME = 13;
+	private static final byte UUID_VALUE = 14;
+
+	private PageToken() {
+	}
+
+	static String encode(Object[] keys) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeByte(keys.length);
+			for (Object key : keys) {
+				write(out, key);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+
+	static Object[] decode(String token) {
+		try {
+			return decode(Base64.getUrlDecoder().decode(token));
+		} catch (IOException | RuntimeException e) {
+			throw new IllegalArgumentException(String.format("无效的分页标记: [%s]", token), e);
+		}
+	}
+
+	private static Object[] decode(byte[] bytes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readUnsignedByte() != VERSION) throw new IOException("版本不符");
+			Object[] keys = new Object[in.readUnsignedByte()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = read(in);
+			}
+			if (in.available() > 0) throw new IOException("多余的字节");
+			return keys;
+		}
+	}
+
+	private static void write(DataOutputStream out, Object key) throws IOException {
+		if (key == null) {
+			out.writeByte(NULL);
+		} else if (key instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) key);
+		} else if (key instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) key);
+		} else if (key instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) key);
+		} else if (key instanceof Short || key instanceof Byte) {
+			out.writeByte(SHORT);
+			out.writeShort(((Number) key).shortValue());
+		} else if (key instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL);
+			out.writeUTF(key.toString());
+		} else if (key instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			out.writeUTF(key.toString());
+		} else if (key instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) key);
+		} else if (key instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) key);
+		} else if (key instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) key);
+		} else if (key instanceof Timestamp) {
+			out.writeByte(TIMESTAMP);
+			out.writeLong(((Timestamp) key).getTime());
+			out.writeInt(((Timestamp) key).getNanos());
+		} else if (key instanceof java.sql.Date) {
+			out.writeByte(DATE);
+			out.writeUTF(key.toString());
+		} else if (key instanceof LocalDate) {
+			out.writeByte(LOCAL_DATE);
+			out.writeUTF(key.toString());
+		} else if (key instanceof LocalDateTime) {
+			out.writeByte(LOCAL_DATE_TIME);
+			out.writeUTF(key.toString());
+		} else if (key instanceof UUID) {
+			out.writeByte(UUID_VALUE);
+			out.writeLong(((UUID) key).getMostSignificantBits());
+			out.writeLong(((UUID) key).getLeastSignificantBits());
+		} else {
+			throw new IllegalArgumentException(String.format("分页不支持类型为 [%s] 的主键", key.getClass().getName()));
+		}
+	}
+
+	private static Object read(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL: return null;
+			case STRING: return in.readUTF();
+			case INTEGER: return in.readInt();
+			case LONG: return in.readLong();
+			case SHORT: return in.readShort();
+			case BIG_DECIMAL: return new BigDecimal(in.readUTF());
+			case BIG_INTEGER: return new BigInteger(in.readUTF());
+			case DOUBLE: return in.readDouble();
+			case FLOAT: return in.readFloat();
+			case BOOLEAN: return in.readBoolean();
+			case TIMESTAMP: {
+				Timestamp timestamp = new Timestamp(in.readLong());
+				timestamp.setNanos(in.readInt());
+				return timestamp;
+			}
+			case DATE: return java.sql.Date.valueOf(in.readUTF());
+			case LOCAL_DATE: return LocalDate.parse(in.readUTF());
+			case LOCAL_DATE_TIME: return LocalDateTime.parse(in.readUTF());
+			case UUID_VALUE: return new UUID(in.readLong(), in.readLong());
+			default: throw new IOException(String.format("未知的值类型: [%d]", type));
+		}
+	}
+}
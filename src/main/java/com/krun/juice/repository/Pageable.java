@@ -0,0 +1,94 @@
+package com.krun.juice.repository;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 分页参数
+ *
+ * 作为返回 {@link Page} 的仓库方法的参数，指定每页的行数以及从哪一页之后继续读取。
+ * 分页按主键定位(WHERE key &gt; ? ORDER BY key LIMIT n)而不是按偏移量跳过，
+ * 因此无论翻到第几页，每一页的开销都相同。
+ */
+public final class Pageable {
+
+	private final int size;
+
+	/**
+	 * 上一页返回的分页标记，第一页为 null
+	 */
+	private final String token;
+
+	/**
+	 * 从分页标记中解出的上一页最后一行的主键值，第一页为 null
+	 */
+	private final Object[] keys;
+
+	private Pageable(int size, String token, Object[] keys) {
+		if (size <= 0) throw new IllegalArgumentException(String.format("每页行数必须大于 0: [%d]", size));
+		this.size = size;
+		this.token = token;
+		this.keys = keys;
+	}
+
+	/**
+	 * @param size 每页行数
+	 * @return 第一页
+	 */
+	public static Pageable first(int size) {
+		return new Pageable(size, null, null);
+	}
+
+	/**
+	 * @param token 上一页的 {@link Page#getNextToken()}，为 null 时等同于第一页
+	 * @param size 每页行数
+	 * @return 分页标记之后的一页
+	 * @throws IllegalArgumentException 分页标记无效
+	 */
+	public static Pageable after(String token, int size) {
+		if (token == null) return first(size);
+		return new Pageable(size, token, PageToken.decode(token));
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public String getToken() {
+		return this.token;
+	}
+
+	/**
+	 * @return 是否为第一页
+	 */
+	public boolean isFirst() {
+		return this.keys == null;
+	}
+
+	/**
+	 * @return 上一页最后一行的主键值，第一页为 null
+	 */
+	public Object[] getKeys() {
+		return this.keys == null ? null : this.keys.clone();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Pageable)) return false;
+		Pageable other = (Pageable) o;
+		return this.size == other.size && Objects.equals(this.token, other.token);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.size + Objects.hashCode(this.token);
+	}
+
+	@Override
+	public String toString() {
+		return "Pageable{size=" + this.size + ", after=" + (this.keys == null ? "-" : Arrays.toString(this.keys)) + "}";
+	}
+}
@@ -7,4 +7,21 @@ import java.io.Serializable;
  */
 public interface Repository<E, I extends Serializable> {
 
+	/**
+	 * 按主键更新表实体。
+	 * 开启 @Entity(trackChanges = true) 的表实体只更新查询后修改过的列，没有修改时不访问数据库；
+	 * 其他表实体更新所有非主键列。save 只更新已有的行，不会插入。
+	 * @param entity 表实体
+	 * @return 更新的行数
+	 */
+	int save(E entity);
+
+	/**
+	 * 按主键批量更新表实体，更新同一组列的表实体合并为一批执行。
+	 * 不在事务中时所有更新在同一个本地事务中提交，任何一个失败都会全部回滚
+	 * @param entities 表实体
+	 * @return 与 entities 顺序一致的更新行数，没有修改的表实体为 0
+	 */
+	int[] saveAll(Iterable<? extends E> entities);
+
 }
@@ -0,0 +1,25 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/14.
+ *
+ * 批量执行注解
+ *
+ * 与 @Query 一起标记一个更新方法，方法只接收一个 Iterable 参数并返回 int[]：
+ * Iterable 的每个元素对应一行，元素为 Object[] 时作为该行的参数列表，否则作为该行唯一的参数，
+ * 每一行都会交给参数处理器绑定，然后通过 addBatch / executeBatch 分块执行，返回每一行影响的行数。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batch {
+
+	/**
+	 * 每次 executeBatch 提交的行数，为 0 时使用 ConnectionConfiguration.batchSize
+	 */
+	int size() default 0;
+}
@@ -0,0 +1,30 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 结果缓存注解
+ *
+ * 与 @Query 一起标记一个只读方法，以 (方法, 参数) 为键缓存方法的结果。
+ * 同一个表实体的仓库中任何非 SELECT 方法执行后，该表实体的缓存都会失效。
+ * 缓存的结果在调用之间共享，调用方不应修改它。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+
+	/**
+	 * 缓存项的存活时间(毫秒)
+	 */
+	long ttl() default 60000;
+
+	/**
+	 * 此方法最多缓存的结果数量
+	 */
+	int maxSize() default 1000;
+}
@@ -0,0 +1,22 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 合并并发调用注解
+ *
+ * 与 @Query 一起标记一个只读方法：同一时刻以相同参数调用这个方法时，只有第一个调用真正执行查询，
+ * 其余调用等待它完成并得到同一个结果(或同一个异常)，用于防止热点数据失效时大量相同的查询同时打到数据库。
+ * 查询结束后不保留结果，之后的调用会重新查询；需要保留结果时配合 @Cached 使用。
+ * 结果在并发的调用之间共享，调用方不应修改它。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+
+}
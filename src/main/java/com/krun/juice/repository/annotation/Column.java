@@ -11,8 +11,9 @@ import java.lang.annotation.Target;
  * 数据库字段属性注解
  *
  * 现在只做了别名映射，后期再加其他吧。
+ * 也可以用于投影接口的方法上，指定该方法读取的列名。
  */
-@Target(ElementType.FIELD)
+@Target({ ElementType.FIELD, ElementType.METHOD })
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Column {
 
@@ -10,7 +10,7 @@ import java.lang.annotation.Target;
  *
  * 表实体注解
  *
- * 现在只做了表名映射，其他的后期再做吧
+ * 指定表名，以及是否跟踪查询出的表实体的修改
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
@@ -18,4 +18,10 @@ public @interface Entity {
 
 	String value();
 
+	/**
+	 * 为查询出的表实体记录快照，{@link com.krun.juice.repository.Repository#save(Object)} 时只更新与快照不同的列。
+	 * 不开启时 save 更新所有非主键列
+	 */
+	boolean trackChanges() default false;
+
 }
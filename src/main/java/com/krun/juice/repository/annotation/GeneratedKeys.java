@@ -0,0 +1,25 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 返回自增主键注解
+ *
+ * 与 @Query 一起标记一个 INSERT 方法，方法返回插入后生成的主键而不是影响的行数：
+ * 语句由数据库方言的 prepareReturningKeys 创建，执行后读取 getGeneratedKeys() 的结果，
+ * 按与查询结果相同的方式映射为返回值(例如 long、Optional&lt;Long&gt;、List&lt;Long&gt;、long[] 或表实体)。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GeneratedKeys {
+
+	/**
+	 * 返回的主键列名，为空时使用表实体中 @Id 标记的列
+	 */
+	String[] value() default {};
+}
@@ -0,0 +1,20 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 主键注解
+ *
+ * 标记表实体的主键字段，多个字段组成复合主键时按父类在前、声明顺序排列。
+ * 没有字段带这个注解时，名为 id 的列视为主键。
+ * 返回 Page 的分页方法按主键排序，并以上一页最后一行的主键定位下一页。
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Id {
+}
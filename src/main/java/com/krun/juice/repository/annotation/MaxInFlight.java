@@ -0,0 +1,29 @@
+package com.krun.juice.repository.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 仓库并发限制注解
+ *
+ * 标记在仓库接口上，限制这个仓库同时借出的连接数，超出时按先后顺序等待，
+ * 避免某个仓库的突发调用占满整个工厂的连接。事务中的调用使用事务的连接，不受限制。
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MaxInFlight {
+
+	/**
+	 * 同时借出的连接数上限
+	 */
+	int value();
+
+	/**
+	 * 等待的最长时间(毫秒)，为 0 时使用默认值 30000
+	 */
+	long timeout() default 0;
+}
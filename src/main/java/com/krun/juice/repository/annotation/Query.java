@@ -41,4 +41,20 @@ public @interface Query {
 
 	String resolveMethod() default "";
 
+	/**
+	 * 声明方法只读。配置了只读副本时，只读方法在副本上执行。
+	 *
+	 * 以 SELECT 开头的语句(不含 FOR UPDATE 等加锁子句)总是视为只读，
+	 * 其他只读语句(如 SHOW、以 WITH 开头的查询)需要显式声明；事务中的方法总是在主库上执行。
+	 */
+	boolean readOnly() default false;
+
+	/**
+	 * 执行超时(毫秒)。为 0 时使用 ConnectionConfiguration.queryTimeout，小于 0 时不限制。
+	 *
+	 * 超时后语句被取消，调用抛出 SQLTimeoutException，连接照常归还；
+	 * 调用方通过 {@link com.krun.juice.repository.Deadline} 设置的截止时间更早时以截止时间为准。
+	 */
+	long timeout() default 0;
+
 }
@@ -0,0 +1,34 @@
+package com.krun.juice.repository.cache;
+
+import java.util.Arrays;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 缓存键
+ *
+ * 以方法参数的内容作为键，数组参数按元素比较，哈希值在创建时计算一次。
+ */
+final class CacheKey {
+
+	private final Object[] args;
+	private final int hash;
+
+	CacheKey(Object[] args) {
+		this.args = args;
+		this.hash = Arrays.deepHashCode(args);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof CacheKey)) return false;
+		CacheKey that = (CacheKey) o;
+		return this.hash == that.hash && Arrays.deepEquals(this.args, that.args);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+}
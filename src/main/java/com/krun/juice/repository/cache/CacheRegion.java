@@ -0,0 +1,80 @@
+package com.krun.juice.repository.cache;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 缓存区域
+ *
+ * 每个仓库工厂中的每个表实体类型对应一个缓存区域，区域内每个带 @Cached 的方法各有一个方法缓存。
+ * 对该表实体的任何更新都会使整个区域失效：区域维护一个代数，失效时代数加一并清空所有方法缓存，
+ * 在失效之前开始、之后才完成的查询会因为代数不一致而放弃写入缓存，不会把旧数据带回来。
+ */
+public class CacheRegion {
+
+	private final Class<?> entityClass;
+
+	private final CopyOnWriteArrayList<MethodCache> caches = new CopyOnWriteArrayList<>();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public CacheRegion(Class<?> entityClass) {
+		this.entityClass = entityClass;
+	}
+
+	public Class<?> getEntityClass() {
+		return this.entityClass;
+	}
+
+	/**
+	 * 为一个方法创建方法缓存
+	 * @param method 仓库方法
+	 * @param ttl 存活时间(毫秒)
+	 * @param maxSize 最大缓存项数量
+	 * @return 方法缓存
+	 */
+	public MethodCache register(Method method, long ttl, int maxSize) {
+		if (ttl <= 0 || maxSize <= 0)
+			throw new RuntimeException(String.format("方法 %s.%s() 的缓存配置无效: [ttl: %d, maxSize: %d]",
+					method.getDeclaringClass().getSimpleName(),
+					method.getName(),
+					ttl,
+					maxSize));
+		MethodCache cache = new MethodCache(this, ttl, maxSize);
+		this.caches.add(cache);
+		return cache;
+	}
+
+	/**
+	 * 使区域内所有缓存失效
+	 */
+	public void invalidate() {
+		if (this.caches.isEmpty()) return;
+		this.generation.incrementAndGet();
+		this.invalidations.increment();
+		for (MethodCache cache : this.caches) {
+			cache.clear();
+		}
+	}
+
+	long generation() {
+		return this.generation.get();
+	}
+
+	public CacheStats getStats() {
+		long size = 0;
+		for (MethodCache cache : this.caches) {
+			size += cache.size();
+		}
+		return new CacheStats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.invalidations.sum(), size);
+	}
+}
@@ -0,0 +1,65 @@
+package com.krun.juice.repository.cache;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 缓存统计
+ *
+ * 某一时刻的计数快照，用于估算缓存大小和存活时间是否合适。
+ */
+public final class CacheStats {
+
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final long size;
+
+	CacheStats(long hits, long misses, long evictions, long invalidations, long size) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.size = size;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * 因过期或超出容量而被移除的缓存项数量，不包括失效时清空的
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * 因更新操作而整体失效的次数
+	 */
+	public long getInvalidations() {
+		return this.invalidations;
+	}
+
+	/**
+	 * 当前缓存项数量
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	public double getHitRate() {
+		long total = this.hits + this.misses;
+		return total == 0 ? 0 : (double) this.hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStats{hits: %d, misses: %d, evictions: %d, invalidations: %d, size: %d, hitRate: %.2f}",
+				this.hits, this.misses, this.evictions, this.invalidations, this.size, getHitRate());
+	}
+}
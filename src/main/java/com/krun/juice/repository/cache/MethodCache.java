@@ -0,0 +1,131 @@
+package com.krun.juice.repository.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Created by krun on 2017/10/15.
+ *
+ * 方法缓存
+ *
+ * 读取只有一次 ConcurrentHashMap 查找，不加锁。
+ * 同一个方法的缓存项存活时间相同，写入顺序也就是过期顺序，因此另外用一个无锁队列按写入顺序记录缓存项：
+ * 每次写入时从队首清理已经过期的项，超出容量时继续从队首淘汰最早写入的项。
+ * 每个缓存项只入队、出队一次，清理和淘汰的开销分摊到每次写入上是常数，不需要扫描整个缓存。
+ */
+public class MethodCache {
+
+	/**
+	 * 未命中时 get 的返回值，以便区分缓存的 null 结果
+	 */
+	public static final Object MISS = new Object();
+
+	private static final Object NULL = new Object();
+
+	private final CacheRegion region;
+	private final long ttl;
+	private final int maxSize;
+
+	private final ConcurrentHashMap<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * 按写入顺序排列的缓存项。被覆盖、已失效或已被 get 移除的项仍留在队列中，出队时发现它已不在缓存中就直接丢弃
+	 */
+	private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+
+	MethodCache(CacheRegion region, long ttl, int maxSize) {
+		this.region = region;
+		this.ttl = ttl * 1000000L;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 当前代数，查询开始前获取，写入缓存时传回
+	 */
+	public long generation() {
+		return this.region.generation();
+	}
+
+	/**
+	 * 读取缓存
+	 * @param args 方法参数
+	 * @return 缓存的结果，未命中时为 MISS
+	 */
+	public Object get(Object[] args) {
+		CacheKey key = new CacheKey(args);
+		Entry entry = this.entries.get(key);
+		if (entry != null) {
+			if (entry.expiresAt - System.nanoTime() > 0) {
+				this.region.hits.increment();
+				return entry.value == NULL ? null : entry.value;
+			}
+			if (this.entries.remove(key, entry)) this.region.evictions.increment();
+		}
+		this.region.misses.increment();
+		return MISS;
+	}
+
+	/**
+	 * 写入缓存，如果查询期间区域已经失效则放弃写入
+	 * @param args 方法参数
+	 * @param value 方法结果
+	 * @param generation 查询开始前获取的代数
+	 */
+	public void put(Object[] args, Object value, long generation) {
+		if (this.region.generation() != generation) return;
+		CacheKey key = new CacheKey(args);
+		Entry entry = new Entry(key, value == null ? NULL : value, System.nanoTime() + this.ttl);
+		this.entries.put(key, entry);
+		/*
+		  写入与失效并发时，失效可能发生在上面的检查之后，此时撤回这次写入
+		 */
+		if (this.region.generation() != generation) {
+			this.entries.remove(key, entry);
+			return;
+		}
+		this.order.offer(entry);
+		evict();
+	}
+
+	void clear() {
+		this.entries.clear();
+		this.order.clear();
+	}
+
+	int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * 从队首清理已经过期的项，仍然超出容量时继续淘汰最早写入的项
+	 */
+	private void evict() {
+		long now = System.nanoTime();
+		for (Entry head; (head = this.order.peek()) != null && head.expiresAt - now <= 0; ) {
+			// 只有成功出队的线程处理这一项，并发的写入不会重复计数
+			if (this.order.remove(head)) retire(head);
+		}
+		while (this.entries.size() > this.maxSize) {
+			Entry oldest = this.order.poll();
+			if (oldest == null) return;
+			retire(oldest);
+		}
+	}
+
+	private void retire(Entry entry) {
+		if (this.entries.remove(entry.key, entry)) this.region.evictions.increment();
+	}
+
+	private static final class Entry {
+
+		final CacheKey key;
+		final Object value;
+		final long expiresAt;
+
+		Entry(CacheKey key, Object value, long expiresAt) {
+			this.key = key;
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.krun.juice.repository.cache;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 合并相同参数的并发调用
+ *
+ * 第一个调用把自己的 future 放入进行中的调用表并执行查询，之后以相同参数到达的调用等待这个 future。
+ * 只在放入调用表时有一次 ConcurrentHashMap 的 putIfAbsent，不同参数的调用之间不会互相等待。
+ * 查询结束时先从调用表中移除，再完成 future，之后到达的调用会重新查询，不会拿到已经结束的结果。
+ *
+ * 等待的调用有自己的超时，不受第一个调用的超时限制：等待超过自己的超时时抛出自己的超时异常；
+ * 第一个调用因为超时(SQLTimeoutException)失败、而等待的调用还有剩余时间时，等待的调用重新执行，而不是得到别人的超时。
+ */
+public final class SingleFlight {
+
+	private final ConcurrentHashMap<CacheKey, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+	/**
+	 * 执行调用，相同参数的调用正在进行时等待它的结果，不限制等待时间
+	 * @param args 方法参数
+	 * @param call 真正执行查询的调用
+	 * @return 调用结果
+	 * @throws Throwable 调用抛出的异常，等待的调用会得到同一个异常
+	 */
+	public Object execute(Object[] args, Call call) throws Throwable {
+		return execute(args, 0, call);
+	}
+
+	/**
+	 * 执行调用，相同参数的调用正在进行时最多等待 timeout 纳秒
+	 * @param args 方法参数
+	 * @param timeout 这个调用的超时(纳秒)，为 0 时不限制
+	 * @param call 真正执行查询的调用
+	 * @return 调用结果
+	 * @throws TimeoutException 等待其他调用的结果超过了 timeout
+	 * @throws Throwable 调用抛出的异常，等待的调用会得到同一个异常(超时除外)
+	 */
+	public Object execute(Object[] args, long timeout, Call call) throws Throwable {
+		CacheKey key = new CacheKey(args);
+		long deadline = timeout > 0 ? System.nanoTime() + timeout : 0;
+		for (;;) {
+			CompletableFuture<Object> flight = new CompletableFuture<>();
+			CompletableFuture<Object> leader = this.calls.putIfAbsent(key, flight);
+			if (leader == null) return lead(key, flight, call);
+			try {
+				return await(leader, deadline, timeout);
+			} catch (SQLTimeoutException e) {
+				/*
+				  第一个调用超时了，这个调用还有剩余时间时重新执行(或者等待下一个第一个调用)
+				 */
+				if (deadline != 0 && deadline - System.nanoTime() <= 0) throw e;
+			}
+		}
+	}
+
+	private Object lead(CacheKey key, CompletableFuture<Object> flight, Call call) throws Throwable {
+		Object result;
+		try {
+			result = call.call();
+		} catch (Throwable e) {
+			this.calls.remove(key, flight);
+			flight.completeExceptionally(e);
+			throw e;
+		}
+		this.calls.remove(key, flight);
+		flight.complete(result);
+		return result;
+	}
+
+	/**
+	 * @return 正在进行的调用数量
+	 */
+	public int inFlight() {
+		return this.calls.size();
+	}
+
+	private static Object await(CompletableFuture<Object> leader, long deadline, long timeout) throws Throwable {
+		try {
+			if (deadline == 0) return leader.get();
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) throw timedOut(timeout);
+			return leader.get(remaining, TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		} catch (TimeoutException e) {
+			throw timedOut(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	private static TimeoutException timedOut(long timeout) {
+		return new TimeoutException(String.format("等待相同参数的调用超时: [%d ms]", TimeUnit.NANOSECONDS.toMillis(timeout)));
+	}
+
+	@FunctionalInterface
+	public interface Call {
+
+		Object call() throws Throwable;
+	}
+}
@@ -0,0 +1,127 @@
+package com.krun.juice.repository.factory;
+
+import com.krun.juice.repository.Repository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 预热报告
+ *
+ * 由 {@link RepositoryFactory#preload(Class[])} 返回，记录每个仓库创建实例和预编译语句各自的耗时，
+ * 以及整个预热过程的总耗时(并行执行，因此通常小于各仓库耗时之和)。
+ */
+public final class PreloadReport {
+
+	private final String factoryName;
+	private final List<Entry> entries;
+	private final long elapsedNanos;
+
+	PreloadReport(String factoryName, List<Entry> entries, long elapsedNanos) {
+		this.factoryName = factoryName;
+		this.entries = Collections.unmodifiableList(entries);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public String getFactoryName() {
+		return this.factoryName;
+	}
+
+	/**
+	 * @return 每个仓库的预热结果，顺序与传入的仓库类型一致
+	 */
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+
+	/**
+	 * @return 预热失败的仓库数量
+	 */
+	public int getFailures() {
+		int failures = 0;
+		for (Entry entry : this.entries) {
+			if (entry.failure != null) failures++;
+		}
+		return failures;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(String.format("仓库工厂 [%s] 预热 %d 个仓库，耗时 %.1f ms:\n",
+				this.factoryName, this.entries.size(), millis(this.elapsedNanos)));
+		for (Entry entry : this.entries) {
+			builder.append('\t').append(entry).append('\n');
+		}
+		return builder.toString();
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * 单个仓库的预热结果
+	 */
+	public static final class Entry {
+
+		private final Class<? extends Repository> repositoryClass;
+		private final long createNanos;
+		private final long prepareNanos;
+		private final int statements;
+		private final Throwable failure;
+
+		Entry(Class<? extends Repository> repositoryClass, long createNanos, long prepareNanos, int statements, Throwable failure) {
+			this.repositoryClass = repositoryClass;
+			this.createNanos = createNanos;
+			this.prepareNanos = prepareNanos;
+			this.statements = statements;
+			this.failure = failure;
+		}
+
+		public Class<? extends Repository> getRepositoryClass() {
+			return this.repositoryClass;
+		}
+
+		/**
+		 * @return 创建仓库实例(编译调用管线、解析表实体)的耗时
+		 */
+		public long getCreateNanos() {
+			return this.createNanos;
+		}
+
+		/**
+		 * @return 预编译语句的耗时
+		 */
+		public long getPrepareNanos() {
+			return this.prepareNanos;
+		}
+
+		/**
+		 * @return 新编译并放入语句缓存的语句数量
+		 */
+		public int getStatements() {
+			return this.statements;
+		}
+
+		/**
+		 * @return 预热失败的原因，成功时为 null
+		 */
+		public Throwable getFailure() {
+			return this.failure;
+		}
+
+		@Override
+		public String toString() {
+			String result = String.format("%s: 创建 %.1f ms, 预编译 %d 条语句 %.1f ms",
+					this.repositoryClass.getName(), millis(this.createNanos), this.statements, millis(this.prepareNanos));
+			return this.failure == null ? result : result + ", 失败: " + this.failure;
+		}
+	}
+}
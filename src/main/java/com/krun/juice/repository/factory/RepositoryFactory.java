@@ -1,14 +1,36 @@
 package com.krun.juice.repository.factory;
 
+import com.krun.juice.connection.dialect.Dialect;
+import com.krun.juice.connection.provider.ConnectionBudget;
+import com.krun.juice.connection.provider.ConnectionProvider;
+import com.krun.juice.instrumentation.Instrumentation;
 import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.cache.CacheRegion;
 import com.krun.juice.connection.configuration.ConnectionConfiguration;
 import com.krun.juice.repository.invocation.RepositoryInvocationHandler;
+import com.krun.juice.transaction.Transaction;
+import com.krun.juice.transaction.TransactionCallback;
 import com.krun.juice.utils.log.LoggerProvider;
 import lombok.Getter;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.LinkedHashMap;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -17,47 +39,42 @@ import java.util.logging.Logger;
  * 仓库工厂
  *
  * 用以获取仓库接口代理类实例，一般来说全局只需要创建一个仓库工厂即可，
- * 在 Java SE 环境下通过 RepositoryFactory.configure(connectionConfiguration) 来获取一个默认全局名称的工厂实例；
+ * 在 Java SE 环境下通过 RepositoryFactory.configure(connectionConfiguration) 来获取一个默认全局名称的工厂实例，
+ * 需要同时指定度量、执行器等选项时使用 RepositoryFactory.builder()；
  * 在 Java EE 环境下(典型如 Spring)，理论上可以通过配置一个 bean 并注入到想要用的地方即可。
  *
+ * 不再使用的工厂需要通过 {@link #close()} 关闭，释放连接和默认执行器。
+ *
  * 注：默认全局名称不是 final 的，这意味着它是可以修改的。
  */
-public class RepositoryFactory {
+public class RepositoryFactory implements AutoCloseable {
 
 	private static final Logger logger = LoggerProvider.provide(RepositoryFactory.class);
 
 	/**
-	 * 保存了所有工厂实例
+	 * 保存了所有工厂实例，查找时不加锁
+	 */
+	private static final ConcurrentHashMap<String, RepositoryFactory> factoryMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 编译期生成的仓库实现类的名称后缀
 	 */
-	private static final LinkedHashMap<String, RepositoryFactory> factoryMap;
+	public static final String GENERATED_SUFFIX = "_JuiceImpl";
 
 	/**
 	 * 默认全局工厂名称
 	 */
 	public static String FACTORY_GLOBAL = "global";
 
-	static {
-		/*
-			做一点 hack，方便一点
-		 */
-		factoryMap = new LinkedHashMap<String, RepositoryFactory>() {
-			@Override
-			public RepositoryFactory put (String key, RepositoryFactory value) {
-				super.put(key, value);
-				return value;
-			}
-		};
-	}
-
 	/**
-	 * 一点 hack 来检查是不是自身调用
-	 * 原理是检查调用栈，创建异常时，栈顶会是当前方法，而此处场景只需要检查栈顶后两位是否也是位于此类的即可。
-	 * @return
+	 * 如果以全局名称创建特定工厂，这会导致全局、特定工厂实例的界限变得模糊，因此要阻止用户使用默认名称来创建特定工厂
 	 */
-	private static boolean isSelfCall() {
-		return RepositoryFactory.class.getName().equals(
-				new Exception().getStackTrace()[2].getClassName()
-		);
+	private static String checkName(String name) {
+		if (name == null || name.isEmpty())
+			throw new RuntimeException("仓库工厂名称不能为空.");
+		if (name.equals(FACTORY_GLOBAL))
+			throw new RuntimeException(String.format("[%s] 是默认全局仓库工厂的名称，请使用其他名称.", FACTORY_GLOBAL));
+		return name;
 	}
 
 	/**
@@ -66,7 +83,7 @@ public class RepositoryFactory {
 	 * @return 仓库工厂实例
 	 */
 	public static RepositoryFactory configure(ConnectionConfiguration configuration) {
-		return RepositoryFactory.configure(FACTORY_GLOBAL, configuration);
+		return RepositoryFactory.builder().configuration(configuration).build();
 	}
 
 	/**
@@ -76,17 +93,24 @@ public class RepositoryFactory {
 	 * @return 仓库工厂实例
 	 */
 	public static RepositoryFactory configure(String name, ConnectionConfiguration configuration) {
-		/**
-		 * 如果直接以全局名称调用，这会导致全局、特定工厂实例的界限变得模糊，因此要阻止用户使用默认名称来创建工厂
-		 */
-		if (!isSelfCall())
-			throw new RuntimeException(String.format("[%s] 是默认全局仓库工厂的名称，请使用其他名称.", FACTORY_GLOBAL));
-		synchronized ( factoryMap ) {
-			RepositoryFactory factory = factoryMap.get(name);
-			if (factory != null) return factory;
-			logger.info(String.format("创建仓库工厂: [%s]", name));
-			return factoryMap.put(name,  new RepositoryFactory(name, configuration));
-		}
+		return RepositoryFactory.builder(name).configuration(configuration).build();
+	}
+
+	/**
+	 * 创建默认全局工厂的构建器
+	 * @return 构建器
+	 */
+	public static Builder builder() {
+		return new Builder(FACTORY_GLOBAL);
+	}
+
+	/**
+	 * 创建特定名称工厂的构建器，不能使用默认全局工厂名称
+	 * @param name 仓库工厂名称
+	 * @return 构建器
+	 */
+	public static Builder builder(String name) {
+		return new Builder(checkName(name));
 	}
 
 	/**
@@ -104,49 +128,99 @@ public class RepositoryFactory {
 	 * @return 特定名称的仓库实例
 	 */
 	public static RepositoryFactory get(String name) {
-		synchronized ( factoryMap ) {
-			RepositoryFactory factory = factoryMap.get(name);
-			if (factory != null) {
-				logger.info(String.format("获取仓库工厂: [%s]", name));
-				return factory;
-			}
-			return null;
-		}
+		return factoryMap.get(name);
 	}
 
+	/**
+	 * 工厂名称
+	 */
+	@Getter
+	private final String name;
+
 	/**
 	 * 数据库连接参数
 	 */
 	@Getter
-	private ConnectionConfiguration connectionConfiguration;
-	private final LinkedHashMap<Class<? extends Repository>, Repository> repositoryMap;
+	private final ConnectionConfiguration connectionConfiguration;
 
 	/**
-	 * 主要用于初始化操作
+	 * 仓库方法的度量扩展点，默认不记录
 	 */
-	private RepositoryFactory() {
-		this.repositoryMap = new LinkedHashMap<Class<? extends Repository>, Repository>() {
-			@Override
-			public Repository put (Class<? extends Repository> key, Repository value) {
-				super.put(key, value);
-				return value;
-			}
-		};
-	}
+	private volatile Instrumentation instrumentation = Instrumentation.NONE;
+
+	/**
+	 * 工厂中所有仓库共用的连接供应器，延迟创建
+	 */
+	private volatile ConnectionProvider connectionProvider;
+
+	/**
+	 * 可以与其他工厂共用的连接预算，为 null 时只受连接池大小限制
+	 */
+	@Getter
+	private final ConnectionBudget connectionBudget;
+
+	/**
+	 * 当前线程进行中的事务
+	 */
+	private final ThreadLocal<Transaction> transactions = new ThreadLocal<>();
+
+	/**
+	 * 异步仓库方法(返回 CompletableFuture)所使用的执行器，延迟创建
+	 */
+	private volatile Executor executor;
+
+	/**
+	 * 工厂自己创建的默认执行器，关闭工厂时一起关闭；通过构建器或 setExecutor 设置的执行器由调用方负责关闭
+	 */
+	private ExecutorService defaultExecutor;
+
+	private volatile boolean closed;
 
+	/**
+	 * 表实体类型 -> 缓存区域
+	 */
+	private final ConcurrentHashMap<Class<?>, CacheRegion> cacheRegions = new ConcurrentHashMap<>();
+
+	/**
+	 * 仓库类型 -> 仓库实例的创建，查找时不加锁，每个仓库只创建一次
+	 */
+	private final ConcurrentHashMap<Class<? extends Repository>, Creation> repositoryMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 仓库类型 -> 仓库实例所使用的调用处理器，用于预热
+	 */
+	private final ConcurrentHashMap<Class<? extends Repository>, RepositoryInvocationHandler<?>> handlerMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 直接创建并保存一个特定名称的工厂，同名的已有工厂会被替换并关闭，
+	 * 被替换的工厂及其仓库之后不能再使用
+	 */
 	public RepositoryFactory(String name, ConnectionConfiguration connectionConfiguration) {
-		this();
-		/**
-		 * 保存自身到 repositoryFactory
-		 */
-		synchronized ( RepositoryFactory.factoryMap ) {
-			RepositoryFactory.factoryMap.put(name, this);
-		}
+		this.name = checkName(name);
 		this.connectionConfiguration = connectionConfiguration;
+		this.connectionBudget = null;
+		RepositoryFactory previous = RepositoryFactory.factoryMap.put(name, this);
+		if (previous != null) {
+			logger.warning(String.format("仓库工厂 [%s] 被同名的新工厂替换，已关闭", name));
+			previous.close();
+		}
+	}
+
+	private RepositoryFactory(Builder builder) {
+		this.name = builder.name;
+		this.connectionConfiguration = builder.configuration;
+		this.setInstrumentation(builder.instrumentation);
+		this.executor = builder.executor;
+		this.connectionBudget = builder.connectionBudget;
 	}
 
 	/**
 	 * 获取一个仓库的代理实例，这个实例提供了 Juice 提供的数据库操作支持,同样是延迟加载，第一次获取时才会创建代理实例。
+	 * 如果编译时启用了 Juice 的注解处理器，会优先使用它生成的实现类，而不是动态代理。
+	 * 已创建的实例直接从缓存表中读取，不加锁。第一次获取时先以 putIfAbsent 发布一个占位的创建任务，
+	 * 发布成功的线程在缓存表之外创建实例，并发的其他获取等待它完成，因此每个仓库只创建一次，
+	 * 缓存区域、度量和并发限制也只注册一次；创建失败时移除占位，之后的获取会重新创建。
+	 * 创建仓库的过程中(如自定义处理器的初始化)可以从同一个工厂获取其他仓库，但不能获取正在创建的仓库本身。
 	 * @param repositoryClass 想要获取的仓库类型
 	 * @param <E> 仓库所持有的表实体类型
 	 * @param <I> 仓库所使用的主键类型
@@ -155,14 +229,82 @@ public class RepositoryFactory {
 	 */
 	@SuppressWarnings("unchecked")
 	public <E, I extends Serializable, T extends Repository<E, I>> T get(Class<T> repositoryClass) {
-		synchronized ( repositoryMap ) {
-			T repository = (T) this.repositoryMap.get(repositoryClass);
-			if (repository != null) {
-				logger.info(String.format("获取 仓库[%s] 代理实例", repositoryClass.getName()));
-				return repository;
-			}
-			repository = createProxy(repositoryClass);
-			return (T) this.repositoryMap.put(repositoryClass, repository);
+		Creation creation = this.repositoryMap.get(repositoryClass);
+		if (creation == null) {
+			Creation created = new Creation();
+			creation = this.repositoryMap.putIfAbsent(repositoryClass, created);
+			if (creation == null) return create(repositoryClass, created);
+		}
+		if (creation.creator == Thread.currentThread())
+			throw new IllegalStateException(String.format("创建 仓库[%s] 的过程中不能再从同一个工厂获取它", repositoryClass.getName()));
+		try {
+			return (T) creation.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(String.format("创建 仓库[%s] 失败", repositoryClass.getName()), cause);
+		}
+	}
+
+	private <E, I extends Serializable, T extends Repository<E, I>> T create(Class<T> repositoryClass, Creation creation) {
+		T created;
+		try {
+			created = createGenerated(repositoryClass);
+			if (created == null) created = createProxy(repositoryClass);
+		} catch (RuntimeException | Error e) {
+			this.repositoryMap.remove(repositoryClass, creation);
+			creation.creator = null;
+			creation.completeExceptionally(e);
+			throw e;
+		}
+		creation.creator = null;
+		creation.complete(created);
+		return created;
+	}
+
+	/**
+	 * 一个仓库实例的创建，完成前由创建它的线程持有
+	 */
+	private static final class Creation extends CompletableFuture<Repository> {
+
+		/**
+		 * 正在创建实例的线程，创建结束后为 null
+		 */
+		volatile Thread creator = Thread.currentThread();
+	}
+
+	/**
+	 * 编译期生成的仓库实现类的名称: 与仓库接口同包，嵌套类的 $ 替换为 _，再加上后缀 _JuiceImpl
+	 * @param repositoryClass 仓库类型
+	 * @return 实现类的全限定名
+	 */
+	public static String generatedClassName(Class<?> repositoryClass) {
+		return repositoryClass.getName().replace('$', '_') + GENERATED_SUFFIX;
+	}
+
+	/**
+	 * 优先使用编译期生成的实现类，找不到时返回 null
+	 */
+	@SuppressWarnings("unchecked")
+	private <E, I extends Serializable, T extends Repository<E, I>> T createGenerated(Class<T> repositoryClass) {
+		Class<?> generated;
+		try {
+			generated = Class.forName(generatedClassName(repositoryClass), true, repositoryClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		if (!repositoryClass.isAssignableFrom(generated)) return null;
+		logger.info(String.format("为 仓库[%s] 创建生成的实现类实例 [%s]", repositoryClass.getName(), generated.getName()));
+		try {
+			return (T) generated.getConstructor(RepositoryFactory.class).newInstance(this);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(String.format("创建 仓库[%s] 的实现类实例失败", repositoryClass.getName()), cause);
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException(String.format("创建 仓库[%s] 的实现类实例失败", repositoryClass.getName()), e);
 		}
 	}
 
@@ -172,17 +314,339 @@ public class RepositoryFactory {
 		return (T) Proxy.newProxyInstance(
 				repositoryClass.getClassLoader( ),
 				new Class[] { repositoryClass },
-				new RepositoryInvocationHandler(this, repositoryClass)
+				createHandler(repositoryClass, repositoryClass.getMethods( ))
 		);
 	}
 
 	/**
-	 * 将指定仓库从此仓库工厂实例的缓存表中移除
+	 * 为仓库实例创建调用处理器，供动态代理和编译期生成的实现类使用
+	 * @param repositoryClass 仓库类型
+	 * @param methods 需要编译的方法，下标即 {@link RepositoryInvocationHandler#invoke(int, Object[])} 的 index
+	 * @param <R> 仓库类型
+	 * @return 调用处理器
+	 */
+	public <R extends Repository> RepositoryInvocationHandler<R> createHandler(Class<R> repositoryClass, Method[] methods) {
+		RepositoryInvocationHandler<R> handler = new RepositoryInvocationHandler<>(this, repositoryClass, methods);
+		this.handlerMap.put(repositoryClass, handler);
+		return handler;
+	}
+
+	/**
+	 * 预热仓库：在一个 ForkJoinPool 上并行地创建仓库实例(编译调用管线、解析表实体)，
+	 * 并为每个 @Query 方法预编译语句、放入连接的语句缓存，从而把这部分开销移出第一次请求。
+	 *
+	 * 某个仓库预热失败不会影响其他仓库，失败原因记录在报告中。
+	 * @param repositoryClasses 需要预热的仓库类型
+	 * @return 预热报告，包含每个仓库的耗时
+	 */
+	@SafeVarargs
+	public final PreloadReport preload(Class<? extends Repository>... repositoryClasses) {
+		long start = System.nanoTime();
+		List<Callable<PreloadReport.Entry>> tasks = new ArrayList<>(repositoryClasses.length);
+		for (Class<? extends Repository> repositoryClass : repositoryClasses) {
+			tasks.add(() -> preload(repositoryClass));
+		}
+		int parallelism = Math.min(Math.max(repositoryClasses.length, 1), Runtime.getRuntime().availableProcessors());
+		if (this.connectionConfiguration.getMaxPoolSize() > 0)
+			parallelism = Math.min(parallelism, this.connectionConfiguration.getMaxPoolSize());
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<PreloadReport.Entry> entries = new ArrayList<>(repositoryClasses.length);
+		try {
+			for (Future<PreloadReport.Entry> future : pool.invokeAll(tasks)) {
+				entries.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(String.format("仓库工厂 [%s] 预热被中断", this.name), e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(String.format("仓库工厂 [%s] 预热失败", this.name), e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		PreloadReport report = new PreloadReport(this.name, entries, System.nanoTime() - start);
+		if (report.getFailures() > 0) logger.warning(report.toString());
+		else logger.info(report.toString());
+		return report;
+	}
+
+	@SuppressWarnings("unchecked")
+	private PreloadReport.Entry preload(Class<? extends Repository> repositoryClass) {
+		long start = System.nanoTime();
+		long createNanos = -1;
+		int statements = 0;
+		Throwable failure = null;
+		try {
+			this.get((Class) repositoryClass);
+			createNanos = System.nanoTime() - start;
+			RepositoryInvocationHandler<?> handler = this.handlerMap.get(repositoryClass);
+			if (handler != null) statements = handler.prepareStatements();
+		} catch (Throwable e) {
+			failure = e;
+		}
+		long elapsed = System.nanoTime() - start;
+		if (createNanos < 0) createNanos = elapsed;
+		return new PreloadReport.Entry(repositoryClass, createNanos, elapsed - createNanos, statements, failure);
+	}
+
+	/**
+	 * 获取表实体的缓存区域，同一工厂中使用同一表实体的仓库共享一个区域，可以通过它获取缓存统计或手动使缓存失效
+	 * @param entityClass 表实体类型
+	 * @return 缓存区域
+	 */
+	public CacheRegion getCacheRegion(Class<?> entityClass) {
+		return this.cacheRegions.computeIfAbsent(entityClass, CacheRegion::new);
+	}
+
+	public Instrumentation getInstrumentation() {
+		return this.instrumentation;
+	}
+
+	/**
+	 * 设置仓库方法的度量扩展点，只对之后创建的仓库代理生效，因此需要在获取仓库之前设置
+	 * @param instrumentation 度量扩展点，为 null 时不记录
+	 */
+	public void setInstrumentation(Instrumentation instrumentation) {
+		this.instrumentation = instrumentation == null ? Instrumentation.NONE : instrumentation;
+	}
+
+	/**
+	 * 获取连接所使用的数据库方言，自定义语句供应器等可以据此生成与数据库相关的 sql
+	 * @return 数据库方言
+	 */
+	public Dialect getDialect() {
+		return getConnectionProvider().getDialect();
+	}
+
+	/**
+	 * 获取工厂中所有仓库共用的连接供应器，第一次获取时按连接配置创建
+	 * @return 连接供应器
+	 */
+	public ConnectionProvider getConnectionProvider() {
+		ConnectionProvider provider = this.connectionProvider;
+		if (provider != null) return provider;
+		synchronized ( this ) {
+			checkOpen();
+			if (this.connectionProvider == null) this.connectionProvider = ConnectionProvider.configure(this.connectionConfiguration);
+			return this.connectionProvider;
+		}
+	}
+
+	/**
+	 * 开启一个事务并绑定到当前线程，之后当前线程中通过此工厂调用的仓库方法都在这个事务中执行，
+	 * 直到事务提交、回滚或关闭。
+	 * @return 事务
+	 */
+	public Transaction begin() {
+		checkOpen();
+		if (currentTransaction() != null)
+			throw new IllegalStateException(String.format("仓库工厂 [%s] 在当前线程已经有进行中的事务.", this.name));
+		ConnectionBudget budget = this.connectionBudget;
+		if (budget != null) {
+			try {
+				budget.acquire();
+			} catch (SQLException e) {
+				throw new RuntimeException("开启事务失败: 无法获取数据库连接", e);
+			}
+		}
+		Transaction transaction;
+		try {
+			transaction = new Transaction(getConnectionProvider(), ended -> {
+				if (this.transactions.get() == ended) this.transactions.remove();
+				if (budget != null) budget.release();
+			});
+		} catch (RuntimeException e) {
+			if (budget != null) budget.release();
+			throw e;
+		}
+		this.transactions.set(transaction);
+		return transaction;
+	}
+
+	/**
+	 * @return 当前线程进行中的事务，没有时为 null
+	 */
+	public Transaction currentTransaction() {
+		Transaction transaction = this.transactions.get();
+		if (transaction == null) return null;
+		if (transaction.isActive()) return transaction;
+		/*
+		  事务在其他线程中结束时无法解除绑定，在这里补上
+		 */
+		this.transactions.remove();
+		return null;
+	}
+
+	/**
+	 * 在事务中执行回调：回调正常返回时提交，抛出异常时回滚并重新抛出。
+	 * 当前线程已经有进行中的事务时直接加入该事务，由外层事务决定提交或回滚。
+	 * @param callback 回调
+	 * @param <T> 回调结果类型
+	 * @return 回调结果
+	 */
+	public <T> T inTransaction(TransactionCallback<T> callback) {
+		try {
+			if (currentTransaction() != null) return callback.execute();
+			try (Transaction transaction = begin()) {
+				T result = callback.execute();
+				transaction.commit();
+				return result;
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(String.format("仓库工厂 [%s] 中的事务执行失败", this.name), e);
+		}
+	}
+
+	/**
+	 * 获取异步仓库方法所使用的执行器。
+	 * 没有设置时创建一个默认执行器：运行在 JDK 21 及以上时为每个任务创建一个虚拟线程，否则使用守护线程的缓存线程池。
+	 * @return 执行器
+	 */
+	public Executor getExecutor() {
+		Executor executor = this.executor;
+		if (executor != null) return executor;
+		synchronized ( this ) {
+			checkOpen();
+			if (this.executor == null) {
+				Executor created = createDefaultExecutor();
+				if (created instanceof ExecutorService) this.defaultExecutor = (ExecutorService) created;
+				this.executor = created;
+			}
+			return this.executor;
+		}
+	}
+
+	/**
+	 * 设置异步仓库方法所使用的执行器，由调用方负责关闭
+	 * @param executor 执行器
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	private static Executor createDefaultExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "juice-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * 关闭工厂：从工厂表中移除，关闭连接供应器(连接池、只读副本的连接)以及工厂自己创建的默认执行器。
+	 * 正在执行的异步方法会继续执行完，之后工厂及其仓库不能再使用，借出连接时会抛出异常。
+	 * 重复关闭什么也不做。
+	 */
+	@Override
+	public void close() {
+		ConnectionProvider provider;
+		ExecutorService executor;
+		synchronized ( this ) {
+			if (this.closed) return;
+			this.closed = true;
+			provider = this.connectionProvider;
+			executor = this.defaultExecutor;
+		}
+		factoryMap.remove(this.name, this);
+		if (provider != null) provider.close();
+		if (executor != null) executor.shutdown();
+		logger.info(String.format("关闭仓库工厂: [%s]", this.name));
+	}
+
+	/**
+	 * @return 工厂是否已经关闭
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	private void checkOpen() {
+		if (this.closed) throw new IllegalStateException(String.format("仓库工厂 [%s] 已关闭.", this.name));
+	}
+
+	/**
+	 * 将指定仓库从此仓库工厂实例的缓存表中移除，之后再获取时会创建新的实例。
+	 * 与正在进行的第一次获取并发时，该次获取以及等待它的获取仍会得到正在创建的实例，但它不会留在缓存表中。
 	 * @param repositoryClass
 	 */
 	public void remove(Class<? extends Repository> repositoryClass) {
-		Repository repository = this.repositoryMap.get(repositoryClass);
-		if (repository == null) return;
-		this.repositoryMap.remove(repositoryClass, this.repositoryMap.get(repositoryClass));
+		this.repositoryMap.remove(repositoryClass);
+		this.handlerMap.remove(repositoryClass);
+	}
+
+	/**
+	 * 仓库工厂构建器
+	 *
+	 * 名称在创建构建器时已经确定，build 时按名称保存到工厂表：同名工厂已存在时直接返回已有的实例(此时其他选项被忽略)，
+	 * 并发构建同名工厂时只会创建一个实例。构建过程不加全局锁，不同名称的工厂可以并发创建。
+	 */
+	public static final class Builder {
+
+		private final String name;
+
+		private ConnectionConfiguration configuration;
+
+		private Instrumentation instrumentation;
+
+		private Executor executor;
+
+		private ConnectionBudget connectionBudget;
+
+		private Builder(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @param configuration 数据库连接配置，必须指定
+		 */
+		public Builder configuration(ConnectionConfiguration configuration) {
+			this.configuration = configuration;
+			return this;
+		}
+
+		/**
+		 * @param instrumentation 仓库方法的度量扩展点，默认不记录
+		 */
+		public Builder instrumentation(Instrumentation instrumentation) {
+			this.instrumentation = instrumentation;
+			return this;
+		}
+
+		/**
+		 * @param executor 异步仓库方法所使用的执行器，由调用方负责关闭，默认延迟创建
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @param connectionBudget 连接预算，把同一个预算交给多个工厂即可限制它们同时借出的连接总数，默认不限制
+		 */
+		public Builder connectionBudget(ConnectionBudget connectionBudget) {
+			this.connectionBudget = connectionBudget;
+			return this;
+		}
+
+		/**
+		 * 创建并保存仓库工厂
+		 * @return 仓库工厂实例
+		 */
+		public RepositoryFactory build() {
+			if (this.configuration == null)
+				throw new RuntimeException(String.format("仓库工厂 [%s] 缺少数据库连接配置.", this.name));
+			RepositoryFactory factory = factoryMap.get(this.name);
+			if (factory != null) return factory;
+			return factoryMap.computeIfAbsent(this.name, key -> {
+				logger.info(String.format("创建仓库工厂: [%s]", key));
+				return new RepositoryFactory(this);
+			});
+		}
 	}
 }
@@ -0,0 +1,202 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.repository.ChangeTracker;
+import com.krun.juice.repository.EntityMetadata;
+import com.krun.juice.util.ClassUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 表实体的更新语句
+ *
+ * 为 {@link com.krun.juice.repository.Repository#save(Object)} 生成 `UPDATE 表 SET a = ?, b = ? WHERE 主键 = ?`。
+ * 有快照的表实体只更新与快照不同的列，没有变化时不生成语句；没有快照时更新所有非主键列。
+ * 更新的列不同，语句也不同，语句按更新的列缓存，更新同一组列的表实体可以共用一条语句批量执行。
+ *
+ * 静态字段、transient 字段和被子类同名字段隐藏的父类字段不会被写入。
+ */
+final class EntityWriter<E> {
+
+	private final EntityMetadata<E> entity;
+
+	private final ChangeTracker<E> tracker;
+
+	/**
+	 * 与 {@link EntityMetadata#getFields()} 一一对应的列名
+	 */
+	private final String[] columns;
+
+	/**
+	 * 主键字段下标，顺序与主键列相同
+	 */
+	private final int[] keyFields;
+
+	/**
+	 * 可以写入的非主键字段下标
+	 */
+	private final int[] writableFields;
+
+	private final String whereClause;
+
+	/**
+	 * 无法保存的原因，可以保存时为 null。创建仓库时不报错，调用 save 时才报错
+	 */
+	private final String error;
+
+	/**
+	 * 更新的列 -> 更新语句
+	 */
+	private final ConcurrentHashMap<BitSet, String> statements = new ConcurrentHashMap<>();
+
+	/**
+	 * @param entity 表实体元数据
+	 * @param idType 仓库声明的主键类型 I
+	 */
+	EntityWriter(EntityMetadata<E> entity, Class<?> idType) {
+		this.entity = entity;
+		this.tracker = entity.getChangeTracker();
+		List<Field> fields = entity.getFields();
+		this.columns = new String[fields.size()];
+		int[] writable = new int[fields.size()];
+		int count = 0;
+		for (int i = 0; i < this.columns.length; i++) {
+			Field field = fields.get(i);
+			this.columns[i] = EntityMetadata.columnOf(field);
+			if (Modifier.isTransient(field.getModifiers()) || entity.findField(this.columns[i]) != field) continue;
+			writable[count++] = i;
+		}
+
+		List<String> keyColumns = entity.getKeyColumns();
+		this.keyFields = new int[keyColumns.size()];
+		StringBuilder where = new StringBuilder(" WHERE ");
+		String error = keyColumns.isEmpty()
+				? String.format("表实体 [%s] 没有主键，请用 @Id 标记主键字段", entity.getEntityClass().getSimpleName())
+				: null;
+		for (int i = 0; i < this.keyFields.length; i++) {
+			this.keyFields[i] = fields.indexOf(entity.findField(keyColumns.get(i)));
+			if (i > 0) where.append(" AND ");
+			where.append(keyColumns.get(i)).append(" = ?");
+		}
+		if (this.keyFields.length == 1 && idType != null && idType != Serializable.class) {
+			Class<?> keyType = ClassUtils.box(fields.get(this.keyFields[0]).getType());
+			if (!idType.isAssignableFrom(keyType))
+				error = String.format("主键字段 [%s] 的类型 %s 与仓库声明的主键类型 %s 不符",
+						fields.get(this.keyFields[0]).getName(), keyType.getSimpleName(), idType.getSimpleName());
+		}
+		this.whereClause = where.toString();
+		this.error = error;
+
+		count = removeKeys(writable, count);
+		this.writableFields = Arrays.copyOf(writable, count);
+	}
+
+	private int removeKeys(int[] writable, int count) {
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (!isKey(writable[i])) writable[kept++] = writable[i];
+		}
+		return kept;
+	}
+
+	private boolean isKey(int field) {
+		for (int key : this.keyFields) {
+			if (key == field) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 生成表实体的更新
+	 * @param entity 表实体
+	 * @return 更新语句和参数，表实体没有变化时为 null
+	 */
+	Update update(E entity) {
+		if (this.error != null) throw new RuntimeException(String.format("无法保存表实体: %s。", this.error));
+		int[] fields = this.tracker == null ? null : this.tracker.changed(entity);
+		if (fields == null) {
+			fields = this.writableFields;
+		} else {
+			for (int field : fields) {
+				if (isKey(field))
+					throw new IllegalArgumentException(String.format("表实体 [%s] 的主键 [%s] 在查询后被修改，不能保存",
+							this.entity.getEntityClass().getSimpleName(), this.columns[field]));
+			}
+			fields = intersect(fields);
+			if (fields.length == 0) return null;
+		}
+
+		BitSet shape = new BitSet(this.columns.length);
+		for (int field : fields) {
+			shape.set(field);
+		}
+		/*
+		  修改的字段按查询结果的列顺序排列，与 SET 子句的顺序(字段下标升序)不一定相同，参数按 SET 子句的顺序绑定
+		 */
+		Object[] parameters = new Object[fields.length + this.keyFields.length];
+		for (int field = shape.nextSetBit(0), i = 0; field >= 0; field = shape.nextSetBit(field + 1), i++) {
+			parameters[i] = this.entity.valueOf(entity, field);
+		}
+		for (int i = 0; i < this.keyFields.length; i++) {
+			Object key = this.entity.valueOf(entity, this.keyFields[i]);
+			if (key == null)
+				throw new IllegalArgumentException(String.format("表实体 [%s] 的主键 [%s] 为 null，不能保存",
+						this.entity.getEntityClass().getSimpleName(), this.columns[this.keyFields[i]]));
+			parameters[fields.length + i] = key;
+		}
+		String sql = this.statements.get(shape);
+		if (sql == null) sql = this.statements.computeIfAbsent(shape, this::sqlOf);
+		return new Update(entity, sql, parameters);
+	}
+
+	/**
+	 * 保存成功后重新记录快照，没有开启修改跟踪时什么也不做
+	 * @param entity 表实体
+	 */
+	void saved(E entity) {
+		if (this.tracker != null) this.tracker.refresh(entity, this.writableFields);
+	}
+
+	/**
+	 * 只保留可以写入的字段，快照中可能有 transient 字段等不会写入的字段
+	 */
+	private int[] intersect(int[] changed) {
+		int count = 0;
+		for (int field : changed) {
+			if (Arrays.binarySearch(this.writableFields, field) >= 0) changed[count++] = field;
+		}
+		return count == changed.length ? changed : Arrays.copyOf(changed, count);
+	}
+
+	private String sqlOf(BitSet shape) {
+		StringBuilder builder = new StringBuilder("UPDATE ").append(this.entity.getTableName()).append(" SET ");
+		for (int field = shape.nextSetBit(0), i = 0; field >= 0; field = shape.nextSetBit(field + 1), i++) {
+			if (i > 0) builder.append(", ");
+			builder.append(this.columns[field]).append(" = ?");
+		}
+		return builder.append(this.whereClause).toString();
+	}
+
+	/**
+	 * 一个表实体的更新
+	 */
+	static final class Update {
+
+		final Object entity;
+		final String sql;
+		final Object[] parameters;
+
+		Update(Object entity, String sql, Object[] parameters) {
+			this.entity = entity;
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.connection.dialect.Dialect;
+import com.krun.juice.repository.Pageable;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 按主键分页(keyset / seek)的查询
+ *
+ * 扫描仓库时把返回 Page 的方法的 sql 改写为两种形式：
+ * 第一页 `... ORDER BY key LIMIT n+1`，之后的页 `... WHERE (原条件) AND key &gt; ? ORDER BY key LIMIT n+1`，
+ * 复合主键使用行值比较 (a, b) &gt; (?, ?)。多读的一行只用于判断是否还有下一页。
+ * 每页行数 n+1 作为最后一个参数绑定，不写在 sql 里：每页行数由调用方决定，写在 sql 里时每种行数都会产生一条新的语句，
+ * 占满连接的语句缓存。
+ */
+final class KeysetQuery {
+
+	private final String firstSql;
+	private final String seekSql;
+	private final String[] keyColumns;
+
+	/**
+	 * Pageable 参数在方法参数中的下标
+	 */
+	private final int pageableIndex;
+
+	/**
+	 * 页中元素的类型
+	 */
+	private final Class<?> elementClass;
+
+	/**
+	 * @param sql 仓库方法的查询语句，不能带 ORDER BY、LIMIT、GROUP BY 等子句
+	 * @param keyColumns 主键列名
+	 * @param pageableIndex Pageable 参数的下标
+	 * @param dialect 数据库方言
+	 * @param elementClass 页中元素的类型
+	 */
+	KeysetQuery(String sql, List<String> keyColumns, int pageableIndex, Dialect dialect, Class<?> elementClass) {
+		this.elementClass = elementClass;
+		this.keyColumns = keyColumns.toArray(new String[0]);
+		this.pageableIndex = pageableIndex;
+
+		String trimmed = sql.trim();
+		String orderBy = " ORDER BY " + String.join(", ", this.keyColumns);
+		String seek = this.keyColumns.length == 1
+				? this.keyColumns[0] + " > ?"
+				: "(" + String.join(", ", this.keyColumns) + ") > (" + placeholders(this.keyColumns.length) + ")";
+		int where = indexOfWhere(trimmed);
+		this.firstSql = dialect.limit(trimmed + orderBy);
+		this.seekSql = dialect.limit(where < 0
+				? trimmed + " WHERE " + seek + orderBy
+				: trimmed.substring(0, where).trim() + " WHERE (" + trimmed.substring(where + 5).trim() + ") AND " + seek + orderBy);
+	}
+
+	/**
+	 * 检查 sql 能否改写为按主键分页的形式
+	 * @param sql 仓库方法的查询语句
+	 * @return 不能改写的原因，可以改写时为 null
+	 */
+	static String check(String sql) {
+		String upper = sql.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+		if (!upper.startsWith("SELECT")) return "只有 SELECT 语句可以分页";
+		for (String clause : new String[] { "ORDER BY", "LIMIT", "OFFSET", "FETCH", "GROUP BY", "HAVING", "UNION", "FOR UPDATE" }) {
+			if (upper.contains(" " + clause + " ") || upper.endsWith(" " + clause))
+				return String.format("分页语句不能带 %s 子句，排序和分页由 Juice 按主键生成", clause);
+		}
+		return null;
+	}
+
+	String[] getKeyColumns() {
+		return this.keyColumns;
+	}
+
+	Class<?> getElementClass() {
+		return this.elementClass;
+	}
+
+	/**
+	 * @param args 方法参数
+	 * @return 方法参数中的分页参数
+	 */
+	Pageable pageableOf(Object[] args) {
+		Object pageable = args[this.pageableIndex];
+		if (pageable == null) throw new IllegalArgumentException("分页参数 Pageable 不能为 null");
+		return (Pageable) pageable;
+	}
+
+	/**
+	 * @param pageable 分页参数
+	 * @return 这一页使用的 sql
+	 */
+	String sql(Pageable pageable) {
+		return pageable.isFirst() ? this.firstSql : this.seekSql;
+	}
+
+	/**
+	 * 去掉方法参数中的分页参数，之后的页再加上上一页最后一行的主键值，最后是这一页读取的行数(每页行数 + 1)
+	 * @param args 方法参数
+	 * @param pageable 分页参数
+	 * @return 绑定到语句上的参数
+	 */
+	Object[] bind(Object[] args, Pageable pageable) {
+		Object[] keys = pageable.getKeys();
+		if (keys != null && keys.length != this.keyColumns.length)
+			throw new IllegalArgumentException(String.format("分页标记中的主键数量 [%d] 与主键列 %s 不符",
+					keys.length, String.join(", ", this.keyColumns)));
+		int count = keys == null ? 0 : keys.length;
+		Object[] bound = new Object[args.length + count];
+		System.arraycopy(args, 0, bound, 0, this.pageableIndex);
+		System.arraycopy(args, this.pageableIndex + 1, bound, this.pageableIndex, args.length - this.pageableIndex - 1);
+		if (keys != null) System.arraycopy(keys, 0, bound, args.length - 1, count);
+		bound[bound.length - 1] = pageable.getSize() + 1;
+		return bound;
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) builder.append(", ");
+			builder.append('?');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 查找最外层的 WHERE，忽略括号(子查询)和引号中的内容
+	 * @return WHERE 的下标，没有时为 -1
+	 */
+	private static int indexOfWhere(String sql) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+				continue;
+			}
+			if (c == '\'' || c == '"' || c == '`') quote = c;
+			else if (c == '(') depth++;
+			else if (c == ')') depth--;
+			else if (depth == 0 && sql.regionMatches(true, i, "WHERE", 0, 5)
+					&& (i == 0 || Character.isWhitespace(sql.charAt(i - 1)))
+					&& (i + 5 == sql.length() || Character.isWhitespace(sql.charAt(i + 5))))
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,243 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.connection.dialect.Dialect;
+import com.krun.juice.instrumentation.MethodRecorder;
+import com.krun.juice.repository.EntityMetadata;
+import com.krun.juice.repository.cache.MethodCache;
+import com.krun.juice.repository.cache.SingleFlight;
+import com.krun.juice.repository.resolver.DefaultResultResolver;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Created by krun on 2017/10/11.
+ *
+ * 方法调用管线
+ *
+ * 扫描仓库时为每个带 @Query 的方法编译一次：语句供应器、参数处理器、结果解析器
+ * 都被编译成固定签名的函数式接口实例，签名完全匹配时由 LambdaMetafactory 直接生成实现，
+ * 否则退回到预先适配好参数的 MethodHandle。
+ * 调用时不再经过 Method.invoke，不再重新构造参数数组，也不再区分默认处理器和自定义处理器。
+ */
+final class QueryPipeline {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodType PROVIDER_TYPE = MethodType.methodType(Statement.class, Connection.class, String.class);
+	private static final MethodType PROCESSOR_TYPE = MethodType.methodType(Statement.class, Statement.class, Object[].class);
+	private static final MethodType RESOLVER_TYPE = MethodType.methodType(Object.class, Statement.class, Class.class, Method.class);
+
+	/**
+	 * 语句供应器: (Connection connection, String sql) -> Statement
+	 */
+	interface Provider {
+		Statement provide(Connection connection, String sql) throws Throwable;
+	}
+
+	/**
+	 * 参数处理器: (Statement statement, Object[] args) -> Statement
+	 */
+	interface Processor {
+		Statement process(Statement statement, Object[] args) throws Throwable;
+	}
+
+	/**
+	 * 结果解析器: (Statement statement, Class entityClass, Method method) -> Object
+	 */
+	interface Resolver {
+		Object resolve(Statement statement, Class<?> entityClass, Method method) throws Throwable;
+	}
+
+	final Method method;
+	final String sql;
+
+	/**
+	 * 方法是否返回 CompletableFuture，此时在仓库工厂的执行器上异步执行
+	 */
+	final boolean async;
+
+	/**
+	 * 方法实际产出的结果类型，异步方法为 CompletableFuture 的类型参数
+	 */
+	final Class<?> resultClass;
+
+	/**
+	 * 结果是否以游标形式返回，此时语句和连接要等到游标关闭时才归还
+	 */
+	final boolean streaming;
+
+	/**
+	 * 是否为更新操作(非只读)，执行后使表实体的缓存区域失效
+	 */
+	final boolean modifying;
+
+	/**
+	 * 是否为只读操作，配置了只读副本时在副本上执行
+	 */
+	final boolean readOnly;
+
+	/**
+	 * 执行超时(纳秒)，为 0 时不限制
+	 */
+	final long timeout;
+
+	/**
+	 * 返回 Page 的方法按主键分页的查询，其他方法为 null
+	 */
+	final KeysetQuery keyset;
+
+	/**
+	 * 带 @Cached 的方法的结果缓存，其他方法为 null
+	 */
+	final MethodCache cache;
+
+	/**
+	 * 带 @Coalesced 的方法合并并发调用，其他方法为 null
+	 */
+	final SingleFlight flight;
+
+	/**
+	 * 批量执行时每次 executeBatch 提交的行数，为 0 时不是批量方法
+	 */
+	final int batchSize;
+
+	/**
+	 * 带 @GeneratedKeys 的方法返回的主键列，其他方法为 null。
+	 * 此时语句由方言的 prepareReturningKeys 创建，默认解析器读取生成的主键而不是影响的行数
+	 */
+	final String[] generatedKeys;
+	final Provider provider;
+	final Processor processor;
+	final Resolver resolver;
+
+	/**
+	 * 是否使用默认结果解析器，此时调用方分别调用 DefaultResultResolver.execute / map，以便分开计量执行和映射
+	 */
+	final boolean defaultResolver;
+
+	/**
+	 * 度量记录器，不记录时为 null
+	 */
+	final MethodRecorder recorder;
+
+	/**
+	 * 用于输出扫描结果和调用日志
+	 */
+	final String providerName;
+	final String processorName;
+	final String resolverName;
+
+	QueryPipeline(Method method, String sql, boolean readOnly, Method provider, Method processor, Method resolver,
+				  int batchSize, String[] generatedKeys, Dialect dialect, long timeout, KeysetQuery keyset, MethodCache cache, SingleFlight flight, MethodRecorder recorder) {
+		this.method = method;
+		this.sql = sql;
+		EntityMetadata.ResultType resultType = EntityMetadata.resultTypeOf(method);
+		this.async = resultType.isAsync();
+		this.resultClass = resultType.getRawClass();
+		this.streaming = DefaultResultResolver.isCursorType(this.resultClass);
+		this.readOnly = readOnly || isReadOnly(sql);
+		this.modifying = !this.readOnly;
+		this.timeout = timeout;
+		this.keyset = keyset;
+		this.cache = cache;
+		this.flight = flight;
+		this.batchSize = batchSize;
+		this.generatedKeys = generatedKeys;
+		this.provider = generatedKeys == null
+				? compileProvider(provider)
+				: (connection, statementSql) -> dialect.prepareReturningKeys(connection, statementSql, generatedKeys);
+		this.processor = compileProcessor(processor);
+		this.resolver = compileResolver(resolver);
+		this.defaultResolver = DefaultResultResolver.class.equals(resolver.getDeclaringClass())
+				&& "resolve".equals(resolver.getName());
+		this.recorder = recorder;
+		this.providerName = generatedKeys == null ? nameOf(provider) : dialect + ".prepareReturningKeys()";
+		this.processorName = nameOf(processor);
+		this.resolverName = nameOf(resolver);
+	}
+
+	/**
+	 * 以 SELECT 开头且不带加锁子句的语句是只读的
+	 */
+	private static boolean isReadOnly(String sql) {
+		String trimmed = sql.trim();
+		if (!trimmed.regionMatches(true, 0, "SELECT", 0, 6)) return false;
+		String upper = trimmed.toUpperCase();
+		return !upper.contains(" FOR UPDATE") && !upper.contains(" FOR SHARE") && !upper.contains(" LOCK IN SHARE MODE");
+	}
+
+	private static String nameOf(Method method) {
+		return method.getDeclaringClass().getSimpleName() + "." + method.getName() + "()";
+	}
+
+	private static Provider compileProvider(Method method) {
+		MethodHandle handle = unreflect(method);
+		Provider provider = (Provider) metafactory(handle, Provider.class, "provide", PROVIDER_TYPE);
+		if (provider != null) return provider;
+		MethodHandle adapted = handle.asType(PROVIDER_TYPE);
+		return (connection, sql) -> (Statement) adapted.invokeExact(connection, sql);
+	}
+
+	/**
+	 * 默认处理器(以及任何声明为 (Statement, Object...) 的处理器)直接接收参数数组，
+	 * 自定义处理器 (Statement, String/Integer/... arg) 则把参数数组展开成各个参数。
+	 */
+	private static Processor compileProcessor(Method method) {
+		MethodHandle handle = unreflect(method);
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		if (parameterTypes.length == 2 && parameterTypes[1] == Object[].class) {
+			Processor processor = (Processor) metafactory(handle, Processor.class, "process", PROCESSOR_TYPE);
+			if (processor != null) return processor;
+		}
+		MethodHandle adapted = handle
+				.asSpreader(Object[].class, parameterTypes.length - 1)
+				.asType(PROCESSOR_TYPE);
+		return (statement, args) -> (Statement) adapted.invokeExact(statement, args);
+	}
+
+	private static Resolver compileResolver(Method method) {
+		MethodHandle handle = unreflect(method);
+		Resolver resolver = (Resolver) metafactory(handle, Resolver.class, "resolve", RESOLVER_TYPE);
+		if (resolver != null) return resolver;
+		MethodHandle adapted = handle.asType(RESOLVER_TYPE);
+		return (statement, entityClass, m) -> (Object) adapted.invokeExact(statement, entityClass, m);
+	}
+
+	private static MethodHandle unreflect(Method method) {
+		try {
+			method.setAccessible(true);
+			return lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(String.format("无法访问方法 [%s]", nameOf(method)), e);
+		}
+	}
+
+	/**
+	 * 签名完全匹配时由 LambdaMetafactory 生成函数式接口实现，使调用点可以被 JIT 内联。
+	 * @return 生成的实现，无法生成(如签名不符、目标方法不可访问)时返回 null
+	 */
+	private static Object metafactory(MethodHandle handle, Class<?> functionalInterface, String name, MethodType type) {
+		if (!handle.type().equals(type)) return null;
+		try {
+			CallSite site = LambdaMetafactory.metafactory(lookup, name,
+					MethodType.methodType(functionalInterface), type, handle, type);
+			return site.getTarget().invoke();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "\t>>> processor: " + this.processorName + "\n" +
+				"\t>>> provider: " + this.providerName + "\n" +
+				"\t>>> resolver: " + this.resolverName + "\n";
+	}
+}
@@ -1,32 +1,69 @@
 package com.krun.juice.repository.invocation;
 
+import com.krun.juice.connection.provider.ConnectionBudget;
+import com.krun.juice.connection.provider.ConnectionPool;
 import com.krun.juice.connection.provider.ConnectionProvider;
+import com.krun.juice.connection.provider.PooledConnection;
+import com.krun.juice.connection.provider.StatementCache;
+import com.krun.juice.instrumentation.InvocationTiming;
+import com.krun.juice.repository.Deadline;
+import com.krun.juice.repository.EntityMetadata;
+import com.krun.juice.repository.Page;
+import com.krun.juice.repository.Pageable;
 import com.krun.juice.repository.Repository;
-import com.krun.juice.repository.annotation.Entity;
+import com.krun.juice.repository.annotation.Batch;
+import com.krun.juice.repository.annotation.Cached;
+import com.krun.juice.repository.annotation.Coalesced;
+import com.krun.juice.repository.annotation.GeneratedKeys;
+import com.krun.juice.repository.annotation.MaxInFlight;
 import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.cache.CacheRegion;
+import com.krun.juice.repository.cache.MethodCache;
+import com.krun.juice.repository.cache.SingleFlight;
 import com.krun.juice.repository.factory.RepositoryFactory;
 import com.krun.juice.repository.processor.DefaultParameterProcessor;
 import com.krun.juice.repository.processor.RepositoryParameterProcessor;
+import com.krun.juice.repository.resolver.DefaultResultResolver;
 import com.krun.juice.repository.resolver.RepositoryResultResolver;
+import com.krun.juice.repository.resolver.ResultCursor;
+import com.krun.juice.repository.statement.DefaultPreparedStatementProvider;
 import com.krun.juice.repository.statement.RepositoryStatementProvider;
+import com.krun.juice.transaction.Transaction;
 import com.krun.juice.util.ClassUtils;
 import com.krun.juice.util.MethodUtils;
 import com.krun.juice.utils.log.LoggerProvider;
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.Setter;
+import com.krun.juice.utils.log.SqlLogger;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Created by krun on 2017/9/23.
  *
  * Juice 的核心部分，实现注解解析、方法和 sql 的映射、sql结果的映射
+ *
+ * 既作为动态代理的调用处理器，也被编译期生成的仓库实现类直接使用：
+ * 生成的实现类只把自己的 @Query 方法交给处理器编译，调用时以方法下标 {@link #invoke(int, Object[])} 调用，
+ * 不再经过 Proxy 和方法表查找。
  */
 public class RepositoryInvocationHandler <R extends Repository> implements InvocationHandler {
 
@@ -44,72 +81,107 @@ public class RepositoryInvocationHandler <R extends Repository> implements Invoc
 	/**
 	 * 用于缓存方法的解析结果
 	 */
-	private final LinkedHashMap<Method, MethodAnnotationValues> methodMap;
+	private final LinkedHashMap<Method, QueryPipeline> methodMap;
+
+	/**
+	 * 与构造时传入的方法一一对应，供生成的实现类按下标调用
+	 */
+	private final QueryPipeline[] pipelines;
 
 	private final ConnectionProvider connectionProvider;
 
 	/**
-	 * 与 ConnectionProvider 配合实现延迟加载
+	 * 仓库自身的并发限制(@MaxInFlight)和工厂的连接预算，没有配置时为 null
 	 */
-	private volatile Connection connection;
+	private final ConnectionBudget repositoryBudget;
+	private final ConnectionBudget factoryBudget;
 
+	private final SqlLogger sqlLogger;
 
 	/**
-	 * 方法解析结果类
-	 *
-	 * 用以保存仓库类里每个方法所配置的：
-	 * 方法处理器、语句供应器、结果解析器
-	 */
-	@Getter
-	@Setter
-	@AllArgsConstructor
-	private static class MethodAnnotationValues {
-
-		private Method processor;
-		private Statement statement;
-		private Method resolver;
-
-		public String toString() {
-			return "\t>>> processor: " +
-					processor.getDeclaringClass( ).getSimpleName( ) +
-					"." +
-					processor.getName( ) +
-					"()\n" +
-					"\t>>> statement type: " +
-					statement.getClass( ).getSimpleName( ) +
-					"\n" +
-					"\t>>> resolver: " +
-					resolver.getDeclaringClass( ).getSimpleName( ) +
-					"." +
-					resolver.getName( ) +
-					"()\n";
-		}
+	 * 表实体的缓存区域，与同一工厂中使用该表实体的其他仓库共享
+	 */
+	private final CacheRegion cacheRegion;
 
-	}
+	/**
+	 * 以游标形式返回结果的方法所使用的 fetch size，已经由方言换算为驱动接受的值
+	 */
+	private final int fetchSize;
+
+	/**
+	 * 事务外以游标形式返回结果时是否需要关闭自动提交，驱动才会按 fetch size 分批读取
+	 */
+	private final boolean streamingInTransaction;
+
+	/**
+	 * 连接供应器是否为连接池，连接池借出的连接本身就是独占的
+	 */
+	private final boolean usesPool;
+
+	/**
+	 * Repository.save / saveAll 使用的更新语句生成器
+	 */
+	private final EntityWriter<Object> writer;
+
+	/**
+	 * 仓库工厂配置的默认执行超时(纳秒)，为 0 时不限制
+	 */
+	private final long defaultTimeout;
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private static final Method SAVE = repositoryMethod("save", Object.class);
+	private static final Method SAVE_ALL = repositoryMethod("saveAll", Iterable.class);
+
+	private static final int DEFAULT_BATCH_SIZE = 1000;
 
 	public RepositoryInvocationHandler (RepositoryFactory factory, Class<R> repositoryClass) {
+		this(factory, repositoryClass, repositoryClass.getMethods( ));
+	}
+
+	/**
+	 * 只编译给定的方法，生成的仓库实现类使用这个构造器，从而跳过对整个仓库接口的扫描
+	 * @param factory 仓库工厂
+	 * @param repositoryClass 仓库类型
+	 * @param methods 需要编译的方法，下标即 {@link #invoke(int, Object[])} 的 index
+	 */
+	public RepositoryInvocationHandler (RepositoryFactory factory, Class<R> repositoryClass, Method[] methods) {
 		this.factory = factory;
 		this.repositoryClass = repositoryClass;
 		this.repositoryClassName = repositoryClass.getSimpleName( );
 		this.entityClass = getEntity( );
-		Entity entity = this.entityClass.getAnnotation(Entity.class);
-		if (entity == null) this.entityName = this.entityClass.getSimpleName().toLowerCase();
-		else this.entityName = entity.value();
-		logger.info(String.format("获取表名: [%s]", this.entityName));
+		this.entityName = EntityMetadata.of(this.entityClass).getTableName();
+		if (logger.isLoggable(Level.FINE))
+			logger.fine(String.format("获取表名: [%s]", this.entityName));
 		this.methodMap = new LinkedHashMap<>( );
-		this.connectionProvider = ConnectionProvider.configure(factory.getConnectionConfiguration( ));
+		this.pipelines = new QueryPipeline[methods.length];
+		this.connectionProvider = factory.getConnectionProvider( );
+		MaxInFlight maxInFlight = repositoryClass.getAnnotation(MaxInFlight.class);
+		this.repositoryBudget = maxInFlight == null ? null : new ConnectionBudget(maxInFlight.value(), maxInFlight.timeout());
+		this.factoryBudget = factory.getConnectionBudget( );
+		this.sqlLogger = new SqlLogger(factory.getConnectionConfiguration( ).getSqlLogSampleRate( ),
+				factory.getConnectionConfiguration( ).getSlowQueryThreshold( ),
+				this.connectionProvider.getDialect( ));
+		this.fetchSize = this.connectionProvider.getDialect( ).streamingFetchSize(factory.getConnectionConfiguration( ).getFetchSize( ));
+		this.streamingInTransaction = this.fetchSize != 0 && this.connectionProvider.getDialect( ).streamingRequiresTransaction( );
+		this.usesPool = this.connectionProvider instanceof ConnectionPool;
+		this.cacheRegion = factory.getCacheRegion(this.entityClass);
+		this.writer = createWriter( );
+		this.defaultTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(factory.getConnectionConfiguration( ).getQueryTimeout( ), 0));
 
-		this.scanMethods( );
+		this.scanMethods(methods);
 
 		/*
 		  输出扫描结果
 		 */
-		StringBuilder builder = new StringBuilder("\n");
-		for (Method key : this.methodMap.keySet()) {
-			builder.append(String.format("\t> 配置 %s.%s():\n", this.repositoryClassName, key.getName()))
-					.append(this.methodMap.get(key));
+		if (logger.isLoggable(Level.FINE)) {
+			StringBuilder builder = new StringBuilder("\n");
+			for (Method key : this.methodMap.keySet()) {
+				builder.append(String.format("\t> 配置 %s.%s():\n", this.repositoryClassName, key.getName()))
+						.append(this.methodMap.get(key));
+			}
+			logger.fine(builder.toString());
 		}
-		logger.info(builder.toString());
 	}
 
 	/**
@@ -120,34 +192,51 @@ public class RepositoryInvocationHandler <R extends Repository> implements Invoc
 		return (Class<?>) ClassUtils.getInterfaceActualType(this.repositoryClass)[0];
 	}
 
-	private synchronized Connection getConnection ( ) {
+	@SuppressWarnings("unchecked")
+	private EntityWriter<Object> createWriter () {
+		Type idType = ClassUtils.getInterfaceActualType(this.repositoryClass)[1];
+		return new EntityWriter<>((EntityMetadata<Object>) EntityMetadata.of(this.entityClass), ClassUtils.getRawClass(idType));
+	}
+
+	private static Method repositoryMethod (String name, Class<?> parameterType) {
 		try {
-			if (this.connection == null) {
-				this.connection = this.connectionProvider.provide( );
-			} else if (this.connection.isClosed( )) {
-				this.connection = this.connectionProvider.provide( );
-			}
-			return this.connection;
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
+			return Repository.class.getMethod(name, parameterType);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
 		}
 	}
 
-	private void scanMethods ( ) {
-		for (Method method : this.repositoryClass.getMethods( )) {
+	private void scanMethods (Method[] methods) {
+		for (int i = 0; i < methods.length; i++) {
+			Method method = methods[i];
 			/*
 			  由于当前实现并没有做`方法名映射sql`支持，因此需要判断方法是否带有 Query 注解
 			 */
 			if (! method.isAnnotationPresent(Query.class)) {
-				logger.info(String.format("方法 %s.%s() 并无 `@Query` 注解，跳过该方法]",
-						this.repositoryClassName,
-						method.getName( )));
+				if (logger.isLoggable(Level.FINE))
+					logger.fine(String.format("方法 %s.%s() 并无 `@Query` 注解，跳过该方法",
+							this.repositoryClassName,
+							method.getName( )));
 				continue;
 			}
-			this.methodMap.put(method, new MethodAnnotationValues(
+			Query query = method.getAnnotation(Query.class);
+			String sql = String.format(query.value(), this.entityName);
+			this.pipelines[i] = new QueryPipeline(
+					method,
+					sql,
+					query.readOnly(),
+					getProvider(method),
 					getProcessor(method),
-					getStatement(method),
-					getResolver(method)));
+					getResolver(method),
+					getBatchSize(method),
+					getGeneratedKeys(method),
+					this.connectionProvider.getDialect( ),
+					getTimeout(method),
+					getKeyset(method, sql),
+					getCache(method),
+					getFlight(method),
+					this.factory.getInstrumentation().recorder(this.factory.getName(), this.repositoryClass, method));
+			this.methodMap.put(method, this.pipelines[i]);
 		}
 	}
 
@@ -189,34 +278,26 @@ public class RepositoryInvocationHandler <R extends Repository> implements Invoc
 				method.getName()));
 	}
 
-	private Statement getStatement (Method method) {
+	private Method getProvider (Method method) {
 		Query query = method.getAnnotation(Query.class);
-		try {
-			Class<? extends RepositoryStatementProvider> statementProvider = query.provider();
-			String provideMethod = query.provideMethod();
-			if (provideMethod.isEmpty()) provideMethod = method.getName();
-			Method m = MethodUtils.findMethod(statementProvider, provideMethod);
-			if (m == null) m = MethodUtils.findMethod(statementProvider, "provide");
-			if (m == null) throw new RuntimeException(String.format("方法 %s.%s() 所指定的语句提供器本应使用默认方法( '%s' 或 'provide' )，但是并没有找到其中任何一个。",
-					this.repositoryClassName,
-					method.getName(),
-					method.getName()));
-			logger.info(String.format("调用语句提供器 [%s.%s()] 生成语句 [%s.%s()]",
-					m.getDeclaringClass().getSimpleName(),
-					m.getName(),
-					this.repositoryClassName,
-					method.getName()));
-			return (Statement) m.invoke(null, getConnection(), String.format(query.value(), this.entityName));
-		} catch (IllegalAccessException | InvocationTargetException e) {
-			throw new RuntimeException(e);
-		}
+		Class<? extends RepositoryStatementProvider> statementProvider = query.provider();
+		String provideMethod = query.provideMethod();
+		if (provideMethod.isEmpty()) provideMethod = method.getName();
+		Method m = MethodUtils.findMethod(statementProvider, provideMethod);
+		if (m == null) m = MethodUtils.findMethod(statementProvider, "provide");
+		if (m == null) throw new RuntimeException(String.format("方法 %s.%s() 所指定的语句提供器本应使用默认方法( '%s' 或 'provide' )，但是并没有找到其中任何一个。",
+				this.repositoryClassName,
+				method.getName(),
+				method.getName()));
+		return m;
 	}
 
 	private Method getResolver (Method method) {
 		Query query = method.getAnnotation(Query.class);
 		Class<? extends RepositoryResultResolver> resolverClass = query.resolver();
 		String resolverMethod = query.resolveMethod();
-		if (resolverMethod.isEmpty()) resolverMethod = method.getName();
+		// 默认解析器的其他公开方法(map、page 等)是给处理器内部用的，不按方法名匹配
+		if (resolverMethod.isEmpty()) resolverMethod = resolverClass == DefaultResultResolver.class ? "resolve" : method.getName();
 		Method m = MethodUtils.findMethod(resolverClass, resolverMethod);
 		if (m == null) m = MethodUtils.findMethod(resolverClass, "resolve");
 		if (m == null) throw new RuntimeException(String.format("方法 %s.%s() 所指定的解析器本应使用默认方法( '%s' 或 'resolve' )，但是并没有找到其中任何一个。",
@@ -226,50 +307,767 @@ public class RepositoryInvocationHandler <R extends Repository> implements Invoc
 		return m;
 	}
 
+	/**
+	 * 获取批量方法每次提交的行数，并检查方法签名
+	 * @param method 要检查的方法
+	 * @return 每次提交的行数，不是批量方法时为 0
+	 */
+	private int getBatchSize (Method method) {
+		Batch batch = method.getAnnotation(Batch.class);
+		if (batch == null) return 0;
+		if (method.getParameterCount() != 1
+				|| !Iterable.class.isAssignableFrom(method.getParameterTypes()[0])
+				|| !int[].class.equals(EntityMetadata.resultTypeOf(method).getRawClass()))
+			throw new RuntimeException(String.format("批量方法 %s.%s() 只能接收一个 Iterable 参数并返回 int[]。",
+					this.repositoryClassName,
+					method.getName()));
+		if (batch.size() > 0) return batch.size();
+		int size = this.factory.getConnectionConfiguration( ).getBatchSize( );
+		return size > 0 ? size : DEFAULT_BATCH_SIZE;
+	}
+
+	/**
+	 * 获取 @GeneratedKeys 方法返回的主键列：注解指定了列名时使用它们，否则使用表实体的主键列
+	 * @param method 要检查的方法
+	 * @return 主键列名，没有 @GeneratedKeys 时为 null
+	 */
+	private String[] getGeneratedKeys (Method method) {
+		GeneratedKeys keys = method.getAnnotation(GeneratedKeys.class);
+		if (keys == null) return null;
+		if (method.getAnnotation(Query.class).provider() != DefaultPreparedStatementProvider.class
+				|| method.isAnnotationPresent(Batch.class)
+				|| DefaultResultResolver.isCursorType(EntityMetadata.resultTypeOf(method).getRawClass()))
+			throw new RuntimeException(String.format("返回自增主键的方法 %s.%s() 由方言创建语句，不能指定语句提供器，也不能是批量方法或以游标形式返回结果。",
+					this.repositoryClassName,
+					method.getName()));
+		if (keys.value().length > 0) return keys.value();
+		return EntityMetadata.of(this.entityClass).getKeyColumns().toArray(new String[0]);
+	}
+
+	/**
+	 * 获取方法的执行超时：@Query(timeout) 大于 0 时使用它，小于 0 时不限制，否则使用工厂配置的默认值
+	 * @param method 要检查的方法
+	 * @return 执行超时(纳秒)，为 0 时不限制
+	 */
+	private long getTimeout (Method method) {
+		long timeout = method.getAnnotation(Query.class).timeout();
+		if (timeout < 0) return 0;
+		return timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : this.defaultTimeout;
+	}
+
+	/**
+	 * 为返回 Page 的方法改写按主键分页的查询
+	 * @param method 要检查的方法
+	 * @param sql 方法的查询语句
+	 * @return 分页查询，方法不返回 Page 时为 null
+	 */
+	private KeysetQuery getKeyset (Method method, String sql) {
+		EntityMetadata.ResultType resultType = EntityMetadata.resultTypeOf(method);
+		if (!Page.class.equals(resultType.getRawClass())) return null;
+		String reason = KeysetQuery.check(sql);
+		int pageableIndex = -1;
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (!Pageable.class.equals(parameterTypes[i])) continue;
+			if (pageableIndex >= 0) reason = "只能有一个 Pageable 参数";
+			pageableIndex = i;
+		}
+		if (pageableIndex < 0) reason = "缺少 Pageable 参数";
+		List<String> keyColumns = EntityMetadata.of(this.entityClass).getKeyColumns();
+		if (keyColumns.isEmpty()) reason = String.format("表实体 [%s] 没有主键，请用 @Id 标记主键字段", this.entityClass.getSimpleName());
+		Query query = method.getAnnotation(Query.class);
+		if (method.isAnnotationPresent(Batch.class) || query.resolver() != DefaultResultResolver.class || !query.resolveMethod().isEmpty())
+			reason = "分页方法不能使用 @Batch 或自定义结果解析器";
+		if (reason != null)
+			throw new RuntimeException(String.format("方法 %s.%s() 不能分页: %s。",
+					this.repositoryClassName,
+					method.getName(),
+					reason));
+		Class<?> elementClass = resultType.getElementClass() == null ? this.entityClass : resultType.getElementClass();
+		return new KeysetQuery(sql, keyColumns, pageableIndex, this.connectionProvider.getDialect(), elementClass);
+	}
+
+	/**
+	 * 为带 @Coalesced 的方法创建并发调用的合并表，只允许一次返回完整结果的 SELECT 方法使用
+	 * @param method 要检查的方法
+	 * @return 合并表，方法不带 @Coalesced 时为 null
+	 */
+	private SingleFlight getFlight (Method method) {
+		if (!method.isAnnotationPresent(Coalesced.class)) return null;
+		if (method.isAnnotationPresent(Batch.class)
+				|| DefaultResultResolver.isCursorType(EntityMetadata.resultTypeOf(method).getRawClass())
+				|| !method.getAnnotation(Query.class).value().trim().regionMatches(true, 0, "SELECT", 0, 6))
+			throw new RuntimeException(String.format("方法 %s.%s() 不能使用 @Coalesced: 只有返回完整结果的 SELECT 方法可以合并调用。",
+					this.repositoryClassName,
+					method.getName()));
+		return new SingleFlight();
+	}
+
+	/**
+	 * 为带 @Cached 的方法创建方法缓存，只允许一次返回完整结果的 SELECT 方法使用
+	 * @param method 要检查的方法
+	 * @return 方法缓存，方法不带 @Cached 时为 null
+	 */
+	private MethodCache getCache (Method method) {
+		Cached cached = method.getAnnotation(Cached.class);
+		if (cached == null) return null;
+		if (method.isAnnotationPresent(Batch.class)
+				|| DefaultResultResolver.isCursorType(EntityMetadata.resultTypeOf(method).getRawClass())
+				|| !method.getAnnotation(Query.class).value().trim().regionMatches(true, 0, "SELECT", 0, 6))
+			throw new RuntimeException(String.format("方法 %s.%s() 不能使用 @Cached: 只有返回完整结果的 SELECT 方法可以缓存。",
+					this.repositoryClassName,
+					method.getName()));
+		return this.cacheRegion.register(method, cached.ttl(), cached.maxSize());
+	}
+
 	@Override
 	public Object invoke (Object proxy, Method method, Object[] args) throws Throwable {
 
-		MethodAnnotationValues value = this.methodMap.get(method);
+		QueryPipeline pipeline = this.methodMap.get(method);
 
-		if (value == null) {
-			logger.info(String.format("无法处理的方法 [%s.%s()]，找不到对应的配置信息",
-					this.repositoryClassName,
+		if (pipeline == null && method.getDeclaringClass() == Repository.class) {
+			if (method.equals(SAVE)) return save(args[0]);
+			if (method.equals(SAVE_ALL)) return saveAll((Iterable<?>) args[0]);
+		}
+		if (pipeline == null) {
+			if (method.getDeclaringClass() == Object.class) return invokeObjectMethod(proxy, method, args);
+			/*
+			  与生成的实现类一致：没有 @Query 注解的方法调用时抛出 UnsupportedOperationException
+			 */
+			throw new UnsupportedOperationException(String.format("方法 %s.%s() 没有 @Query 注解",
+					this.repositoryClass.getCanonicalName(),
 					method.getName()));
-			return null;
 		}
+		return call(pipeline, args);
+	}
 
-		Method processor = value.processor;
-		Method resolver = value.resolver;
+	/**
+	 * 代理上的 toString / equals / hashCode，与生成的实现类一样按实例比较
+	 */
+	private Object invokeObjectMethod (Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return this.repositoryClassName;
+		}
+	}
+
+	/**
+	 * 供生成的仓库实现类调用
+	 * @param index 方法在构造时传入的方法数组中的下标
+	 * @param args 方法参数
+	 * @return 方法结果
+	 * @throws Throwable
+	 */
+	public Object invoke (int index, Object[] args) throws Throwable {
+		QueryPipeline pipeline = this.pipelines[index];
+		if (pipeline == null)
+			throw new UnsupportedOperationException(String.format("无法处理仓库 [%s] 的第 %d 个方法，找不到对应的配置信息",
+					this.repositoryClassName,
+					index));
+		return call(pipeline, args);
+	}
+
+	/**
+	 * 按主键更新表实体，供动态代理和生成的实现类调用
+	 * @param entity 表实体
+	 * @return 更新的行数，表实体没有修改时为 0
+	 * @throws Throwable
+	 */
+	public int save (Object entity) throws Throwable {
+		return saveAll(Collections.singletonList(entity))[0];
+	}
+
+	/**
+	 * 按主键批量更新表实体：先为每个表实体生成只包含修改过的列的更新，再按语句分组，
+	 * 每组使用同一条语句批量执行，每满 batchSize 行 executeBatch 一次。
+	 *
+	 * 不在事务中且需要执行多行时，借出一个独占的连接并临时关闭自动提交，全部成功后一起提交，任何一行失败都会全部回滚。
+	 * 快照在提交成功后才更新，事务中保存的表实体等到事务提交时更新快照，回滚后再次保存仍会写入这些列
+	 * @param entities 表实体
+	 * @return 与 entities 顺序一致的更新行数
+	 * @throws Throwable
+	 */
+	public int[] saveAll (Iterable<?> entities) throws Throwable {
+		if (entities == null) throw new IllegalArgumentException("要保存的表实体不能为 null");
+		List<EntityWriter.Update> updates = new ArrayList<>();
+		LinkedHashMap<String, List<Integer>> groups = new LinkedHashMap<>();
+		for (Object entity : entities) {
+			if (entity == null) throw new IllegalArgumentException("要保存的表实体不能为 null");
+			EntityWriter.Update update = this.writer.update(entity);
+			if (update != null) groups.computeIfAbsent(update.sql, sql -> new ArrayList<>()).add(updates.size());
+			updates.add(update);
+		}
+		int[] counts = new int[updates.size()];
+		if (groups.isEmpty()) return counts;
+		timeoutOf(SAVE_ALL, this.defaultTimeout);
 
-		Statement statement;
+		Transaction transaction = this.factory.currentTransaction();
+		/*
+		  不在事务中且需要执行多行时要关闭自动提交，必须借出独占的连接
+		 */
+		boolean exclusive = transaction == null
+				&& (groups.size() > 1 || groups.values().iterator().next().size() > 1);
+		PooledConnection pooled = transaction != null ? transaction.getConnection() : borrow(false, exclusive);
+		try {
+			Connection connection = pooled.getConnection();
+			boolean autoCommit = exclusive && connection.getAutoCommit();
+			if (autoCommit) connection.setAutoCommit(false);
+			try {
+				for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+					executeUpdates(pooled, group.getKey(), group.getValue(), updates, counts);
+				}
+				if (autoCommit) connection.commit();
+			} catch (Throwable e) {
+				if (autoCommit) connection.rollback();
+				throw e;
+			} finally {
+				if (autoCommit) connection.setAutoCommit(true);
+			}
+		} finally {
+			if (transaction == null) release(false, exclusive, pooled);
+			this.cacheRegion.invalidate();
+			if (transaction != null) transaction.modified(this.cacheRegion);
+		}
+
+		Runnable saved = () -> {
+			for (EntityWriter.Update update : updates) {
+				if (update != null) this.writer.saved(update.entity);
+			}
+		};
+		if (transaction != null) transaction.afterCommit(saved);
+		else saved.run();
+		return counts;
+	}
+
+	/**
+	 * 执行同一条更新语句的一组表实体，只有一行时直接 executeUpdate
+	 */
+	private void executeUpdates (PooledConnection pooled, String sql, List<Integer> indexes,
+								 List<EntityWriter.Update> updates, int[] counts) throws Throwable {
+		long start = this.sqlLogger.isEnabled() ? System.nanoTime() : 0;
+		StatementCache cache = pooled.getStatementCache();
+		Statement cached = cache == null ? null : cache.take(sql);
+		if (cached != null && !(cached instanceof PreparedStatement)) {
+			cached.close();
+			cached = null;
+		}
+		PreparedStatement statement = cached != null ? (PreparedStatement) cached : pooled.getConnection().prepareStatement(sql);
+		Method method = indexes.size() == 1 ? SAVE : SAVE_ALL;
+		StatementWatchdog.Watch watch = null;
+		long timeout = 0;
+		try {
+			timeout = timeoutOf(method, this.defaultTimeout);
+			if (timeout > 0) watch = watch(pooled, statement, timeout);
+			if (indexes.size() == 1) {
+				int index = indexes.get(0);
+				DefaultParameterProcessor.process(statement, updates.get(index).parameters);
+				counts[index] = statement.executeUpdate();
+			} else {
+				int batchSize = this.factory.getConnectionConfiguration( ).getBatchSize( );
+				if (batchSize <= 0) batchSize = DEFAULT_BATCH_SIZE;
+				for (int from = 0; from < indexes.size(); from += batchSize) {
+					int to = Math.min(from + batchSize, indexes.size());
+					for (int i = from; i < to; i++) {
+						DefaultParameterProcessor.process(statement, updates.get(indexes.get(i)).parameters);
+						statement.addBatch();
+					}
+					int[] chunk = statement.executeBatch();
+					for (int i = 0; i < chunk.length; i++) {
+						counts[indexes.get(from + i)] = chunk[i];
+					}
+				}
+			}
+			if (timeout > 0) {
+				StatementWatchdog.Watch stopped = watch;
+				watch = null;
+				if (stopped != null && stopped.stop()) throw timedOut(method, timeout, null);
+				statement.setQueryTimeout(0);
+			}
+		} catch (Throwable e) {
+			recycle(cache, false, sql, statement, false);
+			if (watch != null && watch.stop()) throw timedOut(method, timeout, e);
+			throw e;
+		}
+		if (this.sqlLogger.isEnabled())
+			this.sqlLogger.log(method, statement, System.nanoTime() - start);
+		recycle(cache, false, sql, statement, true);
+	}
 
+	private Object call (QueryPipeline pipeline, Object[] args) throws Throwable {
+		if (args == null) args = NO_ARGS;
 		/*
-		  由于默认处理器的方法参数签名是: (Statement statement, Object ...args);
-		  而自定义方法处理器的方法参数签名是: (Statement statement, String/Integer/... arg);
+		  事务在调用线程上确定，异步方法同样在这个事务中执行
+		 */
+		Transaction transaction = this.factory.currentTransaction();
+		if (pipeline.cache != null && transaction == null) {
+			Object cached = pipeline.cache.get(args);
+			if (cached != MethodCache.MISS) return pipeline.async ? CompletableFuture.completedFuture(cached) : cached;
+		}
+
+		Object[] arguments = args;
+		if (pipeline.async) {
+			/*
+			  调用方的截止时间同样在调用线程上确定，在执行器上沿用
+			 */
+			Deadline deadline = Deadline.current();
+			return CompletableFuture.supplyAsync(() -> {
+				Deadline previous = Deadline.swap(deadline);
+				try {
+					return coalesce(pipeline, arguments, transaction);
+				} catch (Throwable e) {
+					throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+				} finally {
+					Deadline.swap(previous);
+				}
+			}, this.factory.getExecutor());
+		}
+		return coalesce(pipeline, args, transaction);
+	}
+
+	/**
+	 * 带 @Coalesced 的方法在事务外合并相同参数的并发调用，只有一个调用真正执行；
+	 * 事务中的调用可能读到未提交的数据，不与其他调用合并。
+	 *
+	 * 等待的调用受自己的执行超时和截止时间限制，超时时抛出自己的 SQLTimeoutException，正在执行的调用不受影响
+	 */
+	private Object coalesce (QueryPipeline pipeline, Object[] args, Transaction transaction) throws Throwable {
+		if (pipeline.flight == null || transaction != null) return execute(pipeline, args, transaction);
+		long timeout = timeoutOf(pipeline.method, pipeline.timeout);
+		try {
+			return pipeline.flight.execute(args, timeout, () -> execute(pipeline, args, transaction));
+		} catch (TimeoutException e) {
+			throw new SQLTimeoutException(String.format("方法 [%s.%s()] 等待合并的调用超时: [%d ms]",
+					this.repositoryClassName,
+					pipeline.method.getName(),
+					TimeUnit.NANOSECONDS.toMillis(timeout)), e);
+		}
+	}
 
-		  导致直接通过 method.invoke(null, statement, args) 无法适用两种情况，因此需要分开构造参数列表。
+	/**
+	 * 执行查询并维护缓存：带缓存的方法写入结果，更新方法无论成功与否都使缓存区域失效。
+	 * 事务中的查询可能读到未提交的数据，因此既不读取也不写入缓存；事务中的更新在提交时再使缓存区域失效一次
+	 */
+	private Object execute (QueryPipeline pipeline, Object[] args, Transaction transaction) throws Throwable {
+		if (pipeline.cache != null && transaction == null) {
+			long generation = pipeline.cache.generation();
+			Object result = query(pipeline, args, transaction);
+			pipeline.cache.put(args, result, generation);
+			return result;
+		}
+		try {
+			return query(pipeline, args, transaction);
+		} finally {
+			if (pipeline.modifying) {
+				this.cacheRegion.invalidate();
+				if (transaction != null) transaction.modified(this.cacheRegion);
+			}
+		}
+	}
+
+	/**
+	 * 配置了度量记录器时为这次调用计时，无论成功与否都交给记录器
+	 */
+	private Object query (QueryPipeline pipeline, Object[] args, Transaction transaction) throws Throwable {
+		if (pipeline.recorder == null) return query(pipeline, args, transaction, null);
+		InvocationTiming timing = InvocationTiming.start();
+		try {
+			Object result = query(pipeline, args, transaction, timing);
+			timing.rows(rowsOf(pipeline, result));
+			return result;
+		} catch (Throwable e) {
+			timing.failed();
+			throw e;
+		} finally {
+			timing.finish();
+			pipeline.recorder.record(timing);
+		}
+	}
+
+	private Object query (QueryPipeline pipeline, Object[] args, Transaction transaction, InvocationTiming timing) throws Throwable {
+		/*
+		  每次调用都借出一个连接(事务中使用事务独占的连接)，从这个连接的语句缓存中取出语句，没有时才调用语句提供器创建；
+		  正常结束后把语句放回缓存，出错时关闭语句，以免把状态不明的语句留给下一次调用。
+		  结果以游标形式返回时，语句和连接由游标持有，等到游标关闭时才归还
 		 */
-		logger.info(String.format("调用处理器 [%s.%s()] 处理方法 [%s.%s()]",
-				processor.getDeclaringClass().getSimpleName(),
-				processor.getName(),
+		Pageable pageable = pipeline.keyset == null ? null : pipeline.keyset.pageableOf(args);
+		String sql = pageable == null ? pipeline.sql : pipeline.keyset.sql(pageable);
+		Object[] bound = pageable == null ? args : pipeline.keyset.bind(args, pageable);
+		timeoutOf(pipeline.method, pipeline.timeout);
+		boolean suspend = transaction == null && pipeline.streaming && this.streamingInTransaction;
+		/*
+		  需要临时关闭自动提交时，单连接模式下的共享连接同时被其他线程使用，不能改变它的状态，改为借出独占的连接
+		 */
+		boolean exclusive = pipeline.batchSize > 0 || (suspend && !this.usesPool);
+		PooledConnection pooled = transaction != null ? transaction.getConnection() : borrow(pipeline.readOnly, exclusive);
+		if (timing != null) timing.borrowed();
+		boolean autoCommit = false;
+		boolean deferred = false;
+		boolean failed = false;
+		try {
+			if (suspend && pooled.getConnection().getAutoCommit()) {
+				pooled.getConnection().setAutoCommit(false);
+				autoCommit = true;
+			}
+			StatementCache cache = pooled.getStatementCache();
+			Statement cached = cache == null ? null : cache.take(sql);
+			Statement statement = cached != null ? cached : pipeline.provider.provide(pooled.getConnection(), sql);
+			try {
+				if (pipeline.streaming && this.fetchSize != 0) statement.setFetchSize(this.fetchSize);
+				if (timing != null) timing.prepared();
+				long timeout = timeoutOf(pipeline.method, pipeline.timeout);
+				StatementWatchdog.Watch watch = timeout > 0 ? watch(pooled, statement, timeout) : null;
+				Object result;
+				try {
+					result = pipeline.batchSize > 0
+							? executeBatch(pipeline, (Iterable<?>) args[0], statement, timing)
+							: invoke(pipeline, bound, pageable, statement, timing);
+				} catch (Throwable e) {
+					if (watch != null && watch.stop()) throw timedOut(pipeline.method, timeout, e);
+					throw e;
+				}
+				if (timeout > 0) {
+					/*
+					  执行刚结束时超时也可能恰好发生，此时语句已被取消，结果(尤其是游标)不再可靠，
+					  下面的 catch 会关闭语句以及它的结果集
+					 */
+					if (watch != null && watch.stop()) throw timedOut(pipeline.method, timeout, null);
+					statement.setQueryTimeout(0);
+				}
+				boolean restore = autoCommit;
+				if (result instanceof ResultCursor) {
+					ResultCursor<?> cursor = ((ResultCursor<?>) result).onClose(() -> {
+						recycle(cache, pipeline.streaming, sql, statement, true);
+						release(pipeline, transaction, pooled, exclusive, restore, true);
+					});
+					if (Stream.class.equals(pipeline.resultClass)) result = cursor.stream();
+					deferred = true;
+				} else if (result instanceof BaseStream) {
+					result = ((BaseStream<?, ?>) result).onClose(() -> {
+						recycle(cache, pipeline.streaming, sql, statement, true);
+						release(pipeline, transaction, pooled, exclusive, restore, true);
+					});
+					deferred = true;
+				} else {
+					recycle(cache, pipeline.streaming, sql, statement, true);
+				}
+				return result;
+			} catch (Throwable e) {
+				recycle(cache, pipeline.streaming, sql, statement, false);
+				throw e;
+			}
+		} catch (Throwable e) {
+			if (transaction == null && pipeline.readOnly) this.connectionProvider.failed(pooled, e);
+			failed = true;
+			throw e;
+		} finally {
+			if (!deferred) release(pipeline, transaction, pooled, exclusive, autoCommit, !failed);
+		}
+	}
+
+	/**
+	 * 计算这次执行的超时：方法的执行超时与调用方截止时间剩余的时间中较短的一个
+	 * @param method 仓库方法
+	 * @param timeout 方法的执行超时(纳秒)，为 0 时不限制
+	 * @return 这次执行的超时(纳秒)，为 0 时不限制
+	 * @throws SQLTimeoutException 已经过了调用方的截止时间
+	 */
+	private long timeoutOf (Method method, long timeout) throws SQLTimeoutException {
+		Deadline deadline = Deadline.current();
+		if (deadline == null) return timeout;
+		long remaining = deadline.remaining(TimeUnit.NANOSECONDS);
+		if (remaining <= 0)
+			throw new SQLTimeoutException(String.format("方法 [%s.%s()] 已超过调用方的截止时间",
+					this.repositoryClassName,
+					method.getName()));
+		return timeout > 0 && timeout < remaining ? timeout : remaining;
+	}
+
+	/**
+	 * 为语句设置驱动的执行超时(向上取整到秒)，并由看门狗在超时的那一刻取消语句。
+	 *
+	 * 单连接模式下的共享连接同时被其他线程使用，有的驱动(如 MySQL)取消的是连接上正在执行的语句，
+	 * 可能误伤其他线程的语句，因此只设置驱动的执行超时，不使用看门狗
+	 * @return 看守任务，没有使用看门狗时为 null
+	 */
+	private static StatementWatchdog.Watch watch (PooledConnection pooled, Statement statement, long timeout) throws SQLException {
+		statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (timeout + 999999999L) / 1000000000L));
+		if (pooled.isShared()) return null;
+		return StatementWatchdog.watch(statement, timeout);
+	}
+
+	private SQLTimeoutException timedOut (Method method, long timeout, Throwable cause) {
+		return new SQLTimeoutException(String.format("方法 [%s.%s()] 执行超时，语句已取消: [%d ms]",
 				this.repositoryClassName,
-				method.getName()));
-		if (processor.getDeclaringClass().equals(DefaultParameterProcessor.class)) {
-			statement = (Statement) processor.invoke(null, new Object[] {value.statement, args});
+				method.getName(),
+				TimeUnit.NANOSECONDS.toMillis(timeout)), cause);
+	}
+
+	/**
+	 * 在仓库的并发限制和工厂的连接预算内借出一个连接
+	 * @param readOnly 是否为只读查询借出
+	 */
+	private PooledConnection borrow (boolean readOnly) throws SQLException {
+		return borrow(readOnly, false);
+	}
+
+	/**
+	 * @param exclusive 是否借出独占的连接。需要改变连接状态(例如关闭自动提交)时必须独占，
+	 *                  单连接模式下的共享连接同时被其他线程使用
+	 */
+	private PooledConnection borrow (boolean readOnly, boolean exclusive) throws SQLException {
+		if (this.repositoryBudget != null) this.repositoryBudget.acquire();
+		try {
+			if (this.factoryBudget != null) this.factoryBudget.acquire();
+			try {
+				if (exclusive) return this.connectionProvider.borrowExclusive();
+				return readOnly ? this.connectionProvider.borrowReadOnly() : this.connectionProvider.borrow();
+			} catch (SQLException | RuntimeException | Error e) {
+				if (this.factoryBudget != null) this.factoryBudget.release();
+				throw e;
+			}
+		} catch (SQLException | RuntimeException | Error e) {
+			if (this.repositoryBudget != null) this.repositoryBudget.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 归还借出的连接以及占用的预算
+	 */
+	private void release (boolean readOnly, PooledConnection pooled) {
+		release(readOnly, false, pooled);
+	}
+
+	private void release (boolean readOnly, boolean exclusive, PooledConnection pooled) {
+		try {
+			if (exclusive) this.connectionProvider.releaseExclusive(pooled);
+			else if (readOnly) this.connectionProvider.releaseReadOnly(pooled);
+			else this.connectionProvider.release(pooled);
+		} finally {
+			if (this.factoryBudget != null) this.factoryBudget.release();
+			if (this.repositoryBudget != null) this.repositoryBudget.release();
+		}
+	}
+
+	/**
+	 * 归还借出的连接，事务独占的连接由事务结束时归还
+	 * @param autoCommit 借出后是否为游标读取关闭了自动提交，归还前恢复
+	 * @param completed 调用是否正常结束，正常结束时提交，否则回滚
+	 */
+	private void release (QueryPipeline pipeline, Transaction transaction, PooledConnection pooled,
+						  boolean exclusive, boolean autoCommit, boolean completed) {
+		if (transaction != null) return;
+		if (autoCommit) {
+			Connection connection = pooled.getConnection();
+			try {
+				if (!completed) connection.rollback();
+				connection.setAutoCommit(true);
+			} catch (SQLException e) {
+				/*
+				  无法恢复自动提交的连接不能再借给别人，关闭后由连接池丢弃
+				 */
+				logger.warning(String.format("恢复自动提交失败，关闭连接: %s", e.getMessage()));
+				try {
+					connection.close();
+				} catch (SQLException ignored) {
+				}
+			}
+		}
+		release(pipeline.readOnly, exclusive, pooled);
+	}
+
+	/**
+	 * 预热语句缓存：借出一个连接，为每个 @Query 方法预编译语句并放入该连接的语句缓存，
+	 * 已经缓存的 sql 不会重复编译。连接池模式下只预热借出的那一个连接；
+	 * 配置了只读副本时，只读方法的语句在借出的那一个副本连接上预热。
+	 * @return 新编译的语句数量
+	 * @throws SQLException 预编译失败，例如 sql 有误或表不存在
+	 */
+	public int prepareStatements () throws SQLException {
+		if (!this.connectionProvider.hasReplicas()) {
+			PooledConnection pooled = borrow(false);
+			try {
+				return prepareStatements(pooled, null);
+			} finally {
+				release(false, pooled);
+			}
+		}
+		int prepared;
+		PooledConnection pooled = borrow(false);
+		try {
+			prepared = prepareStatements(pooled, false);
+		} finally {
+			release(false, pooled);
+		}
+		pooled = borrow(true);
+		try {
+			return prepared + prepareStatements(pooled, true);
+		} finally {
+			release(true, pooled);
+		}
+	}
+
+	/**
+	 * @param readOnly 只预热只读(true)或非只读(false)方法的语句，为 null 时预热全部
+	 */
+	private int prepareStatements (PooledConnection pooled, Boolean readOnly) throws SQLException {
+		StatementCache cache = pooled.getStatementCache();
+		if (cache == null) return 0;
+		int prepared = 0;
+		for (QueryPipeline pipeline : this.methodMap.values()) {
+			if (readOnly != null && pipeline.readOnly != readOnly) continue;
+			// 分页方法的语句随每页行数变化，调用前无法确定
+			if (pipeline.keyset != null) continue;
+			Statement statement = cache.take(pipeline.sql);
+			if (statement == null) {
+				try {
+					statement = pipeline.provider.provide(pooled.getConnection(), pipeline.sql);
+				} catch (SQLException | RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new RuntimeException(String.format("预编译方法 [%s.%s()] 的语句失败",
+							this.repositoryClassName,
+							pipeline.method.getName()), e);
+				}
+				prepared++;
+			}
+			cache.put(pipeline.sql, statement);
+		}
+		return prepared;
+	}
+
+	/**
+	 * 估算结果的行数，游标等无法提前知道行数的结果为 -1；返回自增主键的方法返回的数值是主键而不是行数
+	 */
+	private static long rowsOf (QueryPipeline pipeline, Object result) {
+		if (pipeline.generatedKeys != null && result instanceof Number) return 1;
+		if (result instanceof Collection) return ((Collection<?>) result).size();
+		if (result instanceof Page) return ((Page<?>) result).getContent().size();
+		if (result instanceof Number) return ((Number) result).longValue();
+		if (result instanceof int[]) return ((int[]) result).length;
+		if (result instanceof long[]) return ((long[]) result).length;
+		if (result instanceof double[]) return ((double[]) result).length;
+		if (result instanceof Optional) return ((Optional<?>) result).isPresent() ? 1 : 0;
+		if (result == null || result instanceof Iterator || result instanceof BaseStream) return -1;
+		return 1;
+	}
+
+	/**
+	 * 调用结束后处理语句：能复用时放回连接的语句缓存，否则关闭
+	 * @param streaming 语句是否以游标形式返回过结果，需要恢复 fetch size
+	 * @param sql 语句对应的 sql，分页方法每页行数不同时 sql 也不同
+	 */
+	private void recycle (StatementCache cache, boolean streaming, String sql, Statement statement, boolean reusable) {
+		try {
+			if (streaming && this.fetchSize != 0) statement.setFetchSize(0);
+			if (reusable && cache != null) {
+				cache.put(sql, statement);
+				return;
+			}
+		} catch (SQLException ignored) {
+		}
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.warning(String.format("关闭语句失败: %s", e.getMessage()));
+		}
+	}
+
+	/**
+	 * @param pageable 分页方法的分页参数，其他方法为 null
+	 */
+	private Object invoke (QueryPipeline pipeline, Object[] args, Pageable pageable, Statement statement, InvocationTiming timing) throws Throwable {
+		long start = this.sqlLogger.isEnabled() ? System.nanoTime() : 0;
+
+		if (logger.isLoggable(Level.FINE))
+			logger.fine(String.format("调用处理器 [%s] 处理方法 [%s.%s()]",
+					pipeline.processorName,
+					this.repositoryClassName,
+					pipeline.method.getName()));
+		statement = pipeline.processor.process(statement, args);
+		if (timing != null) timing.bound();
+
+		if (logger.isLoggable(Level.FINE))
+			logger.fine(String.format("调用解析器 [%s] 处理方法 [%s.%s()]",
+					pipeline.resolverName,
+					this.repositoryClassName,
+					pipeline.method.getName()));
+		Object result;
+		if (pipeline.defaultResolver) {
+			boolean hasResultSet = DefaultResultResolver.execute(statement);
+			if (timing != null) timing.executed();
+			result = pageable != null
+					? DefaultResultResolver.page(statement, pipeline.keyset.getElementClass(), pageable.getSize(), pipeline.keyset.getKeyColumns())
+					: pipeline.generatedKeys != null
+					? DefaultResultResolver.generatedKeys(statement, this.entityClass, pipeline.method)
+					: DefaultResultResolver.map(statement, hasResultSet, this.entityClass, pipeline.method);
+			if (timing != null) timing.mapped();
 		} else {
-			Object[] callArgs = new Object[processor.getParameterCount()];
+			result = pipeline.resolver.resolve(statement, this.entityClass, pipeline.method);
+			if (timing != null) timing.executed();
+		}
 
-			for (int i = 0; i < callArgs.length; i ++)
-				callArgs[i] = i == 0 ? value.statement : args[i - 1];
+		if (this.sqlLogger.isEnabled())
+			this.sqlLogger.log(pipeline.method, statement, System.nanoTime() - start);
+		return result;
+	}
 
-			statement = (Statement) processor.invoke(null, callArgs);
+	/**
+	 * 批量执行：每一行交给参数处理器绑定后 addBatch，每满 batchSize 行 executeBatch 一次。
+	 *
+	 * 不在事务中时批量执行使用独占的连接(见 {@link ConnectionProvider#borrowExclusive()})，
+	 * 执行期间临时关闭自动提交，改为每个分块提交一次，避免每一行都单独提交。
+	 * 某个分块失败时只回滚这一个分块，此前的分块已经提交，不会被撤销；
+	 * 调用方只会收到异常，需要整批要么全部成功要么全部失败时，请在事务中调用。
+	 * 在事务中时不改变自动提交，提交和回滚由事务决定。
+	 */
+	private int[] executeBatch (QueryPipeline pipeline, Iterable<?> rows, Statement statement, InvocationTiming timing) throws Throwable {
+		long start = this.sqlLogger.isEnabled() ? System.nanoTime() : 0;
+		Connection connection = statement.getConnection();
+		boolean autoCommit = connection.getAutoCommit();
+		if (autoCommit) connection.setAutoCommit(false);
+		int[] counts = new int[pipeline.batchSize];
+		int total = 0;
+		int pending = 0;
+		try {
+			for (Object row : rows) {
+				statement = pipeline.processor.process(statement, row instanceof Object[] ? (Object[]) row : new Object[] { row });
+				if (!(statement instanceof PreparedStatement))
+					throw new RuntimeException("批量执行只支持 `java/sql/PreparedStatement` 类型");
+				((PreparedStatement) statement).addBatch();
+				if (++pending < pipeline.batchSize) continue;
+				int[] chunk = statement.executeBatch();
+				counts = append(counts, total, chunk);
+				total += chunk.length;
+				pending = 0;
+				if (autoCommit) connection.commit();
+			}
+			if (pending > 0) {
+				int[] chunk = statement.executeBatch();
+				counts = append(counts, total, chunk);
+				total += chunk.length;
+				if (autoCommit) connection.commit();
+			}
+		} catch (Throwable e) {
+			if (autoCommit) connection.rollback();
+			throw e;
+		} finally {
+			if (autoCommit) connection.setAutoCommit(true);
 		}
+		if (timing != null) timing.executed();
+		if (this.sqlLogger.isEnabled())
+			this.sqlLogger.log(pipeline.method, statement, System.nanoTime() - start);
+		return counts.length == total ? counts : Arrays.copyOf(counts, total);
+	}
 
-		logger.info(String.format("调用解析器 [%s.%s()] 处理方法 [%s.%s()]",
-				resolver.getDeclaringClass().getSimpleName(),
-				resolver.getName(),
-				this.repositoryClassName,
-				method.getName()));
-		return resolver.invoke(null, statement, this.entityClass, method);
+	private static int[] append (int[] counts, int offset, int[] chunk) {
+		if (offset + chunk.length > counts.length)
+			counts = Arrays.copyOf(counts, Math.max(counts.length * 2, offset + chunk.length));
+		System.arraycopy(chunk, 0, counts, offset, chunk.length);
+		return counts;
 	}
 }
@@ -0,0 +1,105 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.utils.log.LoggerProvider;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 语句看门狗
+ *
+ * setQueryTimeout 只能精确到秒，并且依赖驱动(以及数据库)的实现；看门狗在超时的那一刻从自己的线程调用 Statement.cancel()，
+ * 使阻塞在 execute 中的调用线程抛出异常，随后由调用处理器关闭语句、归还连接。
+ * 所有仓库共用一个守护线程，调用正常结束时取消的任务会立即从队列中移除。
+ *
+ * 取消与停止看守互斥：{@link Watch#stop()} 返回之后不会再有 cancel 落到语句上，
+ * 语句随后放回语句缓存、被其他调用取出(单连接模式下甚至是其他线程)时不会被这次超时误伤；
+ * 返回 true 说明超时已经发生，语句的状态不明，调用处理器不再复用它。
+ */
+final class StatementWatchdog {
+
+	private static final Logger logger = LoggerProvider.provide(StatementWatchdog.class);
+
+	private static final ScheduledThreadPoolExecutor timer;
+
+	static {
+		timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "juice-statement-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	private StatementWatchdog() {
+	}
+
+	/**
+	 * 在超时后取消语句
+	 * @param statement 要执行的语句
+	 * @param timeout 超时(纳秒)
+	 * @return 看守任务，执行结束后需要调用 {@link Watch#stop()}
+	 */
+	static Watch watch(Statement statement, long timeout) {
+		Watch watch = new Watch(statement);
+		watch.future = timer.schedule(watch, timeout, TimeUnit.NANOSECONDS);
+		return watch;
+	}
+
+	static final class Watch implements Runnable {
+
+		private final Statement statement;
+
+		private volatile ScheduledFuture<?> future;
+
+		/**
+		 * 保证 cancel 和 stop 不会交错，cancel 可能有网络往返，不使用 synchronized
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private boolean fired;
+
+		private boolean stopped;
+
+		private Watch(Statement statement) {
+			this.statement = statement;
+		}
+
+		@Override
+		public void run() {
+			this.lock.lock();
+			try {
+				if (this.stopped) return;
+				this.fired = true;
+				this.statement.cancel();
+			} catch (SQLException | RuntimeException e) {
+				logger.warning(String.format("取消超时的语句失败: %s", e.getMessage()));
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * 停止看守。正在取消语句时等待取消完成，返回之后不会再取消语句
+		 * @return 语句是否已经因为超时被取消
+		 */
+		boolean stop() {
+			this.lock.lock();
+			try {
+				this.stopped = true;
+				ScheduledFuture<?> future = this.future;
+				if (future != null) future.cancel(false);
+				return this.fired;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.krun.juice.repository.resolver;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 列读取器
+ *
+ * 按 Java 类型选择带类型的 ResultSet 读取方法，列值为 NULL 时包装类型读取为 null，基本类型读取为默认值。
+ * 同时负责把单列结果读取为标量值，例如 SELECT count(*) 或 SELECT id。
+ */
+final class ColumnReaders {
+
+	private static final ConcurrentHashMap<Class<?>, RowReader<?>> scalars = new ConcurrentHashMap<>();
+
+	private ColumnReaders() {
+	}
+
+	/**
+	 * 判断类型是否按单列的标量值读取：基本类型、byte[] 以及 java.* 中的类(String、Long、BigDecimal、LocalDate 等)，
+	 * 表实体和投影都不会是 java.* 中的类
+	 * @param type 结果类型
+	 * @return 是否为标量类型
+	 */
+	static boolean isScalar(Class<?> type) {
+		return type.isPrimitive()
+				|| type == byte[].class
+				|| (!type.isInterface() && !type.isArray() && type.getName().startsWith("java."));
+	}
+
+	/**
+	 * 读取结果集第一列的行读取器
+	 * @param type 标量类型
+	 * @return 行读取器
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> RowReader<T> scalar(Class<T> type) {
+		return (RowReader<T>) scalars.computeIfAbsent(type, key -> {
+			ColumnReader reader = of(key);
+			return resultSet -> reader.read(resultSet, 1);
+		});
+	}
+
+	/**
+	 * @param type 类型
+	 * @return 基本类型的默认值，其他类型为 null
+	 */
+	static Object defaultValue(Class<?> type) {
+		if (!type.isPrimitive()) return null;
+		if (type == boolean.class) return false;
+		if (type == char.class) return '\0';
+		if (type == byte.class) return (byte) 0;
+		if (type == short.class) return (short) 0;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == float.class) return 0f;
+		return 0d;
+	}
+
+	static ColumnReader of(Class<?> type) {
+		if (type == String.class) return ResultSet::getString;
+		if (type == int.class) return ResultSet::getInt;
+		if (type == long.class) return ResultSet::getLong;
+		if (type == double.class) return ResultSet::getDouble;
+		if (type == boolean.class) return ResultSet::getBoolean;
+		if (type == float.class) return ResultSet::getFloat;
+		if (type == short.class) return ResultSet::getShort;
+		if (type == byte.class) return ResultSet::getByte;
+		if (type == Integer.class) return (resultSet, index) -> {
+			int value = resultSet.getInt(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Long.class) return (resultSet, index) -> {
+			long value = resultSet.getLong(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Double.class) return (resultSet, index) -> {
+			double value = resultSet.getDouble(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Boolean.class) return (resultSet, index) -> {
+			boolean value = resultSet.getBoolean(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Float.class) return (resultSet, index) -> {
+			float value = resultSet.getFloat(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Short.class) return (resultSet, index) -> {
+			short value = resultSet.getShort(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == Byte.class) return (resultSet, index) -> {
+			byte value = resultSet.getByte(index);
+			return resultSet.wasNull() ? null : value;
+		};
+		if (type == BigDecimal.class) return ResultSet::getBigDecimal;
+		if (type == byte[].class) return ResultSet::getBytes;
+		if (type == java.sql.Timestamp.class) return ResultSet::getTimestamp;
+		if (type == java.sql.Date.class) return ResultSet::getDate;
+		if (type == java.sql.Time.class) return ResultSet::getTime;
+		if (type == java.util.Date.class) return ResultSet::getTimestamp;
+		if (type == Object.class) return ResultSet::getObject;
+		return (resultSet, index) -> resultSet.getObject(index, type);
+	}
+
+	/**
+	 * 读取一列的值
+	 */
+	interface ColumnReader {
+		Object read(ResultSet resultSet, int index) throws SQLException;
+	}
+}
@@ -1,120 +1,270 @@
 package com.krun.juice.repository.resolver;
 
-import com.krun.juice.repository.annotation.Column;
-import com.krun.juice.util.ClassUtils;
-import com.krun.juice.utils.log.LoggerProvider;
+import com.krun.juice.repository.Cursor;
+import com.krun.juice.repository.EntityMetadata;
+import com.krun.juice.repository.Page;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.sql.*;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Created by krun on 2017/9/24.
  */
 public class DefaultResultResolver implements RepositoryResultResolver {
 
-	private static Logger logger = LoggerProvider.provide(DefaultResultResolver.class);
-
-	@SuppressWarnings("unchecked")
 	public static Object resolve(Statement statement, Class<?> entityClass, Method method)
 			throws InstantiationException, IllegalAccessException, SQLException {
-		Class<?> returnType = method.getReturnType();
-		if (statement instanceof com.mysql.jdbc.PreparedStatement) {
-			logger.info(String.format("执行方法 [%s.%s()] 所配置的 sql:\n%s",
-					method.getDeclaringClass().getSimpleName(),
-					method.getName(),
-					((com.mysql.jdbc.PreparedStatement) statement).asSql()));
-		} else {
-			logger.info("Juice 默认结果解析器只能输出 `com/mysql/jdbc/PreparedStatement` 类型的执行SQL语句。");
-		}
+		return map(statement, execute(statement), entityClass, method);
+	}
+
+	/**
+	 * 执行语句，与 {@link #map(Statement, boolean, Class, Method)} 一起等同于 resolve，
+	 * 分开调用是为了能分别计量执行和映射的耗时
+	 * @param statement 绑定好参数的语句
+	 * @return 是否产生了结果集
+	 * @throws SQLException
+	 */
+	public static boolean execute(Statement statement) throws SQLException {
 		if (!(statement instanceof PreparedStatement))
 			throw new RuntimeException("Juice 默认结果解析器只支持 `java/sql/PreparedStatement` 类型");
-		if (!((PreparedStatement) statement).execute()) {
-			return statement.getUpdateCount();
+		return ((PreparedStatement) statement).execute();
+	}
+
+	/**
+	 * 把执行结果映射为方法的返回值
+	 *
+	 * 结果元素可以是表实体(或任何普通类)、标量(int、long、String 等，读取第一列)、
+	 * 投影接口或 record(只读取对应的列)；返回值可以是单个元素、Optional、List、游标，
+	 * 或者 long[] / int[] / double[] 这样的基本类型数组(读取第一列，不装箱)。
+	 * @param statement 执行过的语句
+	 * @param hasResultSet execute 的返回值
+	 * @param entityClass 表实体类型
+	 * @param method 仓库方法
+	 * @return 方法的返回值
+	 * @throws SQLException
+	 */
+	public static Object map(Statement statement, boolean hasResultSet, Class<?> entityClass, Method method) throws SQLException {
+		EntityMetadata.ResultType resultType = EntityMetadata.resultTypeOf(method);
+		Class<?> returnType = resultType.getRawClass();
+		if (!hasResultSet) {
+			int count = statement.getUpdateCount();
+			if (returnType == long.class || returnType == Long.class) return (long) count;
+			return count;
+		}
+
+		return map(statement.getResultSet(), resultType, entityClass, method);
+	}
+
+	/**
+	 * 把执行 INSERT 后生成的主键映射为方法的返回值，映射方式与查询结果相同：
+	 * 例如返回 long 时读取第一个生成的主键，返回 List&lt;Long&gt; 或 long[] 时读取所有生成的主键，
+	 * 返回表实体时把主键列填入一个新的实例
+	 * @param statement 以 {@link com.krun.juice.connection.dialect.Dialect#prepareReturningKeys} 创建并执行过的语句
+	 * @param entityClass 表实体类型
+	 * @param method 仓库方法
+	 * @return 方法的返回值
+	 * @throws SQLException
+	 */
+	public static Object generatedKeys(Statement statement, Class<?> entityClass, Method method) throws SQLException {
+		return map(statement.getGeneratedKeys(), EntityMetadata.resultTypeOf(method), entityClass, method);
+	}
+
+	private static Object map(ResultSet results, EntityMetadata.ResultType resultType, Class<?> entityClass, Method method) throws SQLException {
+		Class<?> returnType = resultType.getRawClass();
+		if (returnType == long[].class) return longs(results);
+		if (returnType == int[].class) return ints(results);
+		if (returnType == double[].class) return doubles(results);
+
+		Class<?> elementType = resultType.getElementClass();
+		if (List.class.isAssignableFrom(returnType) || isCursorType(returnType) || Optional.class.equals(returnType)) {
+			if (elementType == null) elementType = entityClass;
+		} else {
+			elementType = returnType;
 		}
+		if (elementType.isArray() && elementType != byte[].class || Collection.class.isAssignableFrom(elementType) || Map.class.isAssignableFrom(elementType))
+			throw new RuntimeException(String.format(
+					"为方法 [%s %s.%s()] 映射结果时，发生类型不匹配: Juice 暂不支持映射类型 [%s]",
+					returnType.getSimpleName(),
+					method.getDeclaringClass().getSimpleName(),
+					method.getName(),
+					resultType.getType().getTypeName()
+			));
 
 		if (List.class.isAssignableFrom(returnType)) {
-			Class<?> actualType;
-			try {
-				actualType = ClassUtils.parseClassFromSignature(ClassUtils.getField(method, "signature", String.class));
-			} catch (NoSuchFieldException | ClassNotFoundException e) {
-				throw new RuntimeException(e);
-			}
-			if (actualType.equals(entityClass)) {
-				return list((PreparedStatement) statement, entityClass);
-			}
-		} else if (entityClass.equals(returnType)) {
-			return single((PreparedStatement) statement, entityClass);
+			return list(results, elementType);
+		} else if (isCursorType(returnType)) {
+			/*
+			  Stream 也以游标返回，由调用方注册关闭动作后再转换，
+			  这样无论是遍历结束自动关闭还是关闭 Stream，都会经过游标的关闭动作
+			 */
+			return cursor(results, elementType);
+		} else if (Optional.class.equals(returnType)) {
+			return Optional.ofNullable(first(results, elementType));
 		}
-		throw new RuntimeException(String.format(
-				"为方法 [%s %s.%s()] 映射结果时，发生类型不匹配: Juice 暂不支持映射表实体以外的类型 [%s]",
-				method.getReturnType().getSimpleName(),
-				method.getDeclaringClass().getSimpleName(),
-				method.getName(),
-				ClassUtils.getInterfaceActualType(returnType)[0]
-		));
-	}
-
-	private static <E> List<E> list (PreparedStatement statement, Class<E> entityClass) throws SQLException {
-		List<E> list = new LinkedList<>();
-		statement.execute();
-		ResultSetMetaData metaData = statement.getMetaData();
-		ResultSet resultSet = statement.getResultSet();
-		while (resultSet.next()) {
-			list.add(parseFromResultSet(metaData, resultSet, entityClass));
+		return single(results, elementType);
+	}
+
+	/**
+	 * 判断返回值类型是否需要以游标的形式逐行读取
+	 * @param returnType 仓库方法的返回值类型
+	 * @return 是否为 Stream、Iterator 或 Cursor
+	 */
+	public static boolean isCursorType(Class<?> returnType) {
+		return Stream.class.equals(returnType)
+				|| Iterator.class.equals(returnType)
+				|| Cursor.class.equals(returnType);
+	}
+
+	/**
+	 * 选择结果元素的行读取器
+	 * @param type 结果元素类型
+	 * @param metaData 结果集结构
+	 * @return 行读取器
+	 * @throws SQLException
+	 */
+	private static <E> RowReader<E> readerOf(Class<E> type, ResultSetMetaData metaData) throws SQLException {
+		if (ColumnReaders.isScalar(type)) return ColumnReaders.scalar(type);
+		if (ProjectionMapper.isProjection(type)) return ProjectionMapper.of(type, metaData);
+		return RowMapper.of(type, metaData);
+	}
+
+	private static <E> List<E> list (ResultSet results, Class<E> elementType) throws SQLException {
+		List<E> list = new ArrayList<>();
+		try (ResultSet resultSet = results) {
+			RowReader<E> reader = readerOf(elementType, resultSet.getMetaData());
+			while (resultSet.next()) {
+				list.add(reader.read(resultSet));
+			}
 		}
-		resultSet.close();
 		return list;
 	}
 
-	private static <E> E single(PreparedStatement statement, Class<E> entityClass) throws IllegalAccessException, InstantiationException, SQLException {
-		E entity = entityClass.newInstance();
-		statement.execute();
-		ResultSetMetaData metaData = statement.getMetaData();
-		ResultSet resultSet = statement.getResultSet();
+	/**
+	 * 结果集在游标关闭前保持打开
+	 */
+	private static <E> ResultCursor<E> cursor(ResultSet resultSet, Class<E> elementType) throws SQLException {
+		try {
+			return new ResultCursor<>(resultSet, readerOf(elementType, resultSet.getMetaData()));
+		} catch (SQLException | RuntimeException e) {
+			resultSet.close();
+			throw e;
+		}
+	}
 
-		if (resultSet.next()) {
-			entity = parseFromResultSet(metaData, resultSet, entityClass);
+	/**
+	 * 读取第一行，没有结果时返回 null
+	 */
+	private static <E> E first(ResultSet results, Class<E> elementType) throws SQLException {
+		try (ResultSet resultSet = results) {
+			if (!resultSet.next()) return null;
+			return readerOf(elementType, resultSet.getMetaData()).read(resultSet);
 		}
+	}
 
-		resultSet.close();
-		return entity;
+	/**
+	 * 读取第一行。没有结果时，表实体返回一个未填充的实例(与之前的行为一致)，基本类型返回默认值，其他类型返回 null
+	 */
+	private static Object single(ResultSet results, Class<?> elementType) throws SQLException {
+		try (ResultSet resultSet = results) {
+			RowReader<?> reader = readerOf(elementType, resultSet.getMetaData());
+			if (resultSet.next()) return reader.read(resultSet);
+			if (reader instanceof RowMapper) return ((RowMapper<?>) reader).create();
+			return ColumnReaders.defaultValue(elementType);
+		}
 	}
 
-	private static <E> E parseFromResultSet(ResultSetMetaData metaData, ResultSet resultSet, Class<E> entityClass) {
-		try {
-			E entity = entityClass.newInstance();
+	/**
+	 * 读取按主键分页的一页：最多 size 行，多出一行说明还有下一页，此时以第 size 行的主键值生成分页标记
+	 * @param statement 执行过的语句
+	 * @param elementType 结果元素类型
+	 * @param size 每页行数
+	 * @param keyColumns 主键列名，结果集中必须包含这些列
+	 * @return 一页结果
+	 * @throws SQLException
+	 */
+	public static <E> Page<E> page(Statement statement, Class<E> elementType, int size, String[] keyColumns) throws SQLException {
+		List<E> content = new ArrayList<>(Math.min(size, 1024));
+		Object[] lastKeys = null;
+		try (ResultSet resultSet = statement.getResultSet()) {
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			RowReader<E> reader = readerOf(elementType, metaData);
+			int[] keyIndexes = indexesOf(metaData, keyColumns);
+			while (resultSet.next()) {
+				if (content.size() == size) {
+					return Page.of(content, size, lastKeys);
+				}
+				content.add(reader.read(resultSet));
+				if (content.size() == size) {
+					lastKeys = new Object[keyIndexes.length];
+					for (int i = 0; i < keyIndexes.length; i++) {
+						lastKeys[i] = resultSet.getObject(keyIndexes[i]);
+					}
+				}
+			}
+		}
+		return Page.of(content, size, null);
+	}
 
-			try {
-				for (int i = 1; i <= metaData.getColumnCount(); i++) {
-					setFieldValue(entity, entityClass, metaData.getColumnName(i), resultSet, i, true);
+	/**
+	 * 查找主键列在结果集中的位置，列名忽略大小写和表名前缀
+	 */
+	private static int[] indexesOf(ResultSetMetaData metaData, String[] columns) throws SQLException {
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			String column = columns[i].substring(columns[i].lastIndexOf('.') + 1);
+			for (int c = 1; c <= metaData.getColumnCount(); c++) {
+				if (column.equalsIgnoreCase(metaData.getColumnLabel(c))) {
+					indexes[i] = c;
+					break;
 				}
-			} catch (SQLException e) {
-				throw new RuntimeException(e);
 			}
-			return entity;
-		} catch (InstantiationException | IllegalAccessException e) {
-			throw new RuntimeException(e);
+			if (indexes[i] == 0)
+				throw new RuntimeException(String.format("分页查询的结果中缺少主键列 [%s]", columns[i]));
 		}
+		return indexes;
 	}
 
-	private static void setFieldValue(Object entity, Class<?> entityClass, String fieldName, ResultSet resultSet, int index, boolean isContinue) throws SQLException {
-		try {
-			Field field = entityClass.getDeclaredField(fieldName);
-			field.setAccessible(true);
-			field.set(entity, resultSet.getObject(index, field.getType()));
-		} catch (NoSuchFieldException e) {
-			for (Field field : entityClass.getDeclaredFields()) {
-				Column column = field.getAnnotation(Column.class);
-				if (column == null)	continue;
-				if (!column.value().equals(fieldName)) continue;
-				setFieldValue(entity, entityClass, field.getName(), resultSet, index, false);
+	private static long[] longs(ResultSet results) throws SQLException {
+		long[] values = new long[16];
+		int size = 0;
+		try (ResultSet resultSet = results) {
+			while (resultSet.next()) {
+				if (size == values.length) values = Arrays.copyOf(values, size * 2);
+				values[size++] = resultSet.getLong(1);
+			}
+		}
+		return size == values.length ? values : Arrays.copyOf(values, size);
+	}
+
+	private static int[] ints(ResultSet results) throws SQLException {
+		int[] values = new int[16];
+		int size = 0;
+		try (ResultSet resultSet = results) {
+			while (resultSet.next()) {
+				if (size == values.length) values = Arrays.copyOf(values, size * 2);
+				values[size++] = resultSet.getInt(1);
+			}
+		}
+		return size == values.length ? values : Arrays.copyOf(values, size);
+	}
+
+	private static double[] doubles(ResultSet results) throws SQLException {
+		double[] values = new double[16];
+		int size = 0;
+		try (ResultSet resultSet = results) {
+			while (resultSet.next()) {
+				if (size == values.length) values = Arrays.copyOf(values, size * 2);
+				values[size++] = resultSet.getDouble(1);
 			}
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
 		}
+		return size == values.length ? values : Arrays.copyOf(values, size);
 	}
 }
@@ -0,0 +1,339 @@
+package com.krun.juice.repository.resolver;
+
+import com.krun.juice.repository.EntityMetadata;
+import com.krun.juice.repository.annotation.Column;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 投影映射器
+ *
+ * 把结果集的当前行映射为一个投影：只声明了 getter 的接口，或者 record(运行在 Java 16 及以上时)。
+ * 投影只读取与它的属性对应的列，每行只分配一个值数组和投影对象本身，不需要创建完整的表实体。
+ *
+ * 属性名取 @Column 的值，没有时取方法名(getName / isActive 去掉前缀，name() 保持原样)或 record 组件名，
+ * 与列名先精确匹配，再忽略大小写匹配；找不到列的属性为 null 或基本类型的默认值。
+ * 和表实体一样，投影的属性只解析一次，映射器按结果集结构缓存。
+ */
+public final class ProjectionMapper<T> implements RowReader<T> {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	private static final MethodType PROXY_CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, InvocationHandler.class);
+
+	private static final ConcurrentHashMap<Class<?>, Projection> projections = new ConcurrentHashMap<>();
+
+	/**
+	 * Class.isRecord / Class.getRecordComponents，运行在 Java 16 以下时为 null
+	 */
+	private static final Method IS_RECORD;
+	private static final Method GET_RECORD_COMPONENTS;
+
+	static {
+		Method isRecord = null;
+		Method getRecordComponents = null;
+		try {
+			isRecord = Class.class.getMethod("isRecord");
+			getRecordComponents = Class.class.getMethod("getRecordComponents");
+		} catch (NoSuchMethodException ignored) {
+		}
+		IS_RECORD = isRecord;
+		GET_RECORD_COMPONENTS = getRecordComponents;
+	}
+
+	/**
+	 * 判断类型是否以投影的方式映射
+	 * @param type 结果类型
+	 * @return 是否为接口或 record
+	 */
+	static boolean isProjection(Class<?> type) {
+		return type.isInterface() || isRecord(type);
+	}
+
+	private static boolean isRecord(Class<?> type) {
+		if (IS_RECORD == null) return false;
+		try {
+			return (Boolean) IS_RECORD.invoke(type);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 获取与结果集结构对应的投影映射器，没有时编译一个
+	 * @param type 投影类型
+	 * @param metaData 结果集结构
+	 * @param <T> 投影类型
+	 * @return 投影映射器
+	 * @throws SQLException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ProjectionMapper<T> of(Class<T> type, ResultSetMetaData metaData) throws SQLException {
+		Projection projection = projections.computeIfAbsent(type, Projection::new);
+		String shape = EntityMetadata.shapeOf(metaData);
+		ProjectionMapper<?> mapper = projection.mappers.get(shape);
+		if (mapper == null) {
+			mapper = new ProjectionMapper<>(projection, metaData);
+			ProjectionMapper<?> previous = projection.mappers.putIfAbsent(shape, mapper);
+			if (previous != null) mapper = previous;
+		}
+		return (ProjectionMapper<T>) mapper;
+	}
+
+	private final Projection projection;
+
+	/**
+	 * 每个属性对应的列下标，找不到列时为 0
+	 */
+	private final int[] columns;
+
+	private final ColumnReaders.ColumnReader[] readers;
+
+	private ProjectionMapper(Projection projection, ResultSetMetaData metaData) throws SQLException {
+		this.projection = projection;
+		Map<String, Integer> labels = new HashMap<>();
+		Map<String, Integer> lowerCaseLabels = new HashMap<>();
+		for (int i = metaData.getColumnCount(); i >= 1; i--) {
+			labels.put(metaData.getColumnLabel(i), i);
+			lowerCaseLabels.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+		}
+		int size = projection.names.length;
+		this.columns = new int[size];
+		this.readers = new ColumnReaders.ColumnReader[size];
+		for (int i = 0; i < size; i++) {
+			Integer column = labels.get(projection.names[i]);
+			if (column == null) column = lowerCaseLabels.get(projection.names[i].toLowerCase(Locale.ROOT));
+			if (column == null) continue;
+			this.columns[i] = column;
+			this.readers[i] = ColumnReaders.of(projection.types[i]);
+		}
+	}
+
+	@Override
+	public T read(ResultSet resultSet) throws SQLException {
+		int[] columns = this.columns;
+		Object[] values = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			values[i] = columns[i] == 0 ? null : this.readers[i].read(resultSet, columns[i]);
+			if (values[i] == null) values[i] = this.projection.defaults[i];
+		}
+		return this.projection.create(values);
+	}
+
+	/**
+	 * 投影类型的属性，每个类型只解析一次
+	 */
+	private static final class Projection {
+
+		final Class<?> type;
+		final String[] names;
+		final Class<?>[] types;
+
+		/**
+		 * 基本类型属性在列值为 NULL 时使用的默认值
+		 */
+		final Object[] defaults;
+
+		/**
+		 * record 投影的构造器: (Object[] values) -> Object，接口投影为 null
+		 */
+		final MethodHandle factory;
+
+		/**
+		 * 接口投影的代理类构造器: (InvocationHandler handler) -> Object，record 投影为 null
+		 */
+		final MethodHandle proxyConstructor;
+
+		/**
+		 * 接口投影的 getter -> 属性下标
+		 */
+		final Map<Method, Integer> getters = new HashMap<>();
+
+		/**
+		 * 接口投影的默认方法
+		 */
+		final Map<Method, MethodHandle> defaultMethods = new HashMap<>();
+
+		final ConcurrentHashMap<String, ProjectionMapper<?>> mappers = new ConcurrentHashMap<>();
+
+		Projection(Class<?> type) {
+			this.type = type;
+			List<String> names = new ArrayList<>();
+			List<Class<?>> types = new ArrayList<>();
+			try {
+				if (type.isInterface()) {
+					scanInterface(names, types);
+					Constructor<?> constructor = Proxy.getProxyClass(type.getClassLoader(), type)
+							.getConstructor(InvocationHandler.class);
+					this.factory = null;
+					this.proxyConstructor = lookup.unreflectConstructor(constructor).asType(PROXY_CONSTRUCTOR_TYPE);
+				} else {
+					Constructor<?> constructor = scanRecord(names, types);
+					constructor.setAccessible(true);
+					this.factory = lookup.unreflectConstructor(constructor)
+							.asSpreader(Object[].class, types.size())
+							.asType(FACTORY_TYPE);
+					this.proxyConstructor = null;
+				}
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(String.format("无法为投影类型 [%s] 创建实例", type.getName()), e);
+			}
+			this.names = names.toArray(new String[0]);
+			this.types = types.toArray(new Class<?>[0]);
+			this.defaults = new Object[this.types.length];
+			for (int i = 0; i < this.types.length; i++) {
+				this.defaults[i] = ColumnReaders.defaultValue(this.types[i]);
+			}
+		}
+
+		private void scanInterface(List<String> names, List<Class<?>> types) throws ReflectiveOperationException {
+			for (Method method : this.type.getMethods()) {
+				if (Modifier.isStatic(method.getModifiers())) continue;
+				if (method.isDefault()) {
+					this.defaultMethods.put(method, defaultMethod(method));
+					continue;
+				}
+				if (method.getParameterCount() != 0 || method.getReturnType() == void.class)
+					throw new RuntimeException(String.format("投影接口 [%s] 的方法 [%s] 不是 getter: 投影接口只能声明无参且有返回值的方法",
+							this.type.getName(), method.getName()));
+				Column column = method.getAnnotation(Column.class);
+				this.getters.put(method, names.size());
+				names.add(column != null ? column.value() : propertyName(method));
+				types.add(method.getReturnType());
+			}
+		}
+
+		private Constructor<?> scanRecord(List<String> names, List<Class<?>> types) throws ReflectiveOperationException {
+			Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(this.type);
+			for (Object component : components) {
+				Method accessor = (Method) component.getClass().getMethod("getAccessor").invoke(component);
+				Column column = accessor.getAnnotation(Column.class);
+				names.add(column != null ? column.value() : (String) component.getClass().getMethod("getName").invoke(component));
+				types.add((Class<?>) component.getClass().getMethod("getType").invoke(component));
+			}
+			return this.type.getDeclaredConstructor(types.toArray(new Class<?>[0]));
+		}
+
+		/**
+		 * 默认方法需要通过 privateLookupIn 调用，因此只在 Java 9 及以上可用
+		 */
+		private MethodHandle defaultMethod(Method method) {
+			try {
+				Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+				MethodHandles.Lookup lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, this.type, ProjectionMapper.lookup);
+				return lookup.unreflectSpecial(method, this.type);
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException(String.format("投影接口 [%s] 的默认方法 [%s] 需要运行在 Java 9 及以上",
+						this.type.getName(), method.getName()), e);
+			}
+		}
+
+		Object[] valuesOf(Object proxy) {
+			return ((ProjectionHandler) Proxy.getInvocationHandler(proxy)).values;
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> T create(Object[] values) {
+			try {
+				if (this.proxyConstructor != null)
+					return (T) (Object) this.proxyConstructor.invokeExact((InvocationHandler) new ProjectionHandler(this, values));
+				return (T) (Object) this.factory.invokeExact(values);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(String.format("无法创建投影 [%s]", this.type.getName()), e);
+			}
+		}
+
+		private static String propertyName(Method method) {
+			String name = method.getName();
+			if (name.length() > 3 && name.startsWith("get") && Character.isUpperCase(name.charAt(3)))
+				return decapitalize(name.substring(3));
+			if (name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2))
+					&& (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class))
+				return decapitalize(name.substring(2));
+			return name;
+		}
+
+		private static String decapitalize(String name) {
+			return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+		}
+	}
+
+	/**
+	 * 接口投影的调用处理器，getter 直接按下标读取值数组
+	 */
+	private static final class ProjectionHandler implements InvocationHandler {
+
+		private final Projection projection;
+		private final Object[] values;
+
+		ProjectionHandler(Projection projection, Object[] values) {
+			this.projection = projection;
+			this.values = values;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Integer index = this.projection.getters.get(method);
+			if (index != null) return this.values[index];
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals":
+						Object other = args[0];
+						return other != null
+								&& Proxy.isProxyClass(other.getClass())
+								&& Proxy.getInvocationHandler(other) instanceof ProjectionHandler
+								&& ((ProjectionHandler) Proxy.getInvocationHandler(other)).projection == this.projection
+								&& Arrays.equals(this.values, this.projection.valuesOf(other));
+					case "hashCode":
+						return Arrays.hashCode(this.values);
+					case "toString":
+						return toString();
+					default:
+						break;
+				}
+			}
+			MethodHandle defaultMethod = this.projection.defaultMethods.get(method);
+			if (defaultMethod != null) {
+				Object[] arguments = new Object[args == null ? 1 : args.length + 1];
+				arguments[0] = proxy;
+				if (args != null) System.arraycopy(args, 0, arguments, 1, args.length);
+				return defaultMethod.invokeWithArguments(arguments);
+			}
+			throw new UnsupportedOperationException(String.format("投影 [%s] 不支持方法 [%s]",
+					this.projection.type.getName(), method.getName()));
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(this.projection.type.getSimpleName()).append('{');
+			for (int i = 0; i < this.values.length; i++) {
+				if (i > 0) builder.append(", ");
+				builder.append(this.projection.names[i]).append('=').append(this.values[i]);
+			}
+			return builder.append('}').toString();
+		}
+	}
+}
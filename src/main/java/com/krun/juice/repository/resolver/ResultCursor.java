@@ -0,0 +1,112 @@
+package com.krun.juice.repository.resolver;
+
+import com.krun.juice.repository.Cursor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Created by krun on 2017/10/13.
+ *
+ * 基于打开的结果集的游标实现
+ *
+ * 关闭时先关闭结果集，再依次执行通过 onClose 注册的动作(如归还语句和连接)，且只会执行一次。
+ */
+public class ResultCursor<E> implements Cursor<E> {
+
+	private final ResultSet resultSet;
+	private final RowReader<E> reader;
+	private final AtomicBoolean closed;
+
+	private Runnable closeAction;
+
+	/**
+	 * 结果集是否已经移动到下一行且尚未被读取，为 null 时表示还没有移动
+	 */
+	private Boolean ready;
+
+	public ResultCursor(ResultSet resultSet, RowReader<E> reader) {
+		this.resultSet = resultSet;
+		this.reader = reader;
+		this.closed = new AtomicBoolean();
+	}
+
+	/**
+	 * 注册一个关闭时执行的动作
+	 * @param action 关闭时执行的动作
+	 * @return 当前游标
+	 */
+	public ResultCursor<E> onClose(Runnable action) {
+		Runnable previous = this.closeAction;
+		this.closeAction = previous == null ? action : () -> {
+			try {
+				previous.run();
+			} finally {
+				action.run();
+			}
+		};
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.ready == null) {
+			if (this.closed.get()) return false;
+			try {
+				this.ready = this.resultSet.next();
+			} catch (SQLException e) {
+				close();
+				throw new RuntimeException(e);
+			}
+			/*
+			  遍历结束时自动关闭，即使调用方忘记 close 也能归还连接
+			 */
+			if (!this.ready) close();
+		}
+		return this.ready;
+	}
+
+	@Override
+	public E next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		this.ready = null;
+		try {
+			return this.reader.read(this.resultSet);
+		} catch (SQLException e) {
+			close();
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return this;
+	}
+
+	@Override
+	public Stream<E> stream() {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (!this.closed.compareAndSet(false, true)) return;
+		this.ready = false;
+		try {
+			this.resultSet.close();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (this.closeAction != null) this.closeAction.run();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.krun.juice.repository.resolver;
+
+import com.krun.juice.repository.ChangeTracker;
+import com.krun.juice.repository.EntityMetadata;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Created by krun on 2017/10/10.
+ *
+ * 行映射器
+ *
+ * 每个 (表实体类型, 结果集结构) 只编译一次并缓存在表实体元数据中：列下标直接对应一个预先解析好的字段写入器，
+ * 字段通过 MethodHandle 写入，列值通过 getInt / getLong / getString 等带类型的方法读取，
+ * 映射每一行时不再查找字段，也不再依赖异常来处理找不到的列。
+ */
+public class RowMapper<E> implements RowReader<E> {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	/**
+	 * 获取与结果集结构对应的行映射器，没有时编译一个
+	 * @param entityClass 表实体类型
+	 * @param metaData 结果集结构
+	 * @param <E> 表实体类型
+	 * @return 行映射器
+	 * @throws SQLException
+	 */
+	public static <E> RowMapper<E> of(Class<E> entityClass, ResultSetMetaData metaData) throws SQLException {
+		return EntityMetadata.of(entityClass).getRowMapper(metaData);
+	}
+
+	/**
+	 * 编译一个行映射器，由 {@link EntityMetadata} 按结果集结构缓存，不要直接调用
+	 * @param entity 表实体元数据
+	 * @param metaData 结果集结构
+	 * @param <E> 表实体类型
+	 * @return 行映射器
+	 * @throws SQLException
+	 */
+	public static <E> RowMapper<E> compile(EntityMetadata<E> entity, ResultSetMetaData metaData) throws SQLException {
+		return new RowMapper<>(entity, metaData);
+	}
+
+	private final Class<E> entityClass;
+
+	private final MethodHandle constructor;
+
+	/**
+	 * 下标为列下标减一，找不到对应字段的列为 null
+	 */
+	private final ColumnSetter[] setters;
+
+	/**
+	 * 表实体开启修改跟踪时的跟踪器和这个结果集结构写入的字段下标，否则为 null
+	 */
+	private final ChangeTracker<E> tracker;
+	private final int[] trackedFields;
+
+	private RowMapper(EntityMetadata<E> entity, ResultSetMetaData metaData) throws SQLException {
+		this.entityClass = entity.getEntityClass();
+		this.constructor = entity.getConstructor();
+		this.setters = new ColumnSetter[metaData.getColumnCount()];
+		int[] fields = new int[this.setters.length];
+		int count = 0;
+		for (int i = 1; i <= this.setters.length; i++) {
+			Field field = entity.findField(metaData.getColumnLabel(i));
+			if (field == null) field = entity.findField(metaData.getColumnName(i));
+			if (field == null) continue;
+			this.setters[i - 1] = ColumnSetter.of(field);
+			fields[count++] = entity.getFields().indexOf(field);
+		}
+		this.tracker = entity.getChangeTracker();
+		this.trackedFields = this.tracker == null ? null : Arrays.copyOf(fields, count);
+	}
+
+	/**
+	 * 创建一个未填充的表实体
+	 * @return 表实体
+	 */
+	@SuppressWarnings("unchecked")
+	public E create() {
+		try {
+			return (E) (Object) this.constructor.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(String.format("无法创建表实体 [%s]", this.entityClass.getName()), e);
+		}
+	}
+
+	/**
+	 * 把结果集的当前行映射为一个表实体
+	 * @param resultSet 结果集
+	 * @return 表实体
+	 * @throws SQLException
+	 */
+	public E map(ResultSet resultSet) throws SQLException {
+		E entity = create();
+		ColumnSetter[] setters = this.setters;
+		try {
+			for (int i = 0; i < setters.length; i++) {
+				if (setters[i] != null) setters[i].set(entity, resultSet, i + 1);
+			}
+		} catch (SQLException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+		if (this.tracker != null) this.tracker.track(entity, this.trackedFields);
+		return entity;
+	}
+
+	@Override
+	public E read(ResultSet resultSet) throws SQLException {
+		return map(resultSet);
+	}
+
+	/**
+	 * 列写入器
+	 *
+	 * 基本类型字段使用对应的基本类型读取方法，并在列值为 NULL 时保留字段默认值，避免装箱。
+	 */
+	private static abstract class ColumnSetter {
+
+		private static final MethodType OBJECT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+		final MethodHandle setter;
+
+		ColumnSetter(MethodHandle setter) {
+			this.setter = setter;
+		}
+
+		abstract void set(Object entity, ResultSet resultSet, int index) throws Throwable;
+
+		static ColumnSetter of(Field field) {
+			MethodHandle setter;
+			try {
+				field.setAccessible(true);
+				setter = lookup.unreflectSetter(field);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			Class<?> type = field.getType();
+			if (type.isPrimitive()) {
+				setter = setter.asType(MethodType.methodType(void.class, Object.class, type));
+				if (type == int.class) return new IntSetter(setter);
+				if (type == long.class) return new LongSetter(setter);
+				if (type == double.class) return new DoubleSetter(setter);
+				if (type == boolean.class) return new BooleanSetter(setter);
+				if (type == float.class) return new FloatSetter(setter);
+				if (type == short.class) return new ShortSetter(setter);
+				if (type == byte.class) return new ByteSetter(setter);
+				throw new RuntimeException(String.format("不支持的字段类型 [%s %s]", type.getName(), field.getName()));
+			}
+			setter = setter.asType(OBJECT_SETTER);
+			return new ObjectSetter(setter, ColumnReaders.of(type));
+		}
+	}
+
+	private static final class ObjectSetter extends ColumnSetter {
+
+		private final ColumnReaders.ColumnReader reader;
+
+		ObjectSetter(MethodHandle setter, ColumnReaders.ColumnReader reader) {
+			super(setter);
+			this.reader = reader;
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			this.setter.invokeExact(entity, this.reader.read(resultSet, index));
+		}
+	}
+
+	private static final class IntSetter extends ColumnSetter {
+
+		IntSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			int value = resultSet.getInt(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class LongSetter extends ColumnSetter {
+
+		LongSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			long value = resultSet.getLong(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class DoubleSetter extends ColumnSetter {
+
+		DoubleSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			double value = resultSet.getDouble(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class FloatSetter extends ColumnSetter {
+
+		FloatSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			float value = resultSet.getFloat(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class BooleanSetter extends ColumnSetter {
+
+		BooleanSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			boolean value = resultSet.getBoolean(index);
+			if (value || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class ShortSetter extends ColumnSetter {
+
+		ShortSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			short value = resultSet.getShort(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+
+	private static final class ByteSetter extends ColumnSetter {
+
+		ByteSetter(MethodHandle setter) {
+			super(setter);
+		}
+
+		@Override
+		void set(Object entity, ResultSet resultSet, int index) throws Throwable {
+			byte value = resultSet.getByte(index);
+			if (value != 0 || !resultSet.wasNull()) this.setter.invokeExact(entity, value);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.krun.juice.repository.resolver;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 行读取器
+ *
+ * 把结果集的当前行读取为一个结果元素：表实体({@link RowMapper})、单列的标量值({@link ColumnReaders})
+ * 或者只包含所选列的投影({@link ProjectionMapper})。
+ */
+@FunctionalInterface
+public interface RowReader<T> {
+
+	T read(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,173 @@
+package com.krun.juice.transaction;
+
+import com.krun.juice.connection.provider.ConnectionProvider;
+import com.krun.juice.connection.provider.PooledConnection;
+import com.krun.juice.repository.cache.CacheRegion;
+import com.krun.juice.utils.log.LoggerProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 事务
+ *
+ * 由 {@link com.krun.juice.repository.factory.RepositoryFactory#begin()} 开启，开启时独占一个连接并关闭自动提交，
+ * 之后当前线程(包括虚拟线程)中通过同一工厂调用的所有仓库方法都使用这个连接，直到提交、回滚或关闭。
+ * 事务中发起的异步仓库方法同样使用这个连接，需要在提交前等待它们完成。
+ *
+ * 一般以 try-with-resources 的方式使用，没有提交就关闭时回滚：
+ * <pre>
+ * try (Transaction transaction = factory.begin()) {
+ *     ...
+ *     transaction.commit();
+ * }
+ * </pre>
+ * 事务对象本身不是并发安全的，提交、回滚和关闭都应由开启它的线程调用。
+ */
+public final class Transaction implements AutoCloseable {
+
+	private static final Logger logger = LoggerProvider.provide(Transaction.class);
+
+	private final ConnectionProvider provider;
+
+	private final PooledConnection connection;
+
+	/**
+	 * 事务结束(无论提交还是回滚)后的回调，用于解除与线程的绑定
+	 */
+	private final Consumer<Transaction> onEnd;
+
+	/**
+	 * 事务中执行过更新的表实体的缓存区域，提交时再使它们失效一次，
+	 * 以免其他线程在事务提交前读到旧数据并写回缓存
+	 */
+	private final Set<CacheRegion> modified = new LinkedHashSet<>();
+
+	/**
+	 * 提交成功后执行的操作，回滚时丢弃
+	 */
+	private final List<Runnable> committed = new ArrayList<>();
+
+	private volatile boolean active;
+
+	public Transaction(ConnectionProvider provider, Consumer<Transaction> onEnd) {
+		this.provider = provider;
+		this.onEnd = onEnd;
+		try {
+			this.connection = provider.borrowExclusive();
+		} catch (SQLException e) {
+			throw new RuntimeException("开启事务失败: 无法获取数据库连接", e);
+		}
+		try {
+			this.connection.getConnection().setAutoCommit(false);
+		} catch (SQLException e) {
+			provider.releaseExclusive(this.connection);
+			throw new RuntimeException("开启事务失败: 无法关闭自动提交", e);
+		}
+		this.active = true;
+	}
+
+	/**
+	 * @return 事务所独占的连接
+	 */
+	public PooledConnection getConnection() {
+		return this.connection;
+	}
+
+	/**
+	 * @return 事务是否仍在进行中
+	 */
+	public boolean isActive() {
+		return this.active;
+	}
+
+	/**
+	 * 记录事务中更新过的缓存区域
+	 * @param region 缓存区域
+	 */
+	public void modified(CacheRegion region) {
+		this.modified.add(region);
+	}
+
+	/**
+	 * 登记一个在事务提交成功后执行的操作，例如保存表实体后更新它的快照
+	 * @param action 提交成功后执行的操作
+	 */
+	public void afterCommit(Runnable action) {
+		this.committed.add(action);
+	}
+
+	/**
+	 * 提交事务，提交失败时回滚并抛出异常，无论如何事务都会结束
+	 */
+	public void commit() {
+		checkActive();
+		Connection connection = this.connection.getConnection();
+		try {
+			connection.commit();
+		} catch (SQLException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw new RuntimeException("提交事务失败", e);
+		} finally {
+			for (CacheRegion region : this.modified) {
+				region.invalidate();
+			}
+			end();
+		}
+		for (Runnable action : this.committed) {
+			action.run();
+		}
+	}
+
+	/**
+	 * 回滚事务，无论如何事务都会结束
+	 */
+	public void rollback() {
+		checkActive();
+		try {
+			this.connection.getConnection().rollback();
+		} catch (SQLException e) {
+			throw new RuntimeException("回滚事务失败", e);
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * 事务仍在进行中时回滚，已经结束时什么也不做
+	 */
+	@Override
+	public void close() {
+		if (this.active) rollback();
+	}
+
+	private void checkActive() {
+		if (!this.active) throw new IllegalStateException("事务已经结束.");
+	}
+
+	/**
+	 * 恢复自动提交，归还连接，解除与线程的绑定
+	 */
+	private void end() {
+		this.active = false;
+		try {
+			this.connection.getConnection().setAutoCommit(true);
+		} catch (SQLException e) {
+			logger.warning(String.format("恢复自动提交失败: %s", e.getMessage()));
+		}
+		this.provider.releaseExclusive(this.connection);
+		this.onEnd.accept(this);
+	}
+}
@@ -0,0 +1,15 @@
+package com.krun.juice.transaction;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 事务回调
+ *
+ * 由 {@link com.krun.juice.repository.factory.RepositoryFactory#inTransaction(TransactionCallback)} 在事务中执行，
+ * 正常返回时提交，抛出异常时回滚。
+ */
+@FunctionalInterface
+public interface TransactionCallback<T> {
+
+	T execute() throws Exception;
+}
@@ -1,9 +1,13 @@
 package com.krun.juice.util;
 
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Created by krun on 2017/9/24.
@@ -40,9 +44,56 @@ public class ClassUtils {
 		return (T) field.get(obj);
 	}
 
-	public static Class<?> parseClassFromSignature(String signature) throws ClassNotFoundException {
-		signature = signature.substring(signature.indexOf('<') + 2, signature.indexOf('>') - 1);
-		return Class.forName(signature.replaceAll("/", "."));
+	/**
+	 * 判断返回值类型是否为异步结果
+	 * @param returnType 方法返回值类型
+	 * @return 是否为 CompletableFuture 或 CompletionStage
+	 */
+	public static boolean isFutureType(Class<?> returnType) {
+		return CompletableFuture.class.equals(returnType) || CompletionStage.class.equals(returnType);
+	}
+
+	/**
+	 * 获取方法实际产出的结果类型：异步方法取 CompletableFuture 的类型参数，其他方法即为泛型返回值类型
+	 * @param method 方法
+	 * @return 结果类型
+	 */
+	public static Type getResultType(Method method) {
+		Type type = method.getGenericReturnType();
+		if (isFutureType(method.getReturnType()) && type instanceof ParameterizedType)
+			return ((ParameterizedType) type).getActualTypeArguments()[0];
+		return type;
+	}
+
+	/**
+	 * 获取类型的原始类型，如 List&lt;Student&gt; 中的 List
+	 * @param type 类型
+	 * @return 原始类型，无法确定时返回 Object
+	 */
+	public static Class<?> getRawClass(Type type) {
+		if (type instanceof Class) return (Class<?>) type;
+		if (type instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) type).getRawType();
+		return Object.class;
+	}
+
+	/**
+	 * 获取类型的第一个类型参数，如 List&lt;Student&gt; 中的 Student
+	 * @param type 类型
+	 * @return 类型参数，没有类型参数时返回 null
+	 */
+	public static Class<?> getActualType(Type type) {
+		if (!(type instanceof ParameterizedType)) return null;
+		Type actual = ((ParameterizedType) type).getActualTypeArguments()[0];
+		if (actual instanceof Class || actual instanceof ParameterizedType) return getRawClass(actual);
+		return null;
+	}
+
+	/**
+	 * @param type 类型
+	 * @return 基本类型对应的包装类型，其他类型原样返回
+	 */
+	public static Class<?> box(Class<?> type) {
+		return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
 	}
 
 }
\ No newline at end of file
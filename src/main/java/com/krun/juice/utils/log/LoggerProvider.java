@@ -1,29 +1,30 @@
 package com.krun.juice.utils.log;
 
-import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Created by krun on 2017/9/23.
+ *
+ * 日志级别默认沿用 java.util.logging 的配置(如 logging.properties)，也可以通过系统属性 juice.log.level 统一指定 Juice 所有日志的级别。
  */
 public class LoggerProvider {
 
-	private static final LinkedHashMap<Class<?>, Logger> loggerMap;
+	public static final String LEVEL_PROPERTY = "juice.log.level";
 
-	static {
-		loggerMap = new LinkedHashMap<Class<?>, Logger>();
-	}
+	private static final ConcurrentHashMap<Class<?>, Logger> loggerMap = new ConcurrentHashMap<>();
 
 	public static Logger provide(Class<?> clazz) {
-		synchronized ( loggerMap ) {
-			Logger logger = loggerMap.get(clazz);
-			if (logger == null) {
-				logger = Logger.getLogger(clazz.getSimpleName());
-				logger.setLevel(Level.ALL);
-				loggerMap.put(clazz, logger);
-			}
-			return logger;
-		}
+		Logger logger = loggerMap.get(clazz);
+		if (logger != null) return logger;
+		return loggerMap.computeIfAbsent(clazz, LoggerProvider::create);
+	}
+
+	private static Logger create(Class<?> clazz) {
+		Logger logger = Logger.getLogger(clazz.getSimpleName());
+		String level = System.getProperty(LEVEL_PROPERTY);
+		if (level != null && !level.isEmpty()) logger.setLevel(Level.parse(level.trim().toUpperCase()));
+		return logger;
 	}
 }
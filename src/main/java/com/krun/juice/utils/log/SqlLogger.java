@@ -0,0 +1,80 @@
+package com.krun.juice.utils.log;
+
+import com.krun.juice.connection.dialect.Dialect;
+
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created by krun on 2017/10/12.
+ *
+ * 采样 sql 日志
+ *
+ * 取代每次调用都输出完整 sql 的做法：只输出每 N 次调用中随机的一次，或耗时超过阈值的慢查询。
+ * 两者都未配置时 {@link #isEnabled()} 为 false，调用方可以连计时都省掉。
+ */
+public class SqlLogger {
+
+	private static final Logger logger = LoggerProvider.provide(SqlLogger.class);
+
+	/**
+	 * 每 sampleRate 次调用采样一次，为 0 时不采样
+	 */
+	private final int sampleRate;
+
+	/**
+	 * 慢查询阈值(纳秒)，为 0 时不记录慢查询
+	 */
+	private final long slowThreshold;
+
+	/**
+	 * 用于输出语句对应的 sql
+	 */
+	private final Dialect dialect;
+
+	/**
+	 * @param sampleRate 每 sampleRate 次调用采样一次，为 0 时不采样
+	 * @param slowQueryThreshold 慢查询阈值(毫秒)，为 0 时不记录慢查询
+	 * @param dialect 数据库方言
+	 */
+	public SqlLogger(int sampleRate, long slowQueryThreshold, Dialect dialect) {
+		this.dialect = dialect;
+		this.sampleRate = Math.max(sampleRate, 0);
+		this.slowThreshold = TimeUnit.MILLISECONDS.toNanos(Math.max(slowQueryThreshold, 0));
+	}
+
+	public boolean isEnabled() {
+		return this.sampleRate > 0 || this.slowThreshold > 0;
+	}
+
+	/**
+	 * 在语句执行完成后调用，决定是否输出这一次执行的 sql
+	 * @param method 触发执行的仓库方法
+	 * @param statement 执行完成的语句
+	 * @param elapsed 执行耗时(纳秒)
+	 */
+	public void log(Method method, Statement statement, long elapsed) {
+		if (this.slowThreshold > 0 && elapsed >= this.slowThreshold) {
+			if (logger.isLoggable(Level.WARNING))
+				logger.warning(format("慢查询", method, statement, elapsed));
+			return;
+		}
+		if (this.sampleRate == 0) return;
+		if (this.sampleRate > 1 && ThreadLocalRandom.current().nextInt(this.sampleRate) != 0) return;
+		if (logger.isLoggable(Level.INFO))
+			logger.info(format("采样", method, statement, elapsed));
+	}
+
+	private String format(String kind, Method method, Statement statement, long elapsed) {
+		return String.format("%s [%s.%s()] 耗时 %.3f ms:\n%s",
+				kind,
+				method.getDeclaringClass().getSimpleName(),
+				method.getName(),
+				elapsed / 1e6,
+				this.dialect.render(statement));
+	}
+}
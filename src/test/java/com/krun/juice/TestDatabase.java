@@ -0,0 +1,82 @@
+package com.krun.juice;
+
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 测试用的 H2 内存数据库
+ *
+ * 每次调用 {@link #create(String, String...)} 都得到一个新的数据库，测试之间互不影响；
+ * 数据库在最后一个连接关闭后仍然保留(DB_CLOSE_DELAY=-1)，直到进程结束。
+ */
+public final class TestDatabase {
+
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private TestDatabase() {
+	}
+
+	/**
+	 * 创建一个内存数据库并执行初始化语句
+	 * @param name 名称前缀
+	 * @param statements 初始化语句
+	 * @return 连接 url
+	 */
+	public static String create(String name, String... statements) {
+		String url = url(name + "_" + count.incrementAndGet());
+		execute(url, statements);
+		return url;
+	}
+
+	/**
+	 * @param name 数据库名称
+	 * @return 内存数据库的连接 url，数据库在第一次连接时创建
+	 */
+	public static String url(String name) {
+		return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+	}
+
+	/**
+	 * @param url 连接 url
+	 * @return 连接到该数据库的配置构建器
+	 */
+	public static ConnectionConfiguration.ConnectionConfigurationBuilder configuration(String url) {
+		return ConnectionConfiguration.builder()
+				.driverClass("org.h2.Driver")
+				.connectionURL(url)
+				.username("sa")
+				.password("");
+	}
+
+	public static void execute(String url, String... statements) {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+			 Statement statement = connection.createStatement()) {
+			for (String sql : statements) {
+				statement.execute(sql);
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return 查询结果第一行第一列的值
+	 */
+	public static Object queryValue(String url, String sql) {
+		try (Connection connection = DriverManager.getConnection(url, "sa", "");
+			 Statement statement = connection.createStatement();
+			 ResultSet resultSet = statement.executeQuery(sql)) {
+			return resultSet.next() ? resultSet.getObject(1) : null;
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 有界连接池
+ */
+public class ConnectionPoolTest {
+
+	private ConnectionPool pool;
+
+	@Before
+	public void setUp() {
+		String url = TestDatabase.create("pool");
+		this.pool = (ConnectionPool) ConnectionProvider.configure(TestDatabase.configuration(url)
+				.maxPoolSize(2)
+				.borrowTimeout(200)
+				.build());
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.close();
+	}
+
+	@Test
+	public void releasedConnectionIsReusedFirst() throws SQLException {
+		PooledConnection first = this.pool.borrow();
+		PooledConnection second = this.pool.borrow();
+		assertNotSame(first, second);
+		assertFalse(first.isShared());
+		this.pool.release(second);
+		this.pool.release(first);
+		assertSame(first, this.pool.borrow());
+	}
+
+	@Test
+	public void borrowWaitsForReleaseAndTimesOut() throws Exception {
+		PooledConnection first = this.pool.borrow();
+		PooledConnection second = this.pool.borrow();
+		long start = System.nanoTime();
+		try {
+			this.pool.borrow();
+			fail();
+		} catch (SQLTimeoutException e) {
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<PooledConnection> waiting = executor.submit(() -> this.pool.borrow());
+			Thread.sleep(50);
+			assertFalse(waiting.isDone());
+			this.pool.release(second);
+			assertSame(second, waiting.get(1, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+		this.pool.release(first);
+	}
+
+	@Test
+	public void concurrentBorrowersNeverExceedMaxSize() throws Exception {
+		AtomicInteger inUse = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] futures = new Future<?>[8];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = executor.submit(() -> {
+					start.await();
+					for (int j = 0; j < 50; j++) {
+						PooledConnection pooled = this.pool.borrowExclusive();
+						peak.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+						Thread.yield();
+						inUse.decrementAndGet();
+						this.pool.releaseExclusive(pooled);
+					}
+					return null;
+				});
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(peak.get() <= 2);
+	}
+
+	@Test
+	public void closedConnectionIsDiscarded() throws SQLException {
+		PooledConnection pooled = this.pool.borrow();
+		pooled.getConnection().close();
+		this.pool.release(pooled);
+		PooledConnection next = this.pool.borrow();
+		assertNotSame(pooled, next);
+		assertFalse(next.getConnection().isClosed());
+	}
+
+	@Test
+	public void closedPoolRejectsBorrow() throws SQLException {
+		PooledConnection pooled = this.pool.borrow();
+		Connection connection = pooled.getConnection();
+		this.pool.close();
+		this.pool.release(pooled);
+		assertTrue(connection.isClosed());
+		try {
+			this.pool.borrow();
+			fail();
+		} catch (SQLException expected) {
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void fourArgumentConfigurationUsesOneSharedConnection() throws SQLException {
+		ConnectionProvider provider = ConnectionProvider.configure(
+				new ConnectionConfiguration(TestDatabase.create("single"), "org.h2.Driver", "sa", ""));
+		try {
+			assertFalse(provider instanceof ConnectionPool);
+			PooledConnection pooled = provider.borrow();
+			assertSame(pooled.getConnection(), provider.provide());
+			provider.release(pooled);
+			assertSame(pooled, provider.borrow());
+		} finally {
+			provider.close();
+		}
+	}
+}
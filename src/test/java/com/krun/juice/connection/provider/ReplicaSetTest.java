@@ -0,0 +1,247 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.connection.configuration.ReplicaSelection;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.model.StudentRepository;
+import com.krun.juice.transaction.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 只读副本的分发、摘除、退避与恢复
+ *
+ * 主库和两个副本各是一个 H2 内存数据库，marker 表中记录数据库自己的名字，借出连接后查询它即可知道连接来自哪里。
+ */
+public class ReplicaSetTest {
+
+	private static final long RETRY_INTERVAL = 300;
+
+	private String primary;
+	private String replicaA;
+	private String replicaB;
+
+	private ConnectionProvider provider;
+
+	@Before
+	public void setUp() {
+		this.primary = database("primary");
+		this.replicaA = database("a");
+		this.replicaB = database("b");
+	}
+
+	@After
+	public void tearDown() {
+		if (this.provider != null) this.provider.close();
+	}
+
+	private static String database(String name) {
+		return TestDatabase.create("replica_" + name,
+				"CREATE TABLE marker (name VARCHAR(20))",
+				"INSERT INTO marker VALUES ('" + name + "')",
+				Student.DDL,
+				"INSERT INTO student VALUES ('1', '" + name + "', 1)");
+	}
+
+	private ConnectionProvider configure(int maxPoolSize, ReplicaSelection selection, String... replicas) {
+		this.provider = ConnectionProvider.configure(TestDatabase.configuration(this.primary)
+				.maxPoolSize(maxPoolSize)
+				.replicaURLs(Arrays.asList(replicas))
+				.replicaSelection(selection)
+				.replicaRetryInterval(RETRY_INTERVAL)
+				.build());
+		return this.provider;
+	}
+
+	/**
+	 * 借出一个只读连接，查询后归还
+	 * @return 连接所在数据库的名字
+	 */
+	private static String read(ConnectionProvider provider) throws SQLException {
+		PooledConnection pooled = provider.borrowReadOnly();
+		try {
+			return owner(pooled);
+		} finally {
+			provider.releaseReadOnly(pooled);
+		}
+	}
+
+	private static Set<String> reads(ConnectionProvider provider, int count) throws SQLException {
+		Set<String> seen = new HashSet<>();
+		for (int i = 0; i < count; i++) {
+			seen.add(read(provider));
+		}
+		return seen;
+	}
+
+	private static String owner(PooledConnection pooled) throws SQLException {
+		try (Statement statement = pooled.getConnection().createStatement();
+			 ResultSet resultSet = statement.executeQuery("SELECT name FROM marker")) {
+			resultSet.next();
+			return resultSet.getString(1);
+		}
+	}
+
+	/**
+	 * 借出属于指定副本的连接并报告一次连接层面的错误
+	 */
+	private static void fail(ConnectionProvider provider, String replica) throws SQLException {
+		for (int i = 0; i < 10; i++) {
+			PooledConnection pooled = provider.borrowReadOnly();
+			try {
+				if (owner(pooled).equals(replica)) {
+					provider.failed(pooled, new SQLNonTransientConnectionException("connection reset", "08006"));
+					return;
+				}
+			} finally {
+				provider.releaseReadOnly(pooled);
+			}
+		}
+		throw new AssertionError("没有借出副本 " + replica + " 的连接");
+	}
+
+	@Test
+	public void readsAreSpreadOverReplicas() throws SQLException {
+		for (ReplicaSelection selection : ReplicaSelection.values()) {
+			for (int maxPoolSize : new int[] { 0, 2 }) {
+				ConnectionProvider provider = configure(maxPoolSize, selection, this.replicaA, this.replicaB);
+				assertTrue(provider.hasReplicas());
+				assertEquals(selection + " pool=" + maxPoolSize, set("a", "b"), reads(provider, 6));
+
+				PooledConnection pooled = provider.borrow();
+				try {
+					assertEquals("primary", owner(pooled));
+				} finally {
+					provider.release(pooled);
+				}
+				provider.close();
+			}
+		}
+	}
+
+	@Test
+	public void failedReplicaIsEjectedAndRecovers() throws Exception {
+		ConnectionProvider provider = configure(2, ReplicaSelection.ROUND_ROBIN, this.replicaA, this.replicaB);
+		fail(provider, "a");
+		assertEquals(set("b"), reads(provider, 6));
+
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("a", "b"), reads(provider, 6));
+	}
+
+	@Test
+	public void statementErrorsDoNotEject() throws SQLException {
+		ConnectionProvider provider = configure(2, ReplicaSelection.ROUND_ROBIN, this.replicaA, this.replicaB);
+		PooledConnection pooled = provider.borrowReadOnly();
+		provider.failed(pooled, new SQLException("syntax error", "42000"));
+		provider.releaseReadOnly(pooled);
+		assertEquals(set("a", "b"), reads(provider, 6));
+	}
+
+	@Test
+	public void unreachableReplicaIsSkippedUntilItComesBack() throws Exception {
+		String name = "replica_late_" + System.nanoTime();
+		String missing = "jdbc:h2:mem:" + name + ";IFEXISTS=TRUE";
+		ConnectionProvider provider = configure(0, ReplicaSelection.ROUND_ROBIN, missing, this.replicaB);
+		assertEquals(set("b"), reads(provider, 6));
+
+		TestDatabase.execute(TestDatabase.url(name),
+				"CREATE TABLE marker (name VARCHAR(20))",
+				"INSERT INTO marker VALUES ('late')");
+		assertEquals(set("b"), reads(provider, 6));
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("late", "b"), reads(provider, 6));
+	}
+
+	@Test
+	public void backoffDoublesOnConsecutiveFailures() throws Exception {
+		String name = "replica_backoff_" + System.nanoTime();
+		String missing = "jdbc:h2:mem:" + name + ";IFEXISTS=TRUE";
+		ConnectionProvider provider = configure(0, ReplicaSelection.ROUND_ROBIN, missing, this.replicaB);
+		/*
+		  第一次失败退避 RETRY_INTERVAL，退避结束后再次失败，退避时间翻倍
+		 */
+		assertEquals(set("b"), reads(provider, 2));
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("b"), reads(provider, 2));
+
+		TestDatabase.execute(TestDatabase.url(name),
+				"CREATE TABLE marker (name VARCHAR(20))",
+				"INSERT INTO marker VALUES ('late')");
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("b"), reads(provider, 6));
+
+		Thread.sleep(RETRY_INTERVAL);
+		assertEquals(set("late", "b"), reads(provider, 6));
+
+		/*
+		  恢复后失败次数清零，退避时间回到初始值
+		 */
+		fail(provider, "late");
+		assertEquals(set("b"), reads(provider, 4));
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("late", "b"), reads(provider, 6));
+	}
+
+	@Test
+	public void readsFallBackToPrimaryWhenNoReplicaIsAvailable() throws Exception {
+		ConnectionProvider provider = configure(2, ReplicaSelection.LEAST_IN_FLIGHT, this.replicaA, this.replicaB);
+		fail(provider, "a");
+		fail(provider, "b");
+		assertEquals(set("primary"), reads(provider, 4));
+
+		Thread.sleep(RETRY_INTERVAL + 100);
+		assertEquals(set("a", "b"), reads(provider, 6));
+	}
+
+	@Test
+	public void repositoryRoutesReadsToReplicasAndWritesToPrimary() {
+		RepositoryFactory factory = RepositoryFactory.builder("replica-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(this.primary)
+						.maxPoolSize(2)
+						.replicaURL(this.replicaA)
+						.replicaURL(this.replicaB)
+						.replicaRetryInterval(RETRY_INTERVAL)
+						.build())
+				.build();
+		try {
+			StudentRepository repository = factory.get(StudentRepository.class);
+			Set<String> seen = new HashSet<>();
+			for (int i = 0; i < 6; i++) {
+				seen.add(repository.findById("1").getName());
+			}
+			assertEquals(set("a", "b"), seen);
+
+			assertEquals(Integer.valueOf(1), repository.updateName("written", "1"));
+			assertEquals("written", TestDatabase.queryValue(this.primary, "SELECT name FROM student WHERE id = '1'"));
+			assertEquals("a", TestDatabase.queryValue(this.replicaA, "SELECT name FROM student WHERE id = '1'"));
+
+			try (Transaction transaction = factory.begin()) {
+				assertEquals("written", repository.findById("1").getName());
+			}
+			assertFalse(seen.contains("written"));
+		} finally {
+			factory.close();
+		}
+	}
+
+	private static Set<String> set(String... values) {
+		return new HashSet<>(Arrays.asList(values));
+	}
+}
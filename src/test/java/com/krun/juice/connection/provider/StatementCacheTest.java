@@ -0,0 +1,94 @@
+package com.krun.juice.connection.provider;
+
+import com.krun.juice.TestDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 语句缓存的取出、放回与淘汰
+ */
+public class StatementCacheTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		this.connection = DriverManager.getConnection(TestDatabase.create("statement_cache"), "sa", "");
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		this.connection.close();
+	}
+
+	private PreparedStatement prepare(int value) throws SQLException {
+		return this.connection.prepareStatement("SELECT " + value);
+	}
+
+	@Test
+	public void takeRemovesTheStatement() throws SQLException {
+		StatementCache cache = new StatementCache(4);
+		PreparedStatement statement = prepare(1);
+		cache.put("SELECT 1", statement);
+		assertSame(statement, cache.take("SELECT 1"));
+		assertNull(cache.take("SELECT 1"));
+		assertFalse(statement.isClosed());
+	}
+
+	@Test
+	public void duplicatePutClosesTheLaterStatement() throws SQLException {
+		StatementCache cache = new StatementCache(4);
+		PreparedStatement first = prepare(1);
+		PreparedStatement second = prepare(1);
+		cache.put("SELECT 1", first);
+		cache.put("SELECT 1", second);
+		assertTrue(second.isClosed());
+		assertSame(first, cache.take("SELECT 1"));
+	}
+
+	@Test
+	public void leastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+		StatementCache cache = new StatementCache(2);
+		PreparedStatement one = prepare(1);
+		PreparedStatement two = prepare(2);
+		PreparedStatement three = prepare(3);
+		cache.put("SELECT 1", one);
+		cache.put("SELECT 2", two);
+		/*
+		  取出再放回使 SELECT 1 成为最近使用的语句
+		 */
+		cache.put("SELECT 1", cache.take("SELECT 1"));
+		cache.put("SELECT 3", three);
+
+		assertTrue(two.isClosed());
+		assertNull(cache.take("SELECT 2"));
+		assertSame(one, cache.take("SELECT 1"));
+		assertSame(three, cache.take("SELECT 3"));
+	}
+
+	@Test
+	public void clearClosesEverything() throws SQLException {
+		StatementCache cache = new StatementCache(4);
+		PreparedStatement one = prepare(1);
+		PreparedStatement two = prepare(2);
+		cache.put("SELECT 1", one);
+		cache.put("SELECT 2", two);
+		cache.clear();
+		assertTrue(one.isClosed());
+		assertTrue(two.isClosed());
+		assertNull(cache.take("SELECT 1"));
+	}
+}
@@ -0,0 +1,77 @@
+package com.krun.juice.instrumentation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.model.StudentRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 配置给多个工厂的同一个度量实例按工厂分别记录
+ */
+public class HistogramInstrumentationTest {
+
+	private HistogramInstrumentation instrumentation;
+
+	private RepositoryFactory first;
+
+	private RepositoryFactory second;
+
+	@Before
+	public void setUp() {
+		this.instrumentation = new HistogramInstrumentation(true);
+		this.first = create("metrics-a-" + System.nanoTime());
+		this.second = create("metrics-b-" + System.nanoTime());
+	}
+
+	private RepositoryFactory create(String name) {
+		String url = TestDatabase.create("metrics", Student.DDL, "INSERT INTO student VALUES ('1', 'a', 1)");
+		return RepositoryFactory.builder(name)
+				.configuration(TestDatabase.configuration(url).build())
+				.instrumentation(this.instrumentation)
+				.build();
+	}
+
+	@After
+	public void tearDown() {
+		this.instrumentation.unregister();
+		this.first.close();
+		this.second.close();
+	}
+
+	@Test
+	public void factoriesSharingAnInstanceAreRecordedSeparately() throws Exception {
+		this.first.get(StudentRepository.class).count();
+		this.second.get(StudentRepository.class).count();
+		this.second.get(StudentRepository.class).count();
+
+		Method count = StudentRepository.class.getMethod("count");
+		MethodMetrics first = this.instrumentation.getMetrics(this.first.getName(), StudentRepository.class, count);
+		MethodMetrics second = this.instrumentation.getMetrics(this.second.getName(), StudentRepository.class, count);
+		assertNotSame(first, second);
+		assertEquals(1, first.getCalls());
+		assertEquals(2, second.getCalls());
+		assertEquals(this.second.getName(), second.getFactory());
+
+		for (RepositoryFactory factory : new RepositoryFactory[] { this.first, this.second }) {
+			ObjectName name = new ObjectName(String.format("%s:type=RepositoryMethod,factory=%s,repository=%s,method=%s",
+					HistogramInstrumentation.JMX_DOMAIN,
+					ObjectName.quote(factory.getName()),
+					ObjectName.quote(StudentRepository.class.getName()),
+					ObjectName.quote("count()")));
+			assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.krun.juice.repository;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 分页标记的编码与解码
+ */
+public class PageTokenTest {
+
+	@Test
+	public void everySupportedTypeRoundTrips() {
+		Timestamp timestamp = new Timestamp(1508198400123L);
+		timestamp.setNanos(123456789);
+		Object[] keys = {
+				null, "键", 42, 42L, (short) 7, new BigDecimal("12.50"), new BigInteger("123456789012345678901234567890"),
+				1.5d, 2.5f, true, timestamp, java.sql.Date.valueOf("2017-10-17"),
+				LocalDate.of(2017, 10, 17), LocalDateTime.of(2017, 10, 17, 12, 30, 15, 1000), UUID.randomUUID()
+		};
+		assertArrayEquals(keys, PageToken.decode(PageToken.encode(keys)));
+	}
+
+	@Test
+	public void tokenIsUrlSafe() {
+		String token = PageToken.encode(new Object[] { "?/+=&", Long.MAX_VALUE });
+		assertTrue(token.matches("[A-Za-z0-9_-]+"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedTypeIsRejected() {
+		PageToken.encode(new Object[] { new Object() });
+	}
+
+	@Test
+	public void malformedTokensAreRejected() {
+		String valid = PageToken.encode(new Object[] { "a" });
+		for (String token : new String[] { "", "!!!", valid.substring(0, valid.length() - 1), valid + "AA" }) {
+			try {
+				PageToken.decode(token);
+				fail(token);
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void pageCarriesTheTokenToTheNextPageable() {
+		Page<String> page = Page.of(Collections.singletonList("a"), 20, new Object[] { "a", 1 });
+		assertTrue(page.hasNext());
+		Pageable next = page.next();
+		assertEquals(20, next.getSize());
+		assertFalse(next.isFirst());
+		assertArrayEquals(new Object[] { "a", 1 }, next.getKeys());
+		assertEquals(next, Pageable.after(page.getNextToken(), 20));
+
+		Page<String> last = Page.of(Collections.singletonList("b"), 20, null);
+		assertFalse(last.hasNext());
+		assertNull(last.next());
+		assertTrue(Pageable.after(null, 20).isFirst());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void pageSizeMustBePositive() {
+		Pageable.first(0);
+	}
+}
@@ -0,0 +1,102 @@
+package com.krun.juice.repository.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 缓存区域的代数与失效
+ */
+public class CacheRegionTest {
+
+	private CacheRegion region;
+
+	private MethodCache cache;
+
+	private MethodCache other;
+
+	@Before
+	public void setUp() throws NoSuchMethodException {
+		Method method = Object.class.getMethod("toString");
+		this.region = new CacheRegion(Object.class);
+		this.cache = this.region.register(method, 60000, 2);
+		this.other = this.region.register(method, 60000, 10);
+	}
+
+	@Test
+	public void hitAndMiss() {
+		Object[] args = { "1" };
+		assertSame(MethodCache.MISS, this.cache.get(args));
+		this.cache.put(args, "value", this.cache.generation());
+		assertEquals("value", this.cache.get(new Object[] { "1" }));
+
+		this.cache.put(new Object[] { "2" }, null, this.cache.generation());
+		assertNull(this.cache.get(new Object[] { "2" }));
+
+		CacheStats stats = this.region.getStats();
+		assertEquals(2, stats.getHits());
+		assertEquals(1, stats.getMisses());
+	}
+
+	@Test
+	public void invalidateClearsEveryCacheInTheRegion() {
+		this.cache.put(new Object[] { "1" }, "a", this.cache.generation());
+		this.other.put(new Object[] { "1" }, "b", this.other.generation());
+		this.region.invalidate();
+		assertSame(MethodCache.MISS, this.cache.get(new Object[] { "1" }));
+		assertSame(MethodCache.MISS, this.other.get(new Object[] { "1" }));
+		assertEquals(1, this.region.getStats().getInvalidations());
+	}
+
+	@Test
+	public void resultReadBeforeInvalidationIsNotCached() {
+		/*
+		  查询开始前取得代数，查询期间区域失效，查询结束后写入的旧结果被丢弃
+		 */
+		long generation = this.cache.generation();
+		this.region.invalidate();
+		this.cache.put(new Object[] { "1" }, "stale", generation);
+		assertSame(MethodCache.MISS, this.cache.get(new Object[] { "1" }));
+
+		this.cache.put(new Object[] { "1" }, "fresh", this.cache.generation());
+		assertEquals("fresh", this.cache.get(new Object[] { "1" }));
+	}
+
+	@Test
+	public void sizeIsBounded() {
+		for (int i = 0; i < 10; i++) {
+			this.cache.put(new Object[] { i }, i, this.cache.generation());
+		}
+		assertEquals(2, this.region.getStats().getSize());
+		assertEquals(8, this.region.getStats().getEvictions());
+	}
+
+	@Test
+	public void oldestEntryIsEvictedFirst() {
+		for (int i = 0; i < 3; i++) {
+			this.cache.put(new Object[] { i }, i, this.cache.generation());
+		}
+		assertSame(MethodCache.MISS, this.cache.get(new Object[] { 0 }));
+		assertEquals(1, this.cache.get(new Object[] { 1 }));
+		assertEquals(2, this.cache.get(new Object[] { 2 }));
+	}
+
+	@Test
+	public void expiredEntriesAreRemovedOnWrite() throws Exception {
+		MethodCache shortLived = this.region.register(Object.class.getMethod("hashCode"), 1, 10);
+		for (int i = 0; i < 3; i++) {
+			shortLived.put(new Object[] { i }, i, shortLived.generation());
+		}
+		Thread.sleep(20);
+		shortLived.put(new Object[] { 3 }, 3, shortLived.generation());
+		assertEquals(1, shortLived.size());
+		assertEquals(3, this.region.getStats().getEvictions());
+	}
+}
@@ -0,0 +1,199 @@
+package com.krun.juice.repository.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 相同参数的并发调用只执行一次
+ */
+public class SingleFlightTest {
+
+	private static final int CALLERS = 8;
+
+	private final SingleFlight flight = new SingleFlight();
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		this.executor = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	private Future<Object> submit(Object[] args, SingleFlight.Call call) {
+		return submit(args, 0, call);
+	}
+
+	private Future<Object> submit(Object[] args, long timeout, SingleFlight.Call call) {
+		return this.executor.submit(() -> {
+			try {
+				return this.flight.execute(args, timeout, call);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new ExecutionException(e);
+			}
+		});
+	}
+
+	/**
+	 * 在 CALLERS 个线程中以相同参数调用，第一个调用等到其他调用都已加入后才返回
+	 */
+	private List<Future<Object>> callConcurrently(Object[] args, AtomicInteger executions, Object result) throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<Object>> futures = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(submit(args, () -> {
+				executions.incrementAndGet();
+				release.await();
+				if (result instanceof Exception) throw (Exception) result;
+				return result;
+			}));
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (executions.get() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(200);
+		release.countDown();
+		return futures;
+	}
+
+	@Test
+	public void identicalCallsShareOneExecution() throws Exception {
+		AtomicInteger executions = new AtomicInteger();
+		Object result = new Object();
+		for (Future<Object> future : callConcurrently(new Object[] { "1", 2 }, executions, result)) {
+			assertSame(result, future.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, executions.get());
+		assertEquals(0, this.flight.inFlight());
+	}
+
+	@Test
+	public void failureIsSharedWithFollowers() throws Exception {
+		AtomicInteger executions = new AtomicInteger();
+		SQLException error = new SQLException("boom");
+		for (Future<Object> future : callConcurrently(new Object[] { "1" }, executions, error)) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertSame(error, e.getCause());
+			}
+		}
+		assertEquals(1, executions.get());
+		assertEquals(0, this.flight.inFlight());
+	}
+
+	@Test
+	public void differentArgumentsAreNotMerged() throws Throwable {
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<Object> first = submit(new Object[] { "1" }, () -> {
+			started.countDown();
+			release.await();
+			return "1";
+		});
+		Future<Object> second = submit(new Object[] { "2" }, () -> {
+			started.countDown();
+			release.await();
+			return "2";
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(2, this.flight.inFlight());
+		release.countDown();
+		assertEquals("1", first.get(5, TimeUnit.SECONDS));
+		assertEquals("2", second.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void laterCallsExecuteAgain() throws Throwable {
+		AtomicInteger executions = new AtomicInteger();
+		this.flight.execute(new Object[] { "1" }, executions::incrementAndGet);
+		this.flight.execute(new Object[] { "1" }, executions::incrementAndGet);
+		assertEquals(2, executions.get());
+	}
+
+	@Test
+	public void followerTimesOutOnItsOwn() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<Object> leader = submit(new Object[] { "1" }, () -> {
+			started.countDown();
+			release.await();
+			return "leader";
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		long start = System.nanoTime();
+		try {
+			this.flight.execute(new Object[] { "1" }, TimeUnit.MILLISECONDS.toNanos(100), () -> "follower");
+			fail();
+		} catch (TimeoutException expected) {
+		} catch (Throwable e) {
+			throw new AssertionError(e);
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+		/*
+		  等待的调用超时不影响正在执行的调用
+		 */
+		assertFalse(leader.isDone());
+		release.countDown();
+		assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void followerRetriesInsteadOfSharingTheLeadersTimeout() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<Object> leader = submit(new Object[] { "1" }, () -> {
+			started.countDown();
+			release.await();
+			throw new SQLTimeoutException("leader timed out");
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		AtomicInteger executions = new AtomicInteger();
+		Future<Object> follower = submit(new Object[] { "1" }, TimeUnit.SECONDS.toNanos(5), () -> {
+			executions.incrementAndGet();
+			return "follower";
+		});
+		Thread.sleep(100);
+		release.countDown();
+		try {
+			leader.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SQLTimeoutException);
+		}
+		assertEquals("follower", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, executions.get());
+	}
+}
@@ -0,0 +1,155 @@
+package com.krun.juice.repository.factory;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.model.Student;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 动态代理仓库的行为与生成的实现类一致
+ */
+public class RepositoryFactoryTest {
+
+	private RepositoryFactory factory;
+
+	@Before
+	public void setUp() {
+		String url = TestDatabase.create("factory", Student.DDL, "INSERT INTO student VALUES ('1', 'a', 1)");
+		this.factory = RepositoryFactory.builder("factory-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(url).build())
+				.build();
+	}
+
+	@After
+	public void tearDown() {
+		this.factory.close();
+	}
+
+	public interface PartialRepository extends Repository<Student, String> {
+
+		@Query("SELECT COUNT(*) FROM %s")
+		Long count();
+
+		Student findByName(String name);
+	}
+
+	@Test
+	public void methodWithoutQueryThrows() {
+		PartialRepository repository = this.factory.get(PartialRepository.class);
+		assertEquals(Long.valueOf(1), repository.count());
+		try {
+			repository.findByName("a");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertTrue(e.getMessage().contains("findByName"));
+		}
+	}
+
+	@Test
+	public void objectMethodsWorkOnProxies() {
+		PartialRepository repository = this.factory.get(PartialRepository.class);
+		assertNotNull(repository.toString());
+		assertEquals(System.identityHashCode(repository), repository.hashCode());
+		assertTrue(repository.equals(repository));
+		assertFalse(repository.equals(new Object()));
+	}
+
+	@Test
+	public void concurrentFirstGetsReturnOneInstance() throws Exception {
+		int callers = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<PartialRepository>> futures = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return this.factory.get(PartialRepository.class);
+				}));
+			}
+			start.countDown();
+			PartialRepository first = futures.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<PartialRepository> future : futures) {
+				assertSame(first, future.get(5, TimeUnit.SECONDS));
+			}
+			assertSame(first, this.factory.get(PartialRepository.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void concurrentFirstGetsCreateOneHandler() throws Exception {
+		AtomicInteger recorders = new AtomicInteger();
+		this.factory.setInstrumentation((factoryName, repositoryClass, method) -> {
+			recorders.incrementAndGet();
+			return null;
+		});
+		int callers = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<PartialRepository>> futures = new ArrayList<>();
+			for (int i = 0; i < callers; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return this.factory.get(PartialRepository.class);
+				}));
+			}
+			start.countDown();
+			for (Future<PartialRepository> future : futures) {
+				future.get(5, TimeUnit.SECONDS);
+			}
+			assertEquals(1, recorders.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedCreationCanBeRetried() {
+		this.factory.setInstrumentation((factoryName, repositoryClass, method) -> {
+			throw new IllegalStateException("boom");
+		});
+		try {
+			this.factory.get(PartialRepository.class);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("boom", e.getMessage());
+		}
+		this.factory.setInstrumentation(null);
+		PartialRepository repository = this.factory.get(PartialRepository.class);
+		assertEquals(Long.valueOf(1), repository.count());
+	}
+
+	@Test
+	public void removedRepositoryIsCreatedAgain() {
+		PartialRepository first = this.factory.get(PartialRepository.class);
+		this.factory.remove(PartialRepository.class);
+		PartialRepository second = this.factory.get(PartialRepository.class);
+		assertNotSame(first, second);
+		assertSame(second, this.factory.get(PartialRepository.class));
+	}
+}
@@ -0,0 +1,123 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Entity;
+import com.krun.juice.repository.annotation.GeneratedKeys;
+import com.krun.juice.repository.annotation.Id;
+import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * @GeneratedKeys 方法返回插入后生成的主键
+ */
+public class GeneratedKeysTest {
+
+	private String url;
+
+	private RepositoryFactory factory;
+
+	private TicketRepository repository;
+
+	@Entity("ticket")
+	public static class Ticket {
+
+		@Id
+		private long id;
+
+		private String title;
+
+		public long getId() {
+			return this.id;
+		}
+
+		public String getTitle() {
+			return this.title;
+		}
+	}
+
+	public interface TicketRepository extends Repository<Ticket, Long> {
+
+		@GeneratedKeys
+		@Query("INSERT INTO %s (title) VALUES (?)")
+		long insert(String title);
+
+		@GeneratedKeys("id")
+		@Query("INSERT INTO %s (title) VALUES (?)")
+		Optional<Long> insertOptional(String title);
+
+		@GeneratedKeys
+		@Query("INSERT INTO %s (title) SELECT title FROM %1$s")
+		long[] copyAll();
+
+		@Query("INSERT INTO %s (title) VALUES (?)")
+		int insertCount(String title);
+	}
+
+	public interface CursorRepository extends Repository<Ticket, Long> {
+
+		@GeneratedKeys
+		@Query("INSERT INTO %s (title) VALUES (?)")
+		Stream<Long> insert(String title);
+	}
+
+	@Before
+	public void setUp() {
+		this.url = TestDatabase.create("keys", "CREATE TABLE ticket (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(20))");
+		this.factory = RepositoryFactory.builder("keys-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(this.url).build())
+				.build();
+		this.repository = this.factory.get(TicketRepository.class);
+	}
+
+	@After
+	public void tearDown() {
+		this.factory.close();
+	}
+
+	@Test
+	public void insertReturnsTheGeneratedKey() {
+		assertEquals(1L, this.repository.insert("a"));
+		assertEquals(2L, this.repository.insert("b"));
+		assertEquals(Optional.of(3L), this.repository.insertOptional("c"));
+		assertEquals("c", TestDatabase.queryValue(this.url, "SELECT title FROM ticket WHERE id = 3"));
+	}
+
+	@Test
+	public void multiRowInsertReturnsEveryKey() {
+		this.repository.insert("a");
+		this.repository.insert("b");
+		long[] keys = this.repository.copyAll();
+		Arrays.sort(keys);
+		assertArrayEquals(new long[] { 3, 4 }, keys);
+	}
+
+	@Test
+	public void methodsWithoutTheAnnotationStillReturnTheCount() {
+		assertEquals(1, this.repository.insertCount("a"));
+	}
+
+	@Test
+	public void cursorResultsAreRejected() {
+		try {
+			this.factory.get(CursorRepository.class);
+			fail();
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage().contains("insert"));
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.connection.dialect.H2Dialect;
+import com.krun.juice.connection.dialect.StandardDialect;
+import com.krun.juice.repository.Page;
+import com.krun.juice.repository.Pageable;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 按主键分页的 sql 改写与参数绑定
+ */
+public class KeysetQueryTest {
+
+	private static KeysetQuery query(String sql, String... keys) {
+		return new KeysetQuery(sql, Arrays.asList(keys), 1, H2Dialect.INSTANCE, Object.class);
+	}
+
+	private static Pageable after(Object... keys) {
+		return Page.of(Collections.singletonList(new Object()), 1, keys).next();
+	}
+
+	@Test
+	public void withoutWhere() {
+		KeysetQuery query = query("SELECT * FROM student", "id");
+		assertEquals("SELECT * FROM student ORDER BY id LIMIT ?", query.sql(Pageable.first(10)));
+		assertEquals("SELECT * FROM student WHERE id > ? ORDER BY id LIMIT ?", query.sql(after("9")));
+	}
+
+	@Test
+	public void existingConditionIsKeptInParentheses() {
+		KeysetQuery query = query("SELECT * FROM student WHERE code = ? OR name = ?", "id");
+		assertEquals("SELECT * FROM student WHERE (code = ? OR name = ?) AND id > ? ORDER BY id LIMIT ?",
+				query.sql(after("9")));
+	}
+
+	@Test
+	public void whereInSubqueriesAndLiteralsIsIgnored() {
+		KeysetQuery query = query("SELECT * FROM (SELECT * FROM student WHERE code > 0) s", "id");
+		assertEquals("SELECT * FROM (SELECT * FROM student WHERE code > 0) s WHERE id > ? ORDER BY id LIMIT ?",
+				query.sql(after("9")));
+		query = query("SELECT * FROM student WHERE name <> ' WHERE '", "id");
+		assertEquals("SELECT * FROM student WHERE (name <> ' WHERE ') AND id > ? ORDER BY id LIMIT ?",
+				query.sql(after("9")));
+	}
+
+	@Test
+	public void compositeKeyUsesRowValueComparison() {
+		KeysetQuery query = query("SELECT * FROM enrollment", "student_id", "course_id");
+		assertEquals("SELECT * FROM enrollment WHERE (student_id, course_id) > (?, ?) ORDER BY student_id, course_id LIMIT ?",
+				query.sql(after("s", 1)));
+	}
+
+	@Test
+	public void sqlFollowsTheDialect() {
+		KeysetQuery query = new KeysetQuery("SELECT * FROM student", Collections.singletonList("id"), 0,
+				StandardDialect.INSTANCE, Object.class);
+		assertEquals("SELECT * FROM student ORDER BY id FETCH FIRST ? ROWS ONLY", query.sql(Pageable.first(5)));
+	}
+
+	@Test
+	public void pageableIsReplacedByTheLastKeys() {
+		KeysetQuery query = query("SELECT * FROM student WHERE code = ? AND name = ?", "id");
+		Pageable first = Pageable.first(10);
+		Object[] args = { 1, first, "a" };
+		assertSame(first, query.pageableOf(args));
+		assertArrayEquals(new Object[] { 1, "a", 11 }, query.bind(args, first));
+
+		Pageable next = after("9");
+		assertArrayEquals(new Object[] { 1, "a", "9", 2 }, query.bind(new Object[] { 1, next, "a" }, next));
+	}
+
+	@Test
+	public void pageSizeDoesNotChangeTheSql() {
+		KeysetQuery query = query("SELECT * FROM student", "id");
+		assertSame(query.sql(Pageable.first(10)), query.sql(Pageable.first(500)));
+		assertArrayEquals(new Object[] { 1, 501 }, query.bind(new Object[] { 1, Pageable.first(500) }, Pageable.first(500)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tokenWithWrongKeyCountIsRejected() {
+		query("SELECT * FROM student", "id").bind(new Object[] { null, null }, after("a", "b"));
+	}
+
+	@Test
+	public void unsupportedClausesAreReported() {
+		assertNull(KeysetQuery.check("SELECT * FROM student WHERE code = ?"));
+		assertNotNull(KeysetQuery.check("SELECT * FROM student ORDER BY name"));
+		assertNotNull(KeysetQuery.check("SELECT * FROM student LIMIT 10"));
+		assertNotNull(KeysetQuery.check("SELECT code, COUNT(*) FROM student GROUP BY code"));
+		assertNotNull(KeysetQuery.check("UPDATE student SET code = 1"));
+	}
+}
@@ -0,0 +1,80 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.Page;
+import com.krun.juice.repository.Pageable;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.model.StudentRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 通过仓库方法按主键逐页读取
+ */
+public class PagingTest {
+
+	private RepositoryFactory factory;
+
+	private StudentRepository repository;
+
+	@Before
+	public void setUp() {
+		String url = TestDatabase.create("paging", Student.DDL);
+		this.factory = RepositoryFactory.builder("paging-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(url).build())
+				.build();
+		this.repository = this.factory.get(StudentRepository.class);
+		for (int i = 1; i <= 25; i++) {
+			this.repository.insert(String.format("s%02d", i), "n" + i, i % 5);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		this.factory.close();
+	}
+
+	@Test
+	public void pagesCoverEveryMatchingRowOnce() {
+		List<String> ids = new ArrayList<>();
+		Pageable pageable = Pageable.first(4);
+		int pages = 0;
+		while (pageable != null) {
+			Page<Student> page = this.repository.findByMinCode(3, pageable);
+			for (Student student : page) {
+				ids.add(student.getId());
+			}
+			pages++;
+			pageable = page.next();
+		}
+		List<String> expected = new ArrayList<>();
+		for (int i = 1; i <= 25; i++) {
+			if (i % 5 >= 3) expected.add(String.format("s%02d", i));
+		}
+		assertEquals(expected, ids);
+		assertEquals(3, pages);
+	}
+
+	@Test
+	public void tokenCanBeCarriedAcrossRequests() {
+		Page<Student> first = this.repository.findByMinCode(0, Pageable.first(10));
+		assertEquals(10, first.getContent().size());
+		String token = first.getNextToken();
+
+		Page<Student> second = this.repository.findByMinCode(0, Pageable.after(token, 10));
+		assertEquals("s11", second.getContent().get(0).getId());
+		Page<Student> third = this.repository.findByMinCode(0, second.next());
+		assertEquals(5, third.getContent().size());
+		assertFalse(third.hasNext());
+	}
+}
@@ -0,0 +1,139 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.model.StudentRepository;
+import com.krun.juice.transaction.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * save / saveAll 只更新查询后被修改的列
+ */
+public class SaveTest {
+
+	private String url;
+
+	private RepositoryFactory factory;
+
+	private StudentRepository repository;
+
+	@Before
+	public void setUp() {
+		this.url = TestDatabase.create("save", Student.DDL,
+				"INSERT INTO student VALUES ('1', 'a', 1), ('2', 'b', 2), ('3', 'c', 3)");
+		this.factory = RepositoryFactory.builder("save-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(this.url).batchSize(2).build())
+				.build();
+		this.repository = this.factory.get(StudentRepository.class);
+	}
+
+	@After
+	public void tearDown() {
+		this.factory.close();
+	}
+
+	private Object column(String column, String id) {
+		return TestDatabase.queryValue(this.url, "SELECT " + column + " FROM student WHERE id = '" + id + "'");
+	}
+
+	@Test
+	public void unchangedEntityIsNotWritten() {
+		Student student = this.repository.findById("1");
+		assertEquals(0, this.repository.save(student));
+		assertArrayEquals(new int[] { 0, 0, 0 }, this.repository.saveAll(this.repository.findAll()));
+	}
+
+	@Test
+	public void onlyChangedColumnsAreWritten() {
+		Student student = this.repository.findById("1");
+		/*
+		  其他人在查询之后修改了 code，只修改了 name 的 save 不会把 code 改回去
+		 */
+		TestDatabase.execute(this.url, "UPDATE student SET code = 100 WHERE id = '1'");
+		student.setName("x");
+		assertEquals(1, this.repository.save(student));
+		assertEquals("x", column("name", "1"));
+		assertEquals(100, column("code", "1"));
+
+		assertEquals(0, this.repository.save(student));
+	}
+
+	@Test
+	public void partiallySelectedEntityOnlyWritesSelectedColumns() {
+		Student student = this.repository.findName("2");
+		student.setName("y");
+		assertEquals(1, this.repository.save(student));
+		assertEquals("y", column("name", "2"));
+		assertEquals(2, column("code", "2"));
+	}
+
+	@Test
+	public void columnsSelectedOutOfDeclarationOrderAreBoundToTheRightColumns() {
+		Student student = this.repository.findReordered("2");
+		student.setName("77");
+		student.setCode(42);
+		assertEquals(1, this.repository.save(student));
+		assertEquals("77", column("name", "2"));
+		assertEquals(42, column("code", "2"));
+
+		student = this.repository.findReordered("3");
+		student.setName("c1");
+		student.setCode(33);
+		assertArrayEquals(new int[] { 1 }, this.repository.saveAll(Collections.singletonList(student)));
+		assertEquals("c1", column("name", "3"));
+		assertEquals(33, column("code", "3"));
+	}
+
+	@Test
+	public void untrackedEntityWritesEveryColumn() {
+		Student student = new Student();
+		student.setId("3");
+		student.setName("z");
+		assertEquals(1, this.repository.save(student));
+		assertEquals("z", column("name", "3"));
+		assertEquals(0, column("code", "3"));
+	}
+
+	@Test
+	public void saveAllBatchesRowsWithTheSameChanges() {
+		List<Student> students = this.repository.findAll();
+		students.get(0).setName("a1");
+		students.get(1).setName("b1");
+		students.get(2).setCode(30);
+		assertArrayEquals(new int[] { 1, 1, 1 }, this.repository.saveAll(students));
+		assertEquals("a1", column("name", "1"));
+		assertEquals("b1", column("name", "2"));
+		assertEquals(30, column("code", "3"));
+		assertArrayEquals(new int[] { 0, 0, 0 }, this.repository.saveAll(students));
+	}
+
+	@Test
+	public void rolledBackChangesAreSavedAgain() {
+		Student student = this.repository.findById("1");
+		try (Transaction transaction = this.factory.begin()) {
+			student.setName("rolled");
+			assertEquals(1, this.repository.save(student));
+		}
+		assertEquals("a", column("name", "1"));
+		assertEquals(1, this.repository.save(student));
+		assertEquals("rolled", column("name", "1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void changedKeyIsRejected() {
+		Student student = this.repository.findById("1");
+		student.setId("9");
+		this.repository.save(student);
+	}
+}
@@ -0,0 +1,153 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 语句看门狗：停止看守之后不会再取消语句
+ */
+public class StatementWatchdogTest {
+
+	/**
+	 * 只记录 cancel 调用次数的语句
+	 */
+	private static Statement statement(AtomicInteger cancels, CountDownLatch cancelling, CountDownLatch release) {
+		return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("cancel")) {
+						cancelling.countDown();
+						release.await();
+						cancels.incrementAndGet();
+					}
+					return null;
+				});
+	}
+
+	private static Statement statement(AtomicInteger cancels) {
+		return statement(cancels, new CountDownLatch(1), new CountDownLatch(0));
+	}
+
+	@Test
+	public void stoppedWatchNeverCancels() throws InterruptedException {
+		AtomicInteger cancels = new AtomicInteger();
+		StatementWatchdog.Watch watch = StatementWatchdog.watch(statement(cancels), TimeUnit.MILLISECONDS.toNanos(50));
+		assertFalse(watch.stop());
+		Thread.sleep(150);
+		assertEquals(0, cancels.get());
+		assertFalse(watch.stop());
+	}
+
+	@Test
+	public void expiredWatchCancelsOnce() throws InterruptedException {
+		AtomicInteger cancels = new AtomicInteger();
+		StatementWatchdog.Watch watch = StatementWatchdog.watch(statement(cancels), TimeUnit.MILLISECONDS.toNanos(10));
+		Thread.sleep(150);
+		assertTrue(watch.stop());
+		assertEquals(1, cancels.get());
+	}
+
+	@Test
+	public void stopWaitsForAnInProgressCancel() throws Exception {
+		AtomicInteger cancels = new AtomicInteger();
+		CountDownLatch cancelling = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		StatementWatchdog.Watch watch = StatementWatchdog.watch(statement(cancels, cancelling, release), 0);
+		assertTrue(cancelling.await(5, TimeUnit.SECONDS));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> stopped = executor.submit(watch::stop);
+			try {
+				stopped.get(100, TimeUnit.MILLISECONDS);
+				fail("stop() 应当等待正在进行的 cancel");
+			} catch (TimeoutException expected) {
+			}
+			release.countDown();
+			assertTrue(stopped.get(5, TimeUnit.SECONDS));
+			assertEquals(1, cancels.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void cancelNeverLandsAfterStop() throws InterruptedException {
+		/*
+		  超时与 stop 几乎同时发生：stop 返回 false 的语句之后不能再被取消，返回 true 的语句恰好被取消一次
+		 */
+		List<AtomicInteger> cancels = new ArrayList<>();
+		List<Boolean> fired = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			AtomicInteger count = new AtomicInteger();
+			StatementWatchdog.Watch watch = StatementWatchdog.watch(statement(count), (i % 50) * 1000L);
+			if (i % 3 == 0) Thread.yield();
+			fired.add(watch.stop());
+			cancels.add(count);
+		}
+		Thread.sleep(100);
+		for (int i = 0; i < cancels.size(); i++) {
+			assertEquals("watch " + i, fired.get(i) ? 1 : 0, cancels.get(i).get());
+		}
+	}
+
+	public interface SlowRepository extends Repository<Student, String> {
+
+		@Query(value = "SELECT COUNT(*) FROM SYSTEM_RANGE(1, ?) a, SYSTEM_RANGE(1, 100000) b", timeout = 200)
+		Long count(int rows);
+
+		@Query(value = "SELECT COUNT(*) FROM SYSTEM_RANGE(1, ?)", timeout = 1000)
+		Long fast(int rows);
+	}
+
+	@Test
+	public void timedOutStatementDoesNotAffectLaterCalls() {
+		String url = TestDatabase.create("watchdog", Student.DDL);
+		RepositoryFactory factory = RepositoryFactory.builder("watchdog-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(url).maxPoolSize(1).build())
+				.build();
+		try {
+			SlowRepository repository = factory.get(SlowRepository.class);
+			long start = System.nanoTime();
+			try {
+				repository.count(100000);
+				fail();
+			} catch (UndeclaredThrowableException e) {
+				assertTrue(e.getCause() instanceof SQLTimeoutException);
+			}
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+			/*
+			  同一个连接、同一条缓存的语句反复执行，之前的超时不会取消之后的调用
+			 */
+			for (int i = 0; i < 200; i++) {
+				assertEquals(Long.valueOf(10), repository.fast(10));
+			}
+		} finally {
+			factory.close();
+		}
+	}
+}
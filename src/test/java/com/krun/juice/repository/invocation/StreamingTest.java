@@ -0,0 +1,116 @@
+package com.krun.juice.repository.invocation;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.connection.configuration.ConnectionConfiguration;
+import com.krun.juice.connection.dialect.H2Dialect;
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Query;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.statement.RepositoryStatementProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 驱动只在事务中分批读取游标时，事务外的游标读取临时关闭自动提交
+ */
+public class StreamingTest {
+
+	private RepositoryFactory factory;
+
+	/**
+	 * 与 PostgreSQL 一样只在事务中分批读取游标的 H2 方言
+	 */
+	private static final H2Dialect TRANSACTIONAL = new H2Dialect() {
+		@Override
+		public boolean streamingRequiresTransaction() {
+			return true;
+		}
+	};
+
+	/**
+	 * 记录创建语句时连接是否处于自动提交
+	 */
+	public static class AutoCommitRecorder implements RepositoryStatementProvider {
+
+		static volatile Boolean autoCommit;
+
+		public static Statement provide(Connection connection, String sql) throws SQLException {
+			autoCommit = connection.getAutoCommit();
+			return connection.prepareStatement(sql);
+		}
+	}
+
+	public interface StreamingRepository extends Repository<Student, String> {
+
+		@Query(value = "SELECT * FROM %s ORDER BY id", provider = AutoCommitRecorder.class)
+		Stream<Student> stream();
+
+		@Query(value = "SELECT * FROM %s", provider = AutoCommitRecorder.class)
+		List<Student> list();
+	}
+
+	private StreamingRepository create(ConnectionConfiguration.ConnectionConfigurationBuilder configuration) {
+		this.factory = RepositoryFactory.builder("streaming-" + System.nanoTime())
+				.configuration(configuration.fetchSize(1).build())
+				.build();
+		return this.factory.get(StreamingRepository.class);
+	}
+
+	private static ConnectionConfiguration.ConnectionConfigurationBuilder database() {
+		return TestDatabase.configuration(TestDatabase.create("streaming", Student.DDL,
+				"INSERT INTO student VALUES ('1', 'a', 1), ('2', 'b', 2), ('3', 'c', 3)"));
+	}
+
+	@After
+	public void tearDown() {
+		if (this.factory != null) this.factory.close();
+	}
+
+	@Test
+	public void sharedConnectionIsNotSuspended() {
+		StreamingRepository repository = create(database().dialect(TRANSACTIONAL));
+		try (Stream<Student> stream = repository.stream()) {
+			assertFalse(AutoCommitRecorder.autoCommit);
+			/*
+			  游标读取使用独占的连接，共享连接照常可用
+			 */
+			assertEquals(3, repository.list().size());
+			assertTrue(AutoCommitRecorder.autoCommit);
+			assertEquals("1,2,3", stream.map(Student::getId).collect(Collectors.joining(",")));
+		}
+	}
+
+	@Test
+	public void pooledConnectionIsRestoredOnClose() {
+		StreamingRepository repository = create(database().dialect(TRANSACTIONAL).maxPoolSize(1));
+		try (Stream<Student> stream = repository.stream()) {
+			assertFalse(AutoCommitRecorder.autoCommit);
+			assertEquals(3, stream.count());
+		}
+		assertEquals(3, repository.list().size());
+		assertTrue(AutoCommitRecorder.autoCommit);
+	}
+
+	@Test
+	public void otherDialectsKeepAutoCommit() {
+		StreamingRepository repository = create(database().maxPoolSize(1));
+		try (Stream<Student> stream = repository.stream()) {
+			assertTrue(AutoCommitRecorder.autoCommit);
+			assertEquals(3, stream.count());
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.krun.juice.repository.model;
+
+import com.krun.juice.repository.annotation.Entity;
+import com.krun.juice.repository.annotation.Id;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 测试用的表实体
+ */
+@Entity(value = "student", trackChanges = true)
+public class Student {
+
+	public static final String DDL = "CREATE TABLE student (id VARCHAR(20) PRIMARY KEY, name VARCHAR(20), code INT)";
+
+	@Id
+	private String id;
+
+	private String name;
+
+	private int code;
+
+	public String getId() {
+		return this.id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public int getCode() {
+		return this.code;
+	}
+
+	public void setCode(int code) {
+		this.code = code;
+	}
+}
@@ -0,0 +1,38 @@
+package com.krun.juice.repository.model;
+
+import com.krun.juice.repository.Page;
+import com.krun.juice.repository.Pageable;
+import com.krun.juice.repository.Repository;
+import com.krun.juice.repository.annotation.Query;
+
+import java.util.List;
+
+/**
+ * Created by krun on 2017/10/17.
+ */
+public interface StudentRepository extends Repository<Student, String> {
+
+	@Query("SELECT * FROM %s ORDER BY id")
+	List<Student> findAll();
+
+	@Query("SELECT * FROM %s WHERE id = ?")
+	Student findById(String id);
+
+	@Query("SELECT id, name FROM %s WHERE id = ?")
+	Student findName(String id);
+
+	@Query("SELECT code, name, id FROM %s WHERE id = ?")
+	Student findReordered(String id);
+
+	@Query("SELECT * FROM %s WHERE code >= ?")
+	Page<Student> findByMinCode(int code, Pageable pageable);
+
+	@Query("SELECT COUNT(*) FROM %s")
+	Long count();
+
+	@Query("UPDATE %s SET name = ? WHERE id = ?")
+	Integer updateName(String name, String id);
+
+	@Query("INSERT INTO %s (id, name, code) VALUES (?, ?, ?)")
+	Integer insert(String id, String name, int code);
+}
@@ -0,0 +1,120 @@
+package com.krun.juice.transaction;
+
+import com.krun.juice.TestDatabase;
+import com.krun.juice.repository.factory.RepositoryFactory;
+import com.krun.juice.repository.model.Student;
+import com.krun.juice.repository.model.StudentRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by krun on 2017/10/17.
+ *
+ * 绑定到线程的事务
+ */
+public class TransactionTest {
+
+	private String url;
+
+	private RepositoryFactory factory;
+
+	private StudentRepository repository;
+
+	@Before
+	public void setUp() {
+		this.url = TestDatabase.create("transaction", Student.DDL);
+		this.factory = RepositoryFactory.builder("transaction-" + System.nanoTime())
+				.configuration(TestDatabase.configuration(this.url).maxPoolSize(2).build())
+				.build();
+		this.repository = this.factory.get(StudentRepository.class);
+	}
+
+	@After
+	public void tearDown() {
+		this.factory.close();
+	}
+
+	private long rows() {
+		return ((Number) TestDatabase.queryValue(this.url, "SELECT COUNT(*) FROM student")).longValue();
+	}
+
+	@Test
+	public void commitMakesChangesVisible() {
+		try (Transaction transaction = this.factory.begin()) {
+			assertSame(transaction, this.factory.currentTransaction());
+			this.repository.insert("1", "a", 1);
+			assertEquals(Long.valueOf(1), this.repository.count());
+			assertEquals(0, rows());
+			transaction.commit();
+		}
+		assertEquals(1, rows());
+		assertNull(this.factory.currentTransaction());
+	}
+
+	@Test
+	public void closingWithoutCommitRollsBack() {
+		try (Transaction transaction = this.factory.begin()) {
+			this.repository.insert("1", "a", 1);
+		}
+		assertEquals(0, rows());
+		assertEquals(Long.valueOf(0), this.repository.count());
+	}
+
+	@Test
+	public void inTransactionRollsBackOnException() {
+		try {
+			this.factory.inTransaction(() -> {
+				this.repository.insert("1", "a", 1);
+				throw new IllegalStateException("boom");
+			});
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(0, rows());
+
+		assertEquals(Integer.valueOf(1), this.factory.inTransaction(() -> this.repository.insert("1", "a", 1)));
+		assertEquals(1, rows());
+	}
+
+	@Test
+	public void nestedInTransactionJoinsTheOuterTransaction() {
+		try (Transaction transaction = this.factory.begin()) {
+			this.factory.inTransaction(() -> this.repository.insert("1", "a", 1));
+			assertSame(transaction, this.factory.currentTransaction());
+		}
+		assertEquals(0, rows());
+	}
+
+	@Test
+	public void afterCommitRunsOnlyAfterCommit() {
+		AtomicInteger runs = new AtomicInteger();
+		try (Transaction transaction = this.factory.begin()) {
+			transaction.afterCommit(runs::incrementAndGet);
+		}
+		assertEquals(0, runs.get());
+
+		try (Transaction transaction = this.factory.begin()) {
+			transaction.afterCommit(runs::incrementAndGet);
+			assertEquals(0, runs.get());
+			transaction.commit();
+			assertFalse(transaction.isActive());
+		}
+		assertEquals(1, runs.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void onlyOneTransactionPerThread() {
+		try (Transaction transaction = this.factory.begin()) {
+			this.factory.begin();
+		}
+	}
+}